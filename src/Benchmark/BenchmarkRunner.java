@@ -0,0 +1,163 @@
+package Benchmark;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 基准测试的计时与结果输出。
+ * 每个被测操作先预热warmup次(结果丢弃，让JIT编译和JPBC的内部缓存稳定下来)，再正式测量iterations次，
+ * 记录每次的耗时并给出平均值、标准差、最小值和最大值。所有结果最后以CSV格式写入文件，便于脚本比较和画图。
+ * 各方案在密钥生成、加密、解密时会打印提示信息，调用方应关闭标准输出(见silenceStdout)，避免打印本身影响计时，测量结果输出到report
+ */
+public class BenchmarkRunner {
+
+    // 单个操作在一组参数下的测量结果
+    public static class Result {
+        public final String scheme;
+        public final String operation;
+        public final Map<String, String> params;
+        public final int iterations;
+        public final double meanMs;
+        public final double stdDevMs;
+        public final double minMs;
+        public final double maxMs;
+
+        private Result(String scheme, String operation, Map<String, String> params, double[] samplesMs) {
+            this.scheme = scheme;
+            this.operation = operation;
+            this.params = params;
+            this.iterations = samplesMs.length;
+            double sum = 0, min = Double.MAX_VALUE, max = 0;
+            for (double x : samplesMs) {
+                sum += x;
+                min = Math.min(min, x);
+                max = Math.max(max, x);
+            }
+            this.meanMs = sum / samplesMs.length;
+            double var = 0;
+            for (double x : samplesMs) {
+                var += (x - meanMs) * (x - meanMs);
+            }
+            this.stdDevMs = samplesMs.length > 1 ? Math.sqrt(var / (samplesMs.length - 1)) : 0;
+            this.minMs = min;
+            this.maxMs = max;
+        }
+    }
+
+    // 被测操作。允许抛出受检异常(EHCPABE等方案的方法声明了throws Exception)
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    // CSV中参数列的顺序，未使用的参数输出为"-"
+    public static final String[] PARAM_COLUMNS = {"pairing", "universe", "depth", "width", "attributes"};
+
+    private final int warmup;
+    private final int iterations;
+    private final PrintStream report; // 每测完一项就输出一行CSV
+    private final List<Result> results = new ArrayList<>();
+
+    public BenchmarkRunner(int warmup, int iterations, PrintStream report) {
+        if (warmup < 0 || iterations < 1) {
+            throw new IllegalArgumentException("预热次数不能为负数，测量次数至少为1");
+        }
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.report = report;
+    }
+
+    /**
+     * 关闭标准输出，返回原来的标准输出用于报告结果
+     * @return 原来的System.out
+     */
+    public static PrintStream silenceStdout() {
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        return stdout;
+    }
+
+    /**
+     * 测量一个操作
+     * @param scheme 方案名称，如"CPABE"
+     * @param operation 操作名称：setUp、keyGeneration、encrypt或decrypt
+     * @param params 本次测量的参数，键为PARAM_COLUMNS中的名称
+     * @param op 被测操作
+     * @return 测量结果
+     */
+    public Result measure(String scheme, String operation, Map<String, String> params, Operation op) {
+        double[] samples = new double[iterations];
+        try {
+            for (int i = 0; i < warmup; i++) {
+                op.run();
+            }
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                op.run();
+                samples[i] = (System.nanoTime() - start) / 1e6;
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(scheme + "." + operation + " 运行出错，参数: " + params, e);
+        }
+        Result result = new Result(scheme, operation, new LinkedHashMap<>(params), samples);
+        results.add(result);
+        report.println(toCsvRow(result));
+        return result;
+    }
+
+    // 在报告中输出一行说明(不写入CSV)，如密文的字节数
+    public void note(String message) {
+        report.println("# " + message);
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public static String csvHeader() {
+        return "scheme,operation," + String.join(",", PARAM_COLUMNS) + ",iterations,mean_ms,stddev_ms,min_ms,max_ms";
+    }
+
+    public static String toCsvRow(Result r) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(r.scheme).append(',').append(r.operation);
+        for (String column : PARAM_COLUMNS) {
+            sb.append(',').append(r.params.getOrDefault(column, "-"));
+        }
+        sb.append(',').append(r.iterations);
+        sb.append(String.format(Locale.ROOT, ",%.3f,%.3f,%.3f,%.3f", r.meanMs, r.stdDevMs, r.minMs, r.maxMs));
+        return sb.toString();
+    }
+
+    /**
+     * 将所有测量结果写入CSV文件，父目录不存在时会自动创建
+     * @param csvFilePath CSV文件路径
+     */
+    public void writeCsv(String csvFilePath) {
+        List<String> lines = new ArrayList<>();
+        lines.add(csvHeader());
+        for (Result r : results) {
+            lines.add(toCsvRow(r));
+        }
+        try {
+            Path path = Paths.get(csvFilePath);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.write(path, lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("写入基准测试结果时出错: " + csvFilePath, e);
+        }
+    }
+}
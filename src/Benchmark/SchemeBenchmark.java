@@ -0,0 +1,473 @@
+package Benchmark;
+
+import CPABE.AccessTreeCPABE;
+import CPABE.CPABE;
+import CPABE_Waters11.CPABELewkoWatersLSSS;
+import CPABE_Waters11.CPABEWaters11;
+import EHCPABE.AccessTreeEHCPABE;
+import EHCPABE.EHCPABE;
+import FHCPABE.FHCPABEAccessTree;
+import FHCPABE.FHCPABEDemo;
+import FIBE.FIBEa;
+import FIBE.FIBEb;
+import KPABE.AccessTreeKPABE;
+import KPABE.KPABEa;
+import KPABE.KPABEb;
+import PPKE.PPKE;
+import Utils.ABECiphertext;
+import Utils.ABESecretKey;
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 各方案setUp/keyGeneration/encrypt/decrypt的基准测试入口。
+ * 参数均以 key=v1,v2,... 的形式给出，每个参数可以给多个取值，程序对所有组合依次测量：
+ * <pre>
+ * pairing=a.properties      双线性对参数文件
+ * universe=20               属性宇宙大小(KPABEb、FIBEb是大宇宙方案，不使用该参数)
+ * depth=1,2                 访问控制树的深度(根节点到叶子节点的层数)
+ * width=2,3                 每个门的子节点个数，门限为(width+1)/2
+ * attributes=4,8            用户属性个数；叶子节点的属性在1..attributes之间循环取值，因此用户总能满足策略
+ * schemes=CPABE,KPABEa,...  只测量指定的方案，默认测量全部
+ * warmup=2 iterations=5     预热次数与测量次数
+ * out=bench_output.csv      CSV结果文件
+ * </pre>
+ * 例如：java -cp "out:libs/JPBC/*" Benchmark.SchemeBenchmark depth=1,2,3 attributes=4,16 out=results/bench.csv
+ * 加密、解密使用内存中的私钥句柄和密文对象，测量结果不包含文件读写。
+ * 返回密文对象的方案还会比较密文的两种编码：ctToBytes/decryptFromBytes为未压缩编码，带Compressed后缀的为G1压缩编码，
+ * decryptFromBytes包含从字节数组恢复密文(按需解码)和解密；两种编码下的密文字节数以"#"开头输出到报告中。
+ * EHCPABE和FHCPABE的加密对象是文件(混合加密)，明文、密文和解密结果放在临时目录中，它们的encrypt/decrypt包含文件读写；
+ * PPKE没有解密算法，只测量到encrypt。每个方案在计时之外解密一次并与明文比较，不一致时终止基准测试
+ */
+public class SchemeBenchmark {
+
+    private static final List<String> ALL_SCHEMES = Arrays.asList(
+            "CPABE", "CPABEWaters11", "KPABEa", "KPABEb", "FIBEa", "FIBEb", "EHCPABE", "FHCPABE", "PPKE");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        List<String> pairings = listOption(options, "pairing", "a.properties");
+        int[] universes = intOption(options, "universe", "20");
+        int[] depths = intOption(options, "depth", "1,2");
+        int[] widths = intOption(options, "width", "2,3");
+        int[] attributeCounts = intOption(options, "attributes", "4,8");
+        List<String> schemes = listOption(options, "schemes", String.join(",", ALL_SCHEMES));
+        String out = options.getOrDefault("out", "bench_output.csv");
+        PrintStream report = BenchmarkRunner.silenceStdout();
+        BenchmarkRunner runner = new BenchmarkRunner(
+                Integer.parseInt(options.getOrDefault("warmup", "2")),
+                Integer.parseInt(options.getOrDefault("iterations", "5")), report);
+
+        report.println(BenchmarkRunner.csvHeader());
+        for (String pairing : pairings) {
+            for (int attributes : attributeCounts) {
+                for (int universe : universes) {
+                    if (attributes > universe) {
+                        continue;
+                    }
+                    for (int depth : depths) {
+                        for (int width : widths) {
+                            if (schemes.contains("CPABE")) benchCPABE(runner, pairing, universe, depth, width, attributes);
+                            if (schemes.contains("CPABEWaters11")) benchCPABEWaters11(runner, pairing, universe, depth, width, attributes);
+                            if (schemes.contains("KPABEa")) benchKPABEa(runner, pairing, universe, depth, width, attributes);
+                        }
+                    }
+                    if (schemes.contains("FIBEa")) benchFIBEa(runner, pairing, universe, attributes);
+                    if (schemes.contains("EHCPABE")) benchEHCPABE(runner, pairing, universe, attributes);
+                    if (schemes.contains("FHCPABE")) benchFHCPABE(runner, pairing, universe, attributes);
+                }
+                // 大宇宙方案与属性宇宙大小无关
+                for (int depth : depths) {
+                    for (int width : widths) {
+                        if (schemes.contains("KPABEb")) benchKPABEb(runner, pairing, depth, width, attributes);
+                    }
+                }
+                if (schemes.contains("FIBEb")) benchFIBEb(runner, pairing, attributes);
+                if (schemes.contains("PPKE")) benchPPKE(runner, pairing, attributes);
+            }
+        }
+        runner.writeCsv(out);
+        report.println("基准测试结果已写入 " + out);
+    }
+
+    private static void benchCPABE(BenchmarkRunner runner, String pairing, int universe, int depth, int width, int attributes) {
+        Map<String, String> params = params(pairing, universe, depth, width, attributes);
+        int[] userAttributes = range(attributes);
+        AccessTreeCPABE policy = cpabePolicy(depth, width, attributes);
+
+        runner.measure("CPABE", "setUp", params, () -> new CPABE(universe).setUp(pairing));
+        CPABE scheme = new CPABE(universe);
+        scheme.setUp(pairing);
+        runner.measure("CPABE", "keyGeneration", params, () -> scheme.keyGeneration(userAttributes));
+        Element message = scheme.generateRandomPlainText();
+        runner.measure("CPABE", "encrypt", params, () -> scheme.encrypt(policy, message));
+        ABECiphertext ct = scheme.encrypt(policy, message);
+        ABESecretKey sk = benchKeyDecoding(runner, "CPABE", params, scheme.keyGeneration(userAttributes), ct.getPairing());
+        checkDecryption("CPABE", params, message, scheme.decrypt(policy, userAttributes, sk, ct));
+        runner.measure("CPABE", "decrypt", params, () -> scheme.decrypt(policy, userAttributes, sk, ct));
+        benchEncoding(runner, "CPABE", params, message, ct, c -> scheme.decrypt(policy, userAttributes, sk, c));
+    }
+
+    private static void benchCPABEWaters11(BenchmarkRunner runner, String pairing, int universe, int depth, int width, int attributes) {
+        Map<String, String> params = params(pairing, universe, depth, width, attributes);
+        int[] userAttributes = range(attributes);
+
+        runner.measure("CPABEWaters11", "setUp", params, () -> new CPABEWaters11(universe).setUp(pairing));
+        CPABEWaters11 scheme = new CPABEWaters11(universe);
+        scheme.setUp(pairing);
+        CPABELewkoWatersLSSS policy = new CPABELewkoWatersLSSS(watersPolicy(depth, width, attributes), scheme.getBp());
+        runner.measure("CPABEWaters11", "keyGeneration", params, () -> scheme.keyGeneration(userAttributes));
+        Element message = scheme.getBp().getGT().newRandomElement().getImmutable();
+        runner.measure("CPABEWaters11", "encrypt", params, () -> scheme.encrypt(policy, message));
+        ABECiphertext ct = scheme.encrypt(policy, message);
+        ABESecretKey sk = benchKeyDecoding(runner, "CPABEWaters11", params, scheme.keyGeneration(userAttributes), ct.getPairing());
+        checkDecryption("CPABEWaters11", params, message, scheme.decrypt(policy, userAttributes, sk, ct));
+        runner.measure("CPABEWaters11", "decrypt", params, () -> scheme.decrypt(policy, userAttributes, sk, ct));
+        benchEncoding(runner, "CPABEWaters11", params, message, ct, c -> scheme.decrypt(policy, userAttributes, sk, c));
+    }
+
+    private static void benchKPABEa(BenchmarkRunner runner, String pairing, int universe, int depth, int width, int attributes) {
+        Map<String, String> params = params(pairing, universe, depth, width, attributes);
+        int[] messageAttributes = range(attributes);
+        AccessTreeKPABE policy = kpabePolicy(depth, width, attributes);
+
+        runner.measure("KPABEa", "setUp", params, () -> new KPABEa(universe).setUp(pairing));
+        KPABEa scheme = new KPABEa(universe);
+        scheme.setUp(pairing);
+        runner.measure("KPABEa", "keyGeneration", params, () -> scheme.keyGeneration(policy));
+        Element message = scheme.generateRandomPlainText();
+        runner.measure("KPABEa", "encrypt", params, () -> scheme.encrypt(messageAttributes, message));
+        ABECiphertext ct = scheme.encrypt(messageAttributes, message);
+        ABESecretKey sk = benchKeyDecoding(runner, "KPABEa", params, scheme.keyGeneration(policy), ct.getPairing());
+        checkDecryption("KPABEa", params, message, scheme.decrypt(policy, sk, ct));
+        runner.measure("KPABEa", "decrypt", params, () -> scheme.decrypt(policy, sk, ct));
+        benchEncoding(runner, "KPABEa", params, message, ct, c -> scheme.decrypt(policy, sk, c));
+    }
+
+    private static void benchKPABEb(BenchmarkRunner runner, String pairing, int depth, int width, int attributes) {
+        Map<String, String> params = params(pairing, -1, depth, width, attributes);
+        int[] messageAttributes = range(attributes);
+        AccessTreeKPABE policy = kpabePolicy(depth, width, attributes);
+
+        runner.measure("KPABEb", "setUp", params, () -> new KPABEb(attributes).setUp(pairing));
+        KPABEb scheme = new KPABEb(attributes);
+        scheme.setUp(pairing);
+        runner.measure("KPABEb", "keyGeneration", params, () -> scheme.keyGeneration(policy));
+        Element message = scheme.generateRandomPlainText();
+        runner.measure("KPABEb", "encrypt", params, () -> scheme.encrypt(messageAttributes, message));
+        ABECiphertext ct = scheme.encrypt(messageAttributes, message);
+        ABESecretKey sk = benchKeyDecoding(runner, "KPABEb", params, scheme.keyGeneration(policy), ct.getPairing());
+        checkDecryption("KPABEb", params, message, scheme.decrypt(policy, sk, ct));
+        runner.measure("KPABEb", "decrypt", params, () -> scheme.decrypt(policy, sk, ct));
+        benchEncoding(runner, "KPABEb", params, message, ct, c -> scheme.decrypt(policy, sk, c));
+    }
+
+    private static void benchFIBEa(BenchmarkRunner runner, String pairing, int universe, int attributes) {
+        Map<String, String> params = params(pairing, universe, -1, -1, attributes);
+        int[] userAttributes = range(attributes);
+        int distance = fibeDistance(attributes);
+
+        runner.measure("FIBEa", "setUp", params, () -> new FIBEa(universe, distance).setUp(pairing));
+        FIBEa scheme = new FIBEa(universe, distance);
+        scheme.setUp(pairing);
+        runner.measure("FIBEa", "keyGeneration", params, () -> scheme.keyGeneration(userAttributes));
+        Element message = scheme.generateRandomPlainText();
+        runner.measure("FIBEa", "encrypt", params, () -> scheme.encrypt(userAttributes, message));
+        ABECiphertext ct = scheme.encrypt(userAttributes, message);
+        ABESecretKey sk = benchKeyDecoding(runner, "FIBEa", params, scheme.keyGeneration(userAttributes), ct.getPairing());
+        checkDecryption("FIBEa", params, message, scheme.decrypt(userAttributes, sk, ct));
+        runner.measure("FIBEa", "decrypt", params, () -> scheme.decrypt(userAttributes, sk, ct));
+        benchEncoding(runner, "FIBEa", params, message, ct, c -> scheme.decrypt(userAttributes, sk, c));
+    }
+
+    private static void benchFIBEb(BenchmarkRunner runner, String pairing, int attributes) {
+        Map<String, String> params = params(pairing, -1, -1, -1, attributes);
+        int[] userAttributes = range(attributes);
+        int distance = fibeDistance(attributes);
+
+        runner.measure("FIBEb", "setUp", params, () -> new FIBEb(attributes, distance).setUp(pairing));
+        FIBEb scheme = new FIBEb(attributes, distance);
+        scheme.setUp(pairing);
+        runner.measure("FIBEb", "keyGeneration", params, () -> scheme.keyGeneration(userAttributes));
+        Element message = scheme.generateRandomPlainText();
+        runner.measure("FIBEb", "encrypt", params, () -> scheme.encrypt(userAttributes, message));
+        ABECiphertext ct = scheme.encrypt(userAttributes, message);
+        ABESecretKey sk = benchKeyDecoding(runner, "FIBEb", params, scheme.keyGeneration(userAttributes), ct.getPairing());
+        checkDecryption("FIBEb", params, message, scheme.decrypt(userAttributes, sk, ct));
+        runner.measure("FIBEb", "decrypt", params, () -> scheme.decrypt(userAttributes, sk, ct));
+        benchEncoding(runner, "FIBEb", params, message, ct, c -> scheme.decrypt(userAttributes, sk, c));
+    }
+
+    // EHCPABE和FHCPABE加密的是level node对应的文件：明文、密文、解密结果都放在临时目录中，计时包含AES加解密与文件读写
+    private static void benchEHCPABE(BenchmarkRunner runner, String pairing, int universe, int attributes) throws Exception {
+        Map<String, String> params = params(pairing, universe, -1, -1, attributes);
+        int[] userAttributes = range(attributes);
+        File dir = Files.createTempDirectory("ehcpabe-bench").toFile();
+        HashMap<String, String> plainText2Ciphertext = new HashMap<>();
+        HashMap<String, String> plainText2DecryptedText = new HashMap<>();
+        String[] files = levelFiles(dir, 2, plainText2Ciphertext, plainText2DecryptedText);
+        String ctFilePath = new File(dir, "ct.bin").getPath();
+        AccessTreeEHCPABE policy = ehcpabePolicy(files, attributes);
+
+        runner.measure("EHCPABE", "setUp", params, () -> new EHCPABE(universe, plainText2Ciphertext, plainText2DecryptedText).setUp(pairing));
+        EHCPABE scheme = new EHCPABE(universe, plainText2Ciphertext, plainText2DecryptedText);
+        scheme.setUp(pairing);
+        runner.measure("EHCPABE", "keyGeneration", params, () -> scheme.keyGeneration(userAttributes));
+        ABESecretKey sk = scheme.keyGeneration(userAttributes);
+        runner.measure("EHCPABE", "encrypt", params, () -> scheme.encrypt(policy, ctFilePath));
+        scheme.encrypt(policy, ctFilePath);
+        clearDecryptedFiles(files, plainText2DecryptedText);
+        scheme.decrypt(policy, userAttributes, sk, ctFilePath);
+        checkDecryptedFiles("EHCPABE", params, files, plainText2DecryptedText);
+        runner.measure("EHCPABE", "decrypt", params, () -> scheme.decrypt(policy, userAttributes, sk, ctFilePath));
+
+        deleteRecursively(dir);
+    }
+
+    private static void benchFHCPABE(BenchmarkRunner runner, String pairing, int universe, int attributes) throws Exception {
+        Map<String, String> params = params(pairing, universe, -1, -1, attributes);
+        int[] userAttributes = range(attributes);
+        File dir = Files.createTempDirectory("fhcpabe-bench").toFile();
+        HashMap<String, String> plainText2Ciphertext = new HashMap<>();
+        HashMap<String, String> plainText2DecryptedText = new HashMap<>();
+        String[] files = levelFiles(dir, 1, plainText2Ciphertext, plainText2DecryptedText);
+        String ctFilePath = new File(dir, "ct.bin").getPath();
+        FHCPABEAccessTree policy = fhcpabePolicy(files, attributes);
+
+        runner.measure("FHCPABE", "setUp", params, () -> new FHCPABEDemo(universe, plainText2Ciphertext, plainText2DecryptedText).setUp(pairing));
+        FHCPABEDemo scheme = new FHCPABEDemo(universe, plainText2Ciphertext, plainText2DecryptedText);
+        scheme.setUp(pairing);
+        runner.measure("FHCPABE", "keyGeneration", params, () -> scheme.keyGeneration(userAttributes));
+        ABESecretKey sk = scheme.keyGeneration(userAttributes);
+        runner.measure("FHCPABE", "encrypt", params, () -> scheme.encrypt(policy, ctFilePath));
+        scheme.encrypt(policy, ctFilePath);
+        clearDecryptedFiles(files, plainText2DecryptedText);
+        scheme.decrypt(policy, userAttributes, sk, ctFilePath);
+        checkDecryptedFiles("FHCPABE", params, files, plainText2DecryptedText);
+        runner.measure("FHCPABE", "decrypt", params, () -> scheme.decrypt(policy, userAttributes, sk, ctFilePath));
+
+        deleteRecursively(dir);
+    }
+
+    // PPKE中attributes表示密文的标签个数d
+    private static void benchPPKE(BenchmarkRunner runner, String pairing, int attributes) {
+        Map<String, String> params = params(pairing, -1, -1, -1, attributes);
+        List<String> tags = new ArrayList<>();
+        for (int i = 1; i <= attributes; i++) {
+            tags.add("tag" + i);
+        }
+
+        runner.measure("PPKE", "setUp", params, () -> new PPKE(attributes).setUp(pairing));
+        PPKE scheme = new PPKE(attributes);
+        scheme.setUp(pairing);
+        runner.measure("PPKE", "keyGeneration", params, () -> scheme.keyGeneration("tag0"));
+        Element message = PairingFactory.getPairing(pairing).getGT().newRandomElement().getImmutable();
+        runner.measure("PPKE", "encrypt", params, () -> scheme.encrypt(message, tags));
+    }
+
+    // 私钥解码的开销单独计量，返回解码一次得到的私钥。各方案的解密都重复使用这个私钥，
+    // 因此解密的耗时不含解码，并且与实际使用一样包含私钥上已缓存的配对预计算
+    private static ABESecretKey benchKeyDecoding(BenchmarkRunner runner, String scheme, Map<String, String> params,
+                                                 ABESecretKey sk, Pairing bp) {
+        byte[] skBytes = sk.toBytes();
+        runner.measure(scheme, "skFromBytes", params, () -> ABESecretKey.fromBytes(skBytes, scheme, bp));
+        return ABESecretKey.fromBytes(skBytes, scheme, bp);
+    }
+
+    // 在计时之外解密一次并与原消息比较。解密失败(返回null)或结果错误时终止基准测试，避免把错误的解密当作很快的成功计时
+    private static void checkDecryption(String scheme, Map<String, String> params, Element message, Element decrypted) {
+        if (decrypted == null || !message.isEqual(decrypted)) {
+            throw new IllegalStateException(scheme + " " + params + " 解密结果与明文不一致！");
+        }
+    }
+
+    // 在临时目录中生成count个明文文件(各4KB随机内容)，并登记对应的密文文件和解密结果文件
+    private static String[] levelFiles(File dir, int count, Map<String, String> plainText2Ciphertext,
+                                       Map<String, String> plainText2DecryptedText) throws Exception {
+        Random random = new Random(count);
+        String[] files = new String[count];
+        for (int i = 0; i < count; i++) {
+            byte[] content = new byte[4096];
+            random.nextBytes(content);
+            File plainText = new File(dir, "File" + i + ".txt");
+            Files.write(plainText.toPath(), content);
+            files[i] = plainText.getPath();
+            plainText2Ciphertext.put(files[i], new File(dir, "Ciphertext" + i + ".txt").getPath());
+            plainText2DecryptedText.put(files[i], new File(dir, "decryptedText" + i + ".txt").getPath());
+        }
+        return files;
+    }
+
+    private static void clearDecryptedFiles(String[] files, Map<String, String> plainText2DecryptedText) {
+        for (String file : files) {
+            new File(plainText2DecryptedText.get(file)).delete();
+        }
+    }
+
+    // 混合加密方案的解密结果写在文件中：逐个与明文文件比较，缺失或不一致时终止基准测试
+    private static void checkDecryptedFiles(String scheme, Map<String, String> params, String[] files,
+                                            Map<String, String> plainText2DecryptedText) throws Exception {
+        for (String file : files) {
+            File decryptedText = new File(plainText2DecryptedText.get(file));
+            if (!decryptedText.exists()
+                    || !Arrays.equals(Files.readAllBytes(Paths.get(file)), Files.readAllBytes(decryptedText.toPath()))) {
+                throw new IllegalStateException(scheme + " " + params + " 解密结果与明文文件不一致: " + file);
+            }
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    // 密文编码的开销：未压缩与压缩G1两种编码下，编码为字节数组的耗时、从字节数组恢复后解密的耗时，以及密文的字节数
+    private static void benchEncoding(BenchmarkRunner runner, String scheme, Map<String, String> params, Element message,
+                                      ABECiphertext ct, Function<ABECiphertext, Element> decrypt) {
+        Pairing bp = ct.getPairing();
+        for (boolean compressG1 : new boolean[]{false, true}) {
+            String suffix = compressG1 ? "Compressed" : "";
+            runner.measure(scheme, "ctToBytes" + suffix, params, () -> ct.toBytes(compressG1));
+            byte[] ctBytes = ct.toBytes(compressG1);
+            runner.note(scheme + " " + params + " 密文" + (compressG1 ? "(压缩G1)" : "(未压缩)") + "字节数: " + ctBytes.length);
+            checkDecryption(scheme, params, message, decrypt.apply(ABECiphertext.fromBytes(ctBytes, scheme, bp)));
+            runner.measure(scheme, "decryptFromBytes" + suffix, params,
+                    () -> decrypt.apply(ABECiphertext.fromBytes(ctBytes, scheme, bp)));
+        }
+    }
+
+    // 满的访问控制树：每个门有width个子节点、门限为(width+1)/2，共depth层门
+    private static AccessTreeCPABE cpabePolicy(int depth, int width, int attributes) {
+        AccessTreeCPABE tree = new AccessTreeCPABE(cpabeNode(depth, width, attributes, new int[]{0}));
+        tree.generateLeafID();
+        return tree;
+    }
+
+    private static AccessTreeCPABE.Node cpabeNode(int depth, int width, int attributes, int[] leafCounter) {
+        if (depth == 0) {
+            return new AccessTreeCPABE.Node(leafCounter[0]++ % attributes + 1);
+        }
+        AccessTreeCPABE.Node gate = new AccessTreeCPABE.Node((width + 1) / 2, null);
+        for (int i = 0; i < width; i++) {
+            gate.addChild(cpabeNode(depth - 1, width, attributes, leafCounter));
+        }
+        return gate;
+    }
+
+    private static AccessTreeKPABE kpabePolicy(int depth, int width, int attributes) {
+        AccessTreeKPABE tree = new AccessTreeKPABE(kpabeNode(depth, width, attributes, new int[]{0}));
+        tree.generateLeafID();
+        return tree;
+    }
+
+    private static AccessTreeKPABE.Node kpabeNode(int depth, int width, int attributes, int[] leafCounter) {
+        if (depth == 0) {
+            return new AccessTreeKPABE.Node(leafCounter[0]++ % attributes + 1);
+        }
+        AccessTreeKPABE.Node gate = new AccessTreeKPABE.Node((width + 1) / 2, null);
+        for (int i = 0; i < width; i++) {
+            gate.addChild(kpabeNode(depth - 1, width, attributes, leafCounter));
+        }
+        return gate;
+    }
+
+    // 两层的层级访问控制树：根节点(files[0])要求内层节点(files[1])和属性attributes同时满足，内层节点是1..attributes-1上的门限为一半的门
+    private static AccessTreeEHCPABE ehcpabePolicy(String[] files, int attributes) {
+        int inner = Math.max(1, attributes - 1);
+        AccessTreeEHCPABE.Node root = new AccessTreeEHCPABE.Node(2, files[0], null);
+        AccessTreeEHCPABE.Node gate = new AccessTreeEHCPABE.Node((inner + 1) / 2, files[1], null);
+        for (int i = 1; i <= inner; i++) {
+            gate.addChild(new AccessTreeEHCPABE.Node(i));
+        }
+        root.addChild(gate);
+        root.addChild(new AccessTreeEHCPABE.Node(attributes));
+        AccessTreeEHCPABE tree = new AccessTreeEHCPABE(root);
+        tree.generateLeaveSequence();
+        return tree;
+    }
+
+    // FHCPABE的transparent node部分(FHCPABE_H2)还没有实现，嵌套的level node无法解密，所以只用一个level node：
+    // 根节点(files[0])是1..attributes上的门限为一半的门
+    private static FHCPABEAccessTree fhcpabePolicy(String[] files, int attributes) {
+        FHCPABEAccessTree.Node root = new FHCPABEAccessTree.Node((attributes + 1) / 2, files[0], null);
+        for (int i = 1; i <= attributes; i++) {
+            root.addChild(new FHCPABEAccessTree.Node(i));
+        }
+        FHCPABEAccessTree tree = new FHCPABEAccessTree(root);
+        tree.generateLeaveSequence();
+        return tree;
+    }
+
+    // LewkoWaters转换只支持AND(两个子节点)和OR门：偶数层为AND门，奇数层为有width个子节点的OR门
+    private static CPABELewkoWatersLSSS.Node watersPolicy(int depth, int width, int attributes) {
+        return watersNode(depth, 0, width, attributes, new int[]{0});
+    }
+
+    private static CPABELewkoWatersLSSS.Node watersNode(int depth, int level, int width, int attributes, int[] leafCounter) {
+        if (level == depth) {
+            return new CPABELewkoWatersLSSS.Node(leafCounter[0]++ % attributes + 1);
+        }
+        boolean and = level % 2 == 0;
+        CPABELewkoWatersLSSS.Node gate = new CPABELewkoWatersLSSS.Node(and ? 2 : 1, null);
+        for (int i = 0; i < (and ? 2 : width); i++) {
+            gate.addChild(watersNode(depth, level + 1, width, attributes, leafCounter));
+        }
+        return gate;
+    }
+
+    private static int fibeDistance(int attributes) {
+        return Math.max(1, attributes / 2);
+    }
+
+    private static int[] range(int n) {
+        int[] attributes = new int[n];
+        for (int i = 0; i < n; i++) {
+            attributes[i] = i + 1;
+        }
+        return attributes;
+    }
+
+    // 未使用的参数传入-1，在CSV中输出为"-"
+    private static Map<String, String> params(String pairing, int universe, int depth, int width, int attributes) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("pairing", pairing);
+        if (universe > 0) params.put("universe", String.valueOf(universe));
+        if (depth > 0) params.put("depth", String.valueOf(depth));
+        if (width > 0) params.put("width", String.valueOf(width));
+        params.put("attributes", String.valueOf(attributes));
+        return params;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("参数格式应为 key=value: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    private static List<String> listOption(Map<String, String> options, String key, String defaultValue) {
+        return Arrays.asList(options.getOrDefault(key, defaultValue).split(","));
+    }
+
+    private static int[] intOption(Map<String, String> options, String key, String defaultValue) {
+        return listOption(options, key, defaultValue).stream().mapToInt(Integer::parseInt).toArray();
+    }
+}
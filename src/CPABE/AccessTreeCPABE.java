@@ -1,17 +1,22 @@
 package CPABE;
 
+import Utils.ABESecretKey;
+import Utils.AttributeSet;
+import Utils.CompiledAccessTree;
 import Utils.MathUtils;
+import Utils.PairingUtils;
 import it.unisa.dia.gas.jpbc.Element;
 import it.unisa.dia.gas.jpbc.Pairing;
 import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
 
 public class AccessTreeCPABE implements Iterable<AccessTreeCPABE.Node> {
 
     public static class Node {
 
-        public Element[] polynomial; // 每个节点被赋予一个多项式。多项式的常数项系数=多项式在x=0处的取值=该节点的秘密值
         public int threshold; // 非叶子节点具有门限阈值；叶子节点的门限阈值置为-1
         public int attribute; // 叶子节点具有属性值；非叶子节点的属性值置为-1
         public List<Node> children; // 非叶子节点具有子节点，以列表维护。注意论文当中的index(child)代表child在children当中的下标+1
@@ -19,14 +24,12 @@ public class AccessTreeCPABE implements Iterable<AccessTreeCPABE.Node> {
 
         // 对于叶子节点进行初始化操作：提供叶子节点所对应的属性
         public Node(int attribute) {
-            this.polynomial = new Element[1];
             this.threshold = -1;
             this.attribute = attribute;
         }
 
         // 对于非叶子节点进行初始化操作：提供非叶子节点对应的阈值和子节点；也可以通过后续addChild和addChildren操作添加非叶子节点的子节点
         public Node(int threshold, List<Node> children) {
-            this.polynomial = new Element[threshold];
             this.threshold = threshold;
             this.attribute = -1;
             this.leafID = -1;
@@ -41,6 +44,7 @@ public class AccessTreeCPABE implements Iterable<AccessTreeCPABE.Node> {
         // 非叶子节点添加单个子节点
         public void addChild(Node child) {
             this.children.add(child);
+            CompiledAccessTree.treeModified();
         }
 
         /**
@@ -49,6 +53,7 @@ public class AccessTreeCPABE implements Iterable<AccessTreeCPABE.Node> {
         public void addChildren(Node... newChildren) {
             if (newChildren != null && newChildren.length > 0) {
                 this.children.addAll(Arrays.asList(newChildren));
+                CompiledAccessTree.treeModified();
             }
         }
 
@@ -56,136 +61,74 @@ public class AccessTreeCPABE implements Iterable<AccessTreeCPABE.Node> {
 
     // accessTree：包装好根节点
     public Node root;
+    // 编译后的扁平化表示，见compiled()
+    private final CompiledAccessTree.Cache<Node> compiled = new CompiledAccessTree.Cache<>(n -> n.children, n -> n.threshold, n -> n.attribute);
+    private ForkJoinPool decryptionPool; // 解密时并行计算选中子树所用的线程池，为null时顺序计算
 
     public AccessTreeCPABE(Node root) {
         this.root = root;
     }
 
-    // 密钥分发阶段，自顶向下配置各节点的秘密值和多项式，注意需要提供根节点的秘密值
-    public void generatePolySecret(Pairing bp, Element rootSecret) {
-        // 设置根节点的秘密：秘密值 = 根节点多项式的常数项系数 = 根节点多项式在x=0处的取值
-        this.root.polynomial[0] = rootSecret;
-        generatePolySecretHelper(this.root, bp);
+    // 返回编译后的访问控制树(扁平化的数组表示)，加密、解密都在它上面遍历。
+    // root被替换或通过addChild/addChildren修改过时会自动重新编译(直接修改Node的字段后需调用CompiledAccessTree.treeModified)；修改树的结构后仍需重新调用generateLeafID为节点编号
+    public CompiledAccessTree<Node> compiled() {
+        return compiled.get(root);
     }
 
-    public Element decryptNode(int[] messageAttributes, Map<Integer, Element> Dj , Map<Integer, Element> DjPrime, Map<Integer, Element> Cy, Map<Integer, Element> CyPrime,Pairing bp) {
-        return decryptNodeHelper(root, messageAttributes, Dj, DjPrime, Cy, CyPrime, bp);
+    // 设置解密时并行计算兄弟子树(及其叶子的配对)所用的线程池，为null时在调用线程中顺序计算(默认)
+    public void setDecryptionPool(ForkJoinPool pool) {
+        this.decryptionPool = pool;
     }
 
-    /**
-     * 生成叶子节点的编号序列。
-     */
-    public void generateLeafID() {
-        int sequenceNumber = 1;
-        for (Node n : this) {
-            if (n.isLeave()) {
-                n.leafID = sequenceNumber;
-                sequenceNumber += 1;
-            }
-        }
+    // 自顶向下分发秘密，注意需要提供根节点的秘密值。返回按compiled()编号索引的各节点秘密值(多项式在x=0处的取值)。
+    // 秘密值只属于本次调用，树本身不被修改，因此同一棵树可以同时用于多次加密
+    public Element[] generatePolySecret(Pairing bp, Element rootSecret) {
+        return compiled().shareSecret(rootSecret, null, bp);
     }
 
-    // 密钥分发阶段，自顶向下配置各节点的秘密值和多项式。每次操作都是设置当前节点的叶子节点，注意根节点一开始就要提供
-    private void generatePolySecretHelper(Node n, Pairing bp) {
-        // 如果当前节点是叶子节点，直接返回不进行操作(每次操作都是设置当前节点的子节点，叶子节点没有子节点)
-        if (n.isLeave()) return;
-
-        // 如果当前节点不是叶子节点，首先给当前节点设置好多项式q(x)(注意多项式的常量是秘密值)
-        n.polynomial = MathUtils.generateRandomPolynomial(n.threshold, n.polynomial[0], bp);
-        // 然后对于当前节点的每一个叶子节点child，计算q(index(child))的多项式值作为child的秘密值
-        for (int i = 0; i < n.children.size(); i++) {
-            Node childNode = n.children.get(i);
-            // 这里index(child)就是child在children数组的下标+1
-            childNode.polynomial[0] = MathUtils.qx(n.polynomial, bp.getZr().newElement(i+1));
-            // 继续递归调研
-            generatePolySecretHelper(childNode, bp);
-        }
+    // 两阶段解密：先不做配对，只根据属性选出叶子数最少的满足子树；再只对选中的叶子计算配对。不满足访问控制树时返回null
+    public Element decryptNode(int[] messageAttributes, ABESecretKey sk, Map<Integer, Element> Cy, Map<Integer, Element> CyPrime,Pairing bp) {
+        return decryptNode(AttributeSet.of(messageAttributes), sk, Cy, CyPrime, bp);
     }
 
-
-    // accessTree的层序遍历迭代器
-    @Override
-    public Iterator<Node> iterator() {
-        return new Iterator<Node>() {
-            private ArrayDeque<Node> queue = new ArrayDeque<>();
-            {
-                // 将根节点加入队列
-                if (root != null) {
-                    queue.addLast(root);
-                }
-            }
-
-            @Override
-            public boolean hasNext() {
-                return !queue.isEmpty();
-            }
-
-            @Override
-            public Node next() {
-                if (!hasNext()) {
-                    throw new NoSuchElementException();
-                }
-                // 获取并移除队列头部的节点
-                Node current = queue.removeFirst();
-                // 将当前节点的子节点按顺序加入队列
-                if (current.children != null) {
-                    queue.addAll(current.children);
-                }
-                return current;
-            }
-        };
+    // 与上面的方法相同，属性集合已经构建好，叶子节点的属性匹配是O(1)的
+    public Element decryptNode(AttributeSet attributeSet, ABESecretKey sk, Map<Integer, Element> Cy, Map<Integer, Element> CyPrime,Pairing bp) {
+        return decryptNode(attributeSet, sk, (IntFunction<Element>) Cy::get, CyPrime::get, bp);
     }
 
-
-    private Element decryptNodeHelper(Node n, int[] userAttributes, Map<Integer, Element> Dj , Map<Integer, Element> DjPrime, Map<Integer, Element> Cy,  Map<Integer, Element> CyPrime, Pairing bp) {
-        // 如果n是叶子节点
-        if (n.isLeave()) {
-            // 检测n的属性是否在userAttributes当中被包含
-            for (int u : userAttributes) {
-                if (n.attribute == u) {
-                    //如果被包含，返回e(Di, Cx)/e(Di', Cx')
-                    Element e_Di_Cx = bp.pairing(Dj.get(n.attribute), Cy.get(n.leafID)).getImmutable();
-                    Element e_DiPrime_CxPrime = bp.pairing(DjPrime.get(n.attribute), CyPrime.get(n.leafID)).getImmutable();
-                    return e_Di_Cx.div(e_DiPrime_CxPrime).getImmutable();
-                }
-            }
+    // 与上面的方法相同，叶子的Cy、Cy'按leafID按需获取，只有选中的叶子才会被取出
+    public Element decryptNode(AttributeSet attributeSet, ABESecretKey sk, IntFunction<Element> Cy, IntFunction<Element> CyPrime, Pairing bp) {
+        CompiledAccessTree<Node> c = compiled();
+        int[][] plan = c.plan(0, i -> attributeSet.contains(c.attribute(i)));
+        if (plan == null) {
             return null;
         }
+        // 规划阶段已经确认选中叶子的属性被用户属性包含，叶子的值为e(Di, Cx)/e(Di', Cx')。私钥元素Dj、Dj'来自私钥句柄sk，两次配对合并成一次乘积配对，只做一次最终幂运算
+        return c.reconstruct(0, plan, i -> {
+            Node n = c.node(i);
+            return PairingUtils.pairingQuotient(bp, sk.get("Dj" + n.attribute), Cy.apply(n.leafID),
+                    sk.get("DjPrime" + n.attribute), CyPrime.apply(n.leafID));
+        }, bp, decryptionPool);
+    }
 
-        // 如果n是非叶子节点，维护返回true的index-Node和index-SecretValue。index-SecretValue是论文当中的Fz
-        HashMap<Integer, Node> index2ValidChildren = new HashMap<>(); // 记录返回true的index和Node
-        HashMap<Integer, Element> index2SecretValue = new HashMap<>(); // 记录返回true的index和secret
-
-        for (int i = 0; i < n.children.size(); i++){
-            Node childNode = n.children.get(i);
-            // 递归调用，恢复子节点的秘密值
-            Element childSecret = decryptNodeHelper(childNode, userAttributes, Dj, DjPrime, Cy, CyPrime, bp);
-            if (childSecret != null){
-                // 注意子节点child的index(child)就是child节点在n.children中的下标+1
-                index2ValidChildren.put(i+1, childNode);
-                index2SecretValue.put(i+1, childSecret);
-                // 如果满足条件的子节点个数已经达到门限值，则跳出循环，不再计算剩余的节点。此时index2ValidChildren构成了论文中的S
-                if (index2ValidChildren.size() == n.threshold) {
-                    break;
-                }
-            }
-        }
-
-        // 如果非叶子节点n的返回true的子节点个数满足n的阈值，则可以恢复n的秘密
-        if (index2ValidChildren.size() == n.threshold) {
-            Element result = bp.getGT().newOneElement().getImmutable();
-            // 对于非叶子节点n的返回true的子节点构成的大小为threshold的集合S，遍历S
-            for (int i : index2ValidChildren.keySet()) {
-                Element delta = MathUtils.computeLagrangeBasis(i, index2ValidChildren.keySet().stream().mapToInt(Integer::intValue).toArray(), 0, bp);  //计算拉个朗日插值因子
-                // result = ∏ Fz^delta
-                result = result.mul(index2SecretValue.get(i).duplicate().powZn(delta)).getImmutable();
-            }
-            return result;
+    /**
+     * 生成叶子节点的编号序列。
+     */
+    public void generateLeafID() {
+        CompiledAccessTree<Node> c = compiled();
+        for (int k = 0; k < c.leafCount(); k++) {
+            int i = c.leaf(k);
+            c.node(i).leafID = c.sequence(i);
         }
-        return null;
     }
 
 
+    // accessTree的层序遍历迭代器，直接遍历编译后的节点数组
+    @Override
+    public Iterator<Node> iterator() {
+        return compiled().iterator();
+    }
+
 
     public static AccessTreeCPABE getInstance1() {
         Node[] nodes = new Node[7];
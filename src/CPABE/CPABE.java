@@ -1,14 +1,19 @@
 package CPABE;
 
-import Utils.ConversionUtils;
+import Utils.ABECiphertext;
+import Utils.ABESecretKey;
+import Utils.AttributeSet;
+import Utils.CompiledAccessTree;
+import Utils.ElementContainer;
+import Utils.LazyPowPreProcessing;
 import Utils.MathUtils;
-import Utils.PropertiesUtils;
+import Utils.ParallelUtils;
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
 import it.unisa.dia.gas.jpbc.Pairing;
 import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
 
-import java.util.HashMap;
-import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * CPABE (Ciphertext-Policy Attribute Based Encryption) 演示类
@@ -27,120 +32,207 @@ public class CPABE {
     private Element g; //G1
     private Element alpha; //Zr
     private Element beta;  //Zr
+    private Element betaInverse; // 1/beta，在setUp中求逆一次，密钥生成时不再做除法
     private Element h; // h = g^beta;
     private Element f;
+    private Element eggAlpha; // e(g, g)^alpha ∈ GT
+
+    // 以下底数的预计算表在第一次求幂时构建
+    private ElementPowPreProcessing gPre; // 密钥生成的g^r、D、Dj'，加密的Cy，委托的D~、Dk~
+    private ElementPowPreProcessing hPre; // 只用于加密的C = h^s
+    private ElementPowPreProcessing fPre; // 只用于委托的f^r~
+    private ElementPowPreProcessing eggAlphaPre; // 只用于加密的e(g, g)^(alpha*s)
+
+    // 加密时并行计算叶子节点密文分量所用的线程池，为null时顺序计算
+    private ForkJoinPool encryptionPool;
 
     public CPABE(int u) {
         this.universe = u;
     }
 
+    /**
+     * 设置加密时并行计算叶子节点密文分量Cy、Cy'所用的线程池。各叶子节点的分量相互独立，策略的叶子很多时可以显著降低单次加密的延迟
+     * @param pool 线程池，为null时在调用线程中顺序计算(默认)
+     */
+    public void setEncryptionPool(ForkJoinPool pool) {
+        this.encryptionPool = pool;
+    }
+
     public void setUp(String pairingFilePath) {
         this.bp = PairingFactory.getPairing(pairingFilePath);
         this.g = bp.getG1().newRandomElement().getImmutable(); // g <- G1
         this.alpha = bp.getZr().newRandomElement().getImmutable(); // alpha <- Zr
         this.beta = bp.getZr().newRandomElement().getImmutable(); // beta <- Zr
         this.h = this.g.powZn(this.beta).getImmutable(); // h = g^beta
-        this.f = this.g.powZn(bp.getZr().newOneElement().div(beta)).getImmutable();  // f = g^1/beta
+        this.betaInverse = this.beta.invert().getImmutable();
+        this.f = this.g.powZn(betaInverse).getImmutable();  // f = g^1/beta
+        this.eggAlpha = bp.pairing(g, g).powZn(alpha).getImmutable(); // e(g, g)^alpha
+        initPreProcessing();
+    }
+
+    // 保存公共参数(g, h, f, e(g, g)^alpha)，加密方只需要这个文件；不含主密钥，可以公开
+    public void storePublicParameters(String publicParamsFilePath) {
+        ElementContainer params = new ElementContainer("CPABE.pk", bp);
+        params.putInts("universe", new int[]{universe});
+        params.putElement("g", g);
+        params.putElement("h", h);
+        params.putElement("f", f);
+        params.putElement("eggAlpha", eggAlpha);
+        params.store(publicParamsFilePath);
+    }
+
+    // 保存主密钥(alpha, beta)，只有生成密钥的一方需要，应妥善保管
+    public void storeMasterKey(String mskFilePath) {
+        ElementContainer msk = new ElementContainer("CPABE.msk", bp);
+        msk.putElement("alpha", alpha);
+        msk.putElement("beta", beta);
+        msk.putElement("betaInverse", betaInverse);
+        msk.store(mskFilePath);
+    }
+
+    // 代替setUp：只恢复storePublicParameters保存的公共参数，不重新生成参数、不做求幂和配对。恢复后可以加密、解密和委托，不能生成密钥
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath) {
+        this.bp = PairingFactory.getPairing(pairingFilePath);
+        ElementContainer params = ElementContainer.load(publicParamsFilePath, "CPABE.pk", bp);
+        if (params.getInts("universe")[0] != universe) {
+            throw new IllegalArgumentException("参数文件的属性上限为" + params.getInts("universe")[0] + "，而不是" + universe);
+        }
+        this.g = params.getElement("g");
+        this.h = params.getElement("h");
+        this.f = params.getElement("f");
+        this.eggAlpha = params.getElement("eggAlpha");
+        this.alpha = null;
+        this.beta = null;
+        this.betaInverse = null;
+        initPreProcessing();
+    }
+
+    // 代替setUp：恢复公共参数和storeMasterKey保存的主密钥，恢复后可以生成密钥、加密和解密，与原来进程的密钥、密文互通
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath, String mskFilePath) {
+        loadParameters(pairingFilePath, publicParamsFilePath);
+        ElementContainer msk = ElementContainer.load(mskFilePath, "CPABE.msk", bp);
+        this.alpha = msk.getElement("alpha");
+        this.beta = msk.getElement("beta");
+        this.betaInverse = msk.getElement("betaInverse");
+    }
+
+    private void initPreProcessing() {
+        this.gPre = new LazyPowPreProcessing(g);
+        this.hPre = new LazyPowPreProcessing(h);
+        this.fPre = new LazyPowPreProcessing(f);
+        this.eggAlphaPre = new LazyPowPreProcessing(eggAlpha);
     }
 
     public void keyGeneration(int[] userAttributes, String skFilePath) {
+        keyGeneration(userAttributes).store(skFilePath);
+    }
+
+    // 生成私钥并直接返回内存中的私钥句柄，不写文件
+    public ABESecretKey keyGeneration(int[] userAttributes) {
+        if (alpha == null) {
+            throw new IllegalStateException("只加载了公共参数，没有主密钥，不能生成密钥");
+        }
         checkAttributeSet(userAttributes);
-        Properties skProperties = new Properties();
+        ABESecretKey sk = new ABESecretKey("CPABE", bp);
 
         Element r = this.bp.getZr().newRandomElement().getImmutable(); // r <- Zr
-        Element gr = this.g.powZn(r).getImmutable();
+        Element gr = this.gPre.powZn(r).getImmutable();
 
-        Element D = g.powZn((alpha.add(r)).div(beta)).getImmutable(); // D = g^((alpha+r)/beta) ∈ G1
-        skProperties.setProperty("D", ConversionUtils.bytes2String(D.toBytes()));
+        Element D = gPre.powZn((alpha.add(r)).mul(betaInverse)).getImmutable(); // D = g^((alpha+r)/beta) ∈ G1
+        sk.put("D", D);
 
         for (int j : userAttributes) { // for each attribute j ∈ S(user Attributes)
             Element rj = this.bp.getZr().newRandomElement().getImmutable(); // rj <- Zr
-            Element hj = MathUtils.H1(String.valueOf(j), bp).getImmutable(); // H(j)
-            Element hjrj = hj.powZn(rj).getImmutable(); // hjrj = H(j)^rj
+            Element hjrj = MathUtils.H1Pow(String.valueOf(j), rj, bp); // hjrj = H(j)^rj
             Element Dj = gr.mul(hjrj).getImmutable(); // Dj = g^r * H(j)^rj
-            Element DjPrime = g.powZn(rj).getImmutable(); // Dj' = g^rj
+            Element DjPrime = gPre.powZn(rj).getImmutable(); // Dj' = g^rj
 
-            skProperties.setProperty("Dj"+j, ConversionUtils.bytes2String(Dj.toBytes()));
-            skProperties.setProperty("DjPrime"+j, ConversionUtils.bytes2String(DjPrime.toBytes()));
+            sk.put("Dj"+j, Dj);
+            sk.put("DjPrime"+j, DjPrime);
         }
+        sk.setAttributes(userAttributes); // 私钥携带自己的属性列表，解密时不需要再提供
 
-        PropertiesUtils.store(skProperties, skFilePath);
+        return sk;
     }
 
     public void encrypt(AccessTreeCPABE messageAttributes, Element message, String ctFilePath) {
-        Properties ctProperties = new Properties();
+        encrypt(messageAttributes, message).store(ctFilePath);
+    }
+
+    // 加密并直接返回内存中的密文对象，不写文件
+    public ABECiphertext encrypt(AccessTreeCPABE messageAttributes, Element message) {
+        ABECiphertext ct = new ABECiphertext("CPABE", bp);
 
         Element s = bp.getZr().newRandomElement().getImmutable(); // s <- Zr
-        messageAttributes.generatePolySecret(bp, s);
-
-        Element CWave = message.mul((bp.pairing(g, g).powZn(alpha.mul(s))));
-        Element C = h.powZn(s);
-        ctProperties.setProperty("CWave", ConversionUtils.bytes2String(CWave.toBytes()));
-        ctProperties.setProperty("C", ConversionUtils.bytes2String(C.toBytes()));
-
-        for (AccessTreeCPABE.Node y : messageAttributes) {
-            if (y.isLeave()) {
-                int yCount = y.leafID;
-                Element Cy = g.powZn(y.polynomial[0]).getImmutable();
-                Element CyPrime = (MathUtils.H1(String.valueOf(y.attribute), bp)).powZn(y.polynomial[0]);
-                ctProperties.setProperty("Cy"+yCount, ConversionUtils.bytes2String(Cy.toBytes()));
-                ctProperties.setProperty("CyPrime"+yCount, ConversionUtils.bytes2String(CyPrime.toBytes()));
-            }
+        // 各节点的秘密值只属于本次加密，访问控制树本身不被修改
+        Element[] shares = messageAttributes.generatePolySecret(bp, s);
+        CompiledAccessTree<AccessTreeCPABE.Node> tree = messageAttributes.compiled();
+
+        Element CWave = message.mul(eggAlphaPre.powZn(s)); // M * e(g, g)^(alpha*s)
+        Element C = hPre.powZn(s);
+        ct.put("CWave", CWave);
+        ct.put("C", C);
+
+        // 各叶子节点的Cy、Cy'可以并行计算，计算完成后再按叶子的顺序写入密文
+        Element[][] leafComponents = ParallelUtils.map(encryptionPool, tree.leafCount(), k -> {
+            int i = tree.leaf(k);
+            Element Cy = gPre.powZn(shares[i]).getImmutable();
+            Element CyPrime = MathUtils.H1Pow(String.valueOf(tree.node(i).attribute), shares[i], bp);
+            return new Element[]{Cy, CyPrime};
+        });
+        for (int k = 0; k < tree.leafCount(); k++) {
+            int yCount = tree.node(tree.leaf(k)).leafID;
+            ct.put("Cy"+yCount, leafComponents[k][0]);
+            ct.put("CyPrime"+yCount, leafComponents[k][1]);
         }
 
-        PropertiesUtils.store(ctProperties, ctFilePath);
+        return ct;
+    }
+
+    // 从私钥文件加载私钥句柄。同一个用户解密多个密文时应复用同一个句柄，以复用D、Dj、Dj'的配对预计算
+    public ABESecretKey loadSecretKey(String skFilePath) {
+        return ABESecretKey.load(skFilePath, "CPABE", bp);
+    }
+
+    public ABECiphertext loadCiphertext(String ctFilePath) {
+        return ABECiphertext.load(ctFilePath, "CPABE", bp);
+    }
+
+    // 用户属性取自私钥携带的属性列表
+    public Element decrypt(AccessTreeCPABE messageAttributes, String skFilePath, String ctFilePath) {
+        return decrypt(messageAttributes, loadSecretKey(skFilePath), loadCiphertext(ctFilePath));
+    }
+
+    public Element decrypt(AccessTreeCPABE messageAttributes, ABESecretKey sk, ABECiphertext ct) {
+        return decrypt(messageAttributes, sk.attributeSet(), sk, ct);
     }
 
     public Element decrypt(AccessTreeCPABE messageAttributes, int[] userAttributes, String skFilePath, String ctFilePath) {
-        checkAttributeSet(userAttributes);
-        Properties skProperties = PropertiesUtils.load(skFilePath);
-        Properties ctProperties = PropertiesUtils.load(ctFilePath);
-
-        // 解密需要准备好Dj和Dj'：这与属性是有关的
-        HashMap<Integer, Element> secretKeyDj = new HashMap<>();
-        HashMap<Integer, Element> secretKeyDjPrime = new HashMap<>();
-        for (int j = 0; j < universe; j++) {
-            if (skProperties.containsKey("Dj"+j)) {
-                String DjStr = skProperties.getProperty("Dj"+j);
-                Element Dj = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DjStr)).getImmutable();
-                secretKeyDj.put(j, Dj);
-            }
-            if (skProperties.containsKey("DjPrime"+j)) {
-                String DjPrimeStr = skProperties.getProperty("DjPrime"+j);
-                Element DjPrime = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DjPrimeStr)).getImmutable();
-                secretKeyDjPrime.put(j, DjPrime);
-            }
-        }
+        return decrypt(messageAttributes, userAttributes, loadSecretKey(skFilePath), loadCiphertext(ctFilePath));
+    }
 
-        // 解密还需要准备好Cy和Cy'：这与叶子节点是有关的
-        HashMap<Integer, Element> leaveNodeCy = new HashMap<>();
-        HashMap<Integer, Element> leaveNodeCyPrime = new HashMap<>();
-        for (AccessTreeCPABE.Node n : messageAttributes) {
-            if (n.isLeave()) {
-                int yCount = n.leafID;
-                String CyStr = ctProperties.getProperty(("Cy"+yCount));
-                Element Cy = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(CyStr)).getImmutable();
-                String CyPrimeStr = ctProperties.getProperty("CyPrime"+yCount);
-                Element CyPrime = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(CyPrimeStr)).getImmutable();
-                leaveNodeCy.put(yCount, Cy);
-                leaveNodeCyPrime.put(yCount, CyPrime);
-            }
-        }
+    public Element decrypt(AccessTreeCPABE messageAttributes, int[] userAttributes, ABESecretKey sk, String ctFilePath) {
+        return decrypt(messageAttributes, userAttributes, sk, loadCiphertext(ctFilePath));
+    }
 
-        String CWaveStr = ctProperties.getProperty(("CWave"));
-        Element CWave = bp.getGT().newElementFromBytes(ConversionUtils.String2Bytes(CWaveStr)).getImmutable();
+    // 私钥和密文都已经在内存中，解密过程不打开任何文件
+    public Element decrypt(AccessTreeCPABE messageAttributes, int[] userAttributes, ABESecretKey sk, ABECiphertext ct) {
+        checkAttributeSet(userAttributes);
+        return decrypt(messageAttributes, AttributeSet.of(userAttributes), sk, ct);
+    }
 
-        // 解密还需要C和D
-        String DStr = skProperties.getProperty("D");
-        Element D = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DStr)).getImmutable();
-        String CStr = ctProperties.getProperty("C");
-        Element C = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(CStr)).getImmutable();
+    // 解密的代价只与选中的满足子树有关：只取出选中叶子的Cy、Cy'和私钥中对应属性的Dj、Dj'，与属性宇宙的大小无关
+    private Element decrypt(AccessTreeCPABE messageAttributes, AttributeSet userAttributes, ABESecretKey sk, ABECiphertext ct) {
+        Element CWave = ct.get("CWave");
 
+        // 解密还需要C(D在私钥句柄中)
+        Element C = ct.get("C");
 
-        Element A = messageAttributes.decryptNode(userAttributes, secretKeyDj, secretKeyDjPrime, leaveNodeCy, leaveNodeCyPrime, bp);
+        // 叶子的Cy和Cy'按leafID从密文中按需取出
+        Element A = messageAttributes.decryptNode(userAttributes, sk, yCount -> ct.get("Cy"+yCount), yCount -> ct.get("CyPrime"+yCount), bp);
         if (A != null) {
             System.out.println("密文属性和用户属性访问控制树匹配，解密成功！");
-            return CWave.div((bp.pairing(C, D)).div(A));
+            return CWave.div((sk.pairing("D", C)).div(A)); // e(C, D) = e(D, C)
         }
         else {
             System.out.println("密文属性和用户属性访问控制树不匹配，解密失败！");
@@ -149,35 +241,37 @@ public class CPABE {
     }
 
     public void delegate(int[] userAttributes, int[] subSetUserAttributes, String skFilePath, String subSetSKFilePath) {
+        delegate(userAttributes, subSetUserAttributes, loadSecretKey(skFilePath)).store(subSetSKFilePath);
+    }
+
+    // 由内存中的私钥句柄委托出属性子集的私钥句柄
+    public ABESecretKey delegate(int[] userAttributes, int[] subSetUserAttributes, ABESecretKey sk) {
         checkAttributeSet(userAttributes);
         if (!MathUtils.isSubsetUsingSet(subSetUserAttributes, userAttributes)) {
             System.out.println("需要提供用户属性的子集合，你所提供的集合不在委托范围内！");
         }
-        Properties skProperties = PropertiesUtils.load(skFilePath);
-        Properties subSetProperties = new Properties();
+        ABESecretKey subSetSk = new ABESecretKey("CPABE", bp);
 
         // r~ <- Zr; D~ = D*f^(r~)
         Element rWave = bp.getZr().newRandomElement();
-        String DStr = skProperties.getProperty("D");
-        Element D = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DStr));
-        Element DWave = D.mul(f.powZn(rWave));
-        subSetProperties.setProperty("D", ConversionUtils.bytes2String(DWave.toBytes()));
+        Element D = sk.get("D");
+        Element DWave = D.mul(fPre.powZn(rWave));
+        subSetSk.put("D", DWave);
 
         for (int k : subSetUserAttributes) {
             Element rkWave = bp.getZr().newRandomElement().getImmutable();
 
-            String DkStr = skProperties.getProperty("Dj"+k);
-            Element Dk = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DkStr)).getImmutable();
-            Element DkWave = Dk.mul(g.powZn(rWave)).mul((MathUtils.H1(String.valueOf(k), bp)).powZn(rkWave));
-            subSetProperties.setProperty("Dj"+k, ConversionUtils.bytes2String(DkWave.toBytes()));
+            Element Dk = sk.get("Dj"+k);
+            Element DkWave = Dk.mul(gPre.powZn(rWave)).mul(MathUtils.H1Pow(String.valueOf(k), rkWave, bp));
+            subSetSk.put("Dj"+k, DkWave);
 
-            String DkPrimeStr = skProperties.getProperty("DjPrime"+k);
-            Element DkPrime = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DkPrimeStr)).getImmutable();
-            Element DkWavePrime = DkPrime.mul(g.powZn(rkWave));
-            subSetProperties.setProperty("DjPrime"+k, ConversionUtils.bytes2String(DkWavePrime.toBytes()));
+            Element DkPrime = sk.get("DjPrime"+k);
+            Element DkWavePrime = DkPrime.mul(gPre.powZn(rkWave));
+            subSetSk.put("DjPrime"+k, DkWavePrime);
         }
+        subSetSk.setAttributes(subSetUserAttributes);
 
-        PropertiesUtils.store(subSetProperties, subSetSKFilePath);
+        return subSetSk;
     }
 
     /**
@@ -1,13 +1,18 @@
 package CPABE;
 
+import Utils.ABECiphertext;
+import Utils.ABESecretKey;
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
+
+import java.util.concurrent.ForkJoinPool;
 
 public class CPABETest {
 
     public static void testCase1() {
         //测试文件路径
-        String skFilePath = "src/CPABE/CPABEFile/test1/sk.properties";
-        String ctFilePath = "src/CPABE/CPABEFile/test1/ct.properties";
+        String skFilePath = "src/CPABE/CPABEFile/test1/sk.bin";
+        String ctFilePath = "src/CPABE/CPABEFile/test1/ct.bin";
         System.out.println("\n测试案例1：");
         // 初始化操作，设置属性上限为10
         CPABE cpabeInstance = new CPABE(10);
@@ -30,8 +35,8 @@ public class CPABETest {
 
     public static void testCase2() {
         //测试文件路径
-        String skFilePath = "src/CPABE/CPABEFile/test2/sk.properties";
-        String ctFilePath = "src/CPABE/CPABEFile/test2/ct.properties";
+        String skFilePath = "src/CPABE/CPABEFile/test2/sk.bin";
+        String ctFilePath = "src/CPABE/CPABEFile/test2/ct.bin";
         System.out.println("\n测试案例2：");
         // 初始化操作，设置属性上限为10
         CPABE cpabeInstance = new CPABE(20);
@@ -54,8 +59,8 @@ public class CPABETest {
 
     public static void testCase3() {
         //测试文件路径
-        String skFilePath = "src/CPABE/CPABEFile/test3/sk.properties";
-        String ctFilePath = "src/CPABE/CPABEFile/test3/ct.properties";
+        String skFilePath = "src/CPABE/CPABEFile/test3/sk.bin";
+        String ctFilePath = "src/CPABE/CPABEFile/test3/ct.bin";
         System.out.println("\n测试案例3：");
         // 初始化操作，设置属性上限为10
         CPABE cpabeInstance = new CPABE(20);
@@ -78,9 +83,9 @@ public class CPABETest {
 
     public static void testCase4() {
         //测试文件路径
-        String skFilePath = "src/CPABE/CPABEFile/test4/sk.properties";
-        String subSetSkFilePath = "src/CPABE/CPABEFile/test4/subSetSk.properties";
-        String ctFilePath = "src/CPABE/CPABEFile/test4/ct.properties";
+        String skFilePath = "src/CPABE/CPABEFile/test4/sk.bin";
+        String subSetSkFilePath = "src/CPABE/CPABEFile/test4/subSetSk.bin";
+        String ctFilePath = "src/CPABE/CPABEFile/test4/ct.bin";
 
         System.out.println("\n测试案例4：Delegate()函数测试");
         // 初始化操作，设置属性上限为10
@@ -108,10 +113,241 @@ public class CPABETest {
         System.out.println("M1_ 是 " + M1_);
     }
 
-    public static void main(String[] args) {
+    // 私钥句柄只加载一次，之后连续解密多个密文，复用私钥元素的配对预计算
+    public static void testCase5() {
+        //测试文件路径
+        String skFilePath = "src/CPABE/CPABEFile/test1/sk.bin";
+        String ctFilePath = "src/CPABE/CPABEFile/test1/ct.bin";
+        System.out.println("\n测试案例5：");
+        CPABE cpabeInstance = new CPABE(10);
+        cpabeInstance.setUp("a.properties");
+
+        int[] userAttributes = new int[]{1, 2, 5};
+        cpabeInstance.keyGeneration(userAttributes, skFilePath);
+        ABESecretKey sk = cpabeInstance.loadSecretKey(skFilePath);
+
+        AccessTreeCPABE tree1 = AccessTreeCPABE.getInstance1();
+        for (int i = 0; i < 3; i++) {
+            Element M = cpabeInstance.generateRandomPlainText();
+            cpabeInstance.encrypt(tree1, M, ctFilePath);
+            Element M_ = cpabeInstance.decrypt(tree1, userAttributes, sk, ctFilePath);
+            System.out.println("第" + (i + 1) + "个密文解密是否正确: " + M.isEqual(M_));
+        }
+    }
+
+    // 私钥和密文都只在内存中：不读写文件，密文经过字节数组传输后再解密
+    public static void testCase6() {
+        System.out.println("\n测试案例6：");
+        CPABE cpabeInstance = new CPABE(10);
+        cpabeInstance.setUp("a.properties");
+
+        int[] userAttributes = new int[]{1, 2, 5};
+        ABESecretKey sk = cpabeInstance.keyGeneration(userAttributes);
+
+        AccessTreeCPABE tree1 = AccessTreeCPABE.getInstance1();
+        Element M = cpabeInstance.generateRandomPlainText();
+        ABECiphertext ct = cpabeInstance.encrypt(tree1, M);
+        byte[] ctBytes = ct.toBytes();
+
+        Element M_ = cpabeInstance.decrypt(tree1, userAttributes, sk, ABECiphertext.fromBytes(ctBytes, "CPABE", PairingFactory.getPairing("a.properties")));
+        System.out.println("内存中的密文解密是否正确: " + M.isEqual(M_));
+    }
+
+    // 2-of-3门限：第一个子树是很深的AND子树，第二个子树在深处不满足，第三个是单个叶子。
+    // 规划阶段会选出叶子数最少的满足子树(第一个子树与第三个叶子)，只对这些叶子做配对
+    public static void testCase7() {
+        System.out.println("\n测试案例7：");
+        CPABE cpabeInstance = new CPABE(10);
+        cpabeInstance.setUp("a.properties");
+
+        AccessTreeCPABE.Node deepAnd = new AccessTreeCPABE.Node(2, null);
+        AccessTreeCPABE.Node inner = new AccessTreeCPABE.Node(2, null);
+        inner.addChildren(new AccessTreeCPABE.Node(3), new AccessTreeCPABE.Node(4));
+        deepAnd.addChildren(new AccessTreeCPABE.Node(2), inner);
+        AccessTreeCPABE.Node unsatisfied = new AccessTreeCPABE.Node(2, null);
+        unsatisfied.addChildren(new AccessTreeCPABE.Node(1), new AccessTreeCPABE.Node(9));
+        AccessTreeCPABE.Node root = new AccessTreeCPABE.Node(2, null);
+        root.addChildren(deepAnd, unsatisfied, new AccessTreeCPABE.Node(5));
+        AccessTreeCPABE tree = new AccessTreeCPABE(root);
+        tree.generateLeafID();
+
+        int[] userAttributes = new int[]{1, 2, 3, 4, 5};
+        ABESecretKey sk = cpabeInstance.keyGeneration(userAttributes);
+        Element M = cpabeInstance.generateRandomPlainText();
+        Element M_ = cpabeInstance.decrypt(tree, userAttributes, sk, cpabeInstance.encrypt(tree, M));
+        System.out.println("深层门限策略解密是否正确: " + M.isEqual(M_));
+    }
+
+    // 同一棵访问控制树同时被多个线程用于加密：各次加密的秘密值互不干扰，每个密文都能正确解密
+    public static void testCase8() throws InterruptedException {
+        System.out.println("\n测试案例8：");
+        CPABE cpabeInstance = new CPABE(10);
+        cpabeInstance.setUp("a.properties");
+
+        int[] userAttributes = new int[]{1, 2, 5};
+        ABESecretKey sk = cpabeInstance.keyGeneration(userAttributes);
+        AccessTreeCPABE tree1 = AccessTreeCPABE.getInstance1();
+
+        int threads = 4;
+        Element[] M = new Element[threads];
+        ABECiphertext[] ct = new ABECiphertext[threads];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int t = i;
+            M[t] = cpabeInstance.generateRandomPlainText();
+            workers[t] = new Thread(() -> ct[t] = cpabeInstance.encrypt(tree1, M[t]));
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        for (int i = 0; i < threads; i++) {
+            Element M_ = cpabeInstance.decrypt(tree1, userAttributes, sk, ct[i]);
+            System.out.println("并发加密的第" + (i + 1) + "个密文解密是否正确: " + M[i].isEqual(M_));
+        }
+    }
+
+    // 使用线程池并行计算叶子节点的密文分量、并行解密兄弟子树：密文仍能正确解密，不满足策略的用户仍然无法解密
+    public static void testCase9() {
+        System.out.println("\n测试案例9：");
+        CPABE cpabeInstance = new CPABE(10);
+        cpabeInstance.setUp("a.properties");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        cpabeInstance.setEncryptionPool(pool);
+
+        int[] userAttributes = new int[]{1, 2, 5};
+        ABESecretKey sk = cpabeInstance.keyGeneration(userAttributes);
+        AccessTreeCPABE tree1 = AccessTreeCPABE.getInstance1();
+        tree1.setDecryptionPool(pool);
+        Element M = cpabeInstance.generateRandomPlainText();
+        ABECiphertext ct = cpabeInstance.encrypt(tree1, M);
+        Element M_ = cpabeInstance.decrypt(tree1, userAttributes, sk, ct);
+        System.out.println("并行加密的密文解密是否正确: " + M.isEqual(M_));
+
+        int[] otherAttributes = new int[]{3, 4};
+        ABESecretKey otherSk = cpabeInstance.keyGeneration(otherAttributes);
+        System.out.println("不满足策略的用户是否无法解密: " + (cpabeInstance.decrypt(tree1, otherAttributes, otherSk, ct) == null));
+        pool.shutdown();
+    }
+
+    // 另一个CPABE实例从参数文件恢复主密钥和公共参数：两个实例生成的私钥、密文可以互相解密；只恢复公共参数的实例只能加密
+    public static void testCase10() {
+        String pkFilePath = "src/CPABE/CPABEFile/test10/pk.bin";
+        String mskFilePath = "src/CPABE/CPABEFile/test10/msk.bin";
+        System.out.println("\n测试案例10：");
+        CPABE cpabeInstance = new CPABE(10);
+        cpabeInstance.setUp("a.properties");
+        cpabeInstance.storePublicParameters(pkFilePath);
+        cpabeInstance.storeMasterKey(mskFilePath);
+
+        CPABE restoredInstance = new CPABE(10);
+        restoredInstance.loadParameters("a.properties", pkFilePath, mskFilePath);
+
+        int[] userAttributes = new int[]{1, 2, 5};
+        AccessTreeCPABE tree1 = AccessTreeCPABE.getInstance1();
+        Element M = cpabeInstance.generateRandomPlainText();
+        ABECiphertext ct = cpabeInstance.encrypt(tree1, M);
+        Element M_ = restoredInstance.decrypt(tree1, userAttributes, restoredInstance.keyGeneration(userAttributes), ct);
+        System.out.println("恢复参数的实例解密原实例的密文是否正确: " + M.isEqual(M_));
+
+        ct = restoredInstance.encrypt(tree1, M);
+        M_ = cpabeInstance.decrypt(tree1, userAttributes, cpabeInstance.keyGeneration(userAttributes), ct);
+        System.out.println("原实例解密恢复参数的实例的密文是否正确: " + M.isEqual(M_));
+
+        CPABE encryptOnlyInstance = new CPABE(10);
+        encryptOnlyInstance.loadParameters("a.properties", pkFilePath);
+        ct = encryptOnlyInstance.encrypt(tree1, M);
+        M_ = cpabeInstance.decrypt(tree1, userAttributes, cpabeInstance.keyGeneration(userAttributes), ct);
+        System.out.println("原实例解密只有公共参数的实例的密文是否正确: " + M.isEqual(M_));
+        try {
+            encryptOnlyInstance.keyGeneration(userAttributes);
+            System.out.println("只有公共参数的实例不应能生成密钥");
+        } catch (IllegalStateException e) {
+            System.out.println("只有公共参数的实例不能生成密钥: " + e.getMessage());
+        }
+    }
+
+    // 私钥携带自己的属性列表，解密时不再提供用户属性；委托得到的私钥携带子集合的属性
+    public static void testCase11() {
+        String skFilePath = "src/CPABE/CPABEFile/test11/sk.bin";
+        String subSetSkFilePath = "src/CPABE/CPABEFile/test11/subSetSk.bin";
+        String ctFilePath = "src/CPABE/CPABEFile/test11/ct.bin";
+        System.out.println("\n测试案例11：");
+        // 属性宇宙很大，但用户只有3个属性，解密的代价只与选中的叶子有关
+        CPABE cpabeInstance = new CPABE(1_000_000);
+        cpabeInstance.setUp("a.properties");
+
+        int[] userAttributes = new int[]{1, 2, 5};
+        cpabeInstance.keyGeneration(userAttributes, skFilePath);
+
+        Element M = cpabeInstance.generateRandomPlainText();
+        AccessTreeCPABE tree1 = AccessTreeCPABE.getInstance1();
+        cpabeInstance.encrypt(tree1, M, ctFilePath);
+
+        Element M_ = cpabeInstance.decrypt(tree1, skFilePath, ctFilePath);
+        System.out.println("使用私钥中的属性列表解密是否正确: " + M.isEqual(M_));
+
+        cpabeInstance.delegate(userAttributes, new int[]{5, 1}, skFilePath, subSetSkFilePath);
+        Element M1_ = cpabeInstance.decrypt(tree1, subSetSkFilePath, ctFilePath);
+        System.out.println("委托私钥使用自己的属性列表解密是否正确: " + M.isEqual(M1_));
+    }
+
+    // 从字节数组恢复的密文只在解密取用某个元素时才解码，解码的元素个数与选中的叶子数有关，与策略的规模无关
+    public static void testCase12() {
+        System.out.println("\n测试案例12：");
+        CPABE cpabeInstance = new CPABE(10);
+        cpabeInstance.setUp("a.properties");
+
+        int[] userAttributes = new int[]{1, 2, 5};
+        ABESecretKey sk = cpabeInstance.keyGeneration(userAttributes);
+        AccessTreeCPABE tree1 = AccessTreeCPABE.getInstance1();
+        Element M = cpabeInstance.generateRandomPlainText();
+        byte[] ctBytes = cpabeInstance.encrypt(tree1, M).toBytes();
+
+        ABECiphertext ct = ABECiphertext.fromBytes(ctBytes, "CPABE", PairingFactory.getPairing("a.properties"));
+        System.out.println("解密前已解码的密文元素个数: " + ct.decodedCount());
+        Element M_ = cpabeInstance.decrypt(tree1, sk, ct);
+        System.out.println("解密后已解码的密文元素个数: " + ct.decodedCount() + "，密文元素总数: " + ct.toContainer().names().size());
+        System.out.println("按需解码的密文解密是否正确: " + M.isEqual(M_));
+    }
+
+    // G1元素使用压缩编码传输密文和私钥：字节数约减半，解密结果不变
+    public static void testCase13() {
+        System.out.println("\n测试案例13：");
+        CPABE cpabeInstance = new CPABE(10);
+        cpabeInstance.setUp("a.properties");
+
+        int[] userAttributes = new int[]{1, 2, 5};
+        ABESecretKey sk = cpabeInstance.keyGeneration(userAttributes);
+        AccessTreeCPABE tree1 = AccessTreeCPABE.getInstance1();
+        Element M = cpabeInstance.generateRandomPlainText();
+        ABECiphertext ct = cpabeInstance.encrypt(tree1, M);
+
+        byte[] ctBytes = ct.toBytes(false);
+        byte[] compressedCtBytes = ct.toBytes(true);
+        byte[] compressedSkBytes = sk.toBytes(true);
+        System.out.println("密文字节数: " + ctBytes.length + "，压缩G1后: " + compressedCtBytes.length);
+        System.out.println("私钥字节数: " + sk.toBytes(false).length + "，压缩G1后: " + compressedSkBytes.length);
+
+        Element M_ = cpabeInstance.decrypt(tree1,
+                ABESecretKey.fromBytes(compressedSkBytes, "CPABE", PairingFactory.getPairing("a.properties")),
+                ABECiphertext.fromBytes(compressedCtBytes, "CPABE", PairingFactory.getPairing("a.properties")));
+        System.out.println("压缩编码的密文、私钥解密是否正确: " + M.isEqual(M_));
+    }
+
+    public static void main(String[] args) throws InterruptedException {
         testCase1();
         testCase2();
         testCase3();
         testCase4();
+        testCase5();
+        testCase6();
+        testCase7();
+        testCase8();
+        testCase9();
+        testCase10();
+        testCase11();
+        testCase12();
+        testCase13();
     }
 }
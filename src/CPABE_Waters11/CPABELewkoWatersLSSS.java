@@ -1,9 +1,16 @@
 package CPABE_Waters11;
 
+import Utils.ABESecretKey;
+import Utils.AttributeSet;
+import Utils.CompiledAccessTree;
+import Utils.GaussElementUtils;
+import Utils.PairingUtils;
 import it.unisa.dia.gas.jpbc.Element;
 import it.unisa.dia.gas.jpbc.Pairing;
+import it.unisa.dia.gas.jpbc.PairingPreProcessing;
 
 import java.util.*;
+import java.util.function.IntFunction;
 
 public class CPABELewkoWatersLSSS {
     public static class Node {
@@ -11,6 +18,7 @@ public class CPABELewkoWatersLSSS {
         public int attribute; // 叶子节点具有属性值；非叶子节点的属性值置为-1
         public List<Node> children; // 非叶子节点具有子节点，以列表维护。注意论文当中的index(child)代表child在children当中的下标+1
         private List<Integer> LSSSVector;  // 每个节点都有LSSS Vector，用于后续计算LSSS矩阵时使用
+        private int row = -1; // 叶子节点在LSSS矩阵中对应的行下标；非叶子节点为-1
 
         // 对于叶子节点进行初始化操作：提供叶子节点所对应的属性
         public Node(int attribute) {
@@ -43,16 +51,60 @@ public class CPABELewkoWatersLSSS {
     }
 
 
-    public int l;  // 代表矩阵的行，也是叶子节点的个数
-    public int n;  // 代表矩阵的列，也就是and门的个数+1
-    private int[][] LSSSMatrix;  // 核心1：LSSS访问控制矩阵
-    private int[] attributeRho; // 核心2：LSSS控制矩阵中每行所对应的属性
+    /**
+     * 秘密恢复的结果：选中的行下标I以及对应的系数w，满足 sum(w_k * M_{rows[k]}) = (1, 0, 0, ..., 0)。
+     * 该对象创建后不可修改，可以在线程之间自由传递。
+     */
+    public static final class WVector {
+        private final int[] rows; // 选中的LSSS矩阵的行下标
+        private final Element[] coefficients; // 每一行对应的系数(Zr上的不可变元素)
+
+        private WVector(int[] rows, Element[] coefficients) {
+            this.rows = rows;
+            this.coefficients = coefficients;
+        }
+
+        // 选中的行数，也就是|I|
+        public int size() {
+            return rows.length;
+        }
+
+        // 第k个选中的行在LSSS矩阵中的下标
+        public int row(int k) {
+            return rows[k];
+        }
+
+        // 第k个选中的行对应的系数
+        public Element coefficient(int k) {
+            return coefficients[k];
+        }
+
+        public int[] getRows() {
+            return rows.clone();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("{");
+            for (int k = 0; k < rows.length; k++) {
+                if (k > 0) sb.append(", ");
+                sb.append(rows[k]).append('=').append(coefficients[k]);
+            }
+            return sb.append('}').toString();
+        }
+    }
+
+    public final int l;  // 代表矩阵的行，也是叶子节点的个数
+    public final int n;  // 代表矩阵的列，也就是and门的个数+1
+    private final int[][] LSSSMatrix;  // 核心1：LSSS访问控制矩阵
+    private final int[] attributeRho; // 核心2：LSSS控制矩阵中每行所对应的属性
+    // LSSS矩阵在Zr上的形式。构造时一次性转换并缓存，之后每次加密/解密都直接复用这些不可变的Element，
+    // 因此同一个策略对象可以被多个线程、多个密文共享，而不必每条消息都重新分配Element
+    private final Element[][] elementLSSSMatrix;
 
-    private Node accessTree; // 核心3：悄悄包含了一个访问控制树
-    private List<Integer> I = new ArrayList<>(); // 用户属性对应的访问控制结构中的哪些行？I记录这些行的下标
-    // 选择LSSSMatrix的对应行
-    private Map<Integer, int[]> selectedRows = new LinkedHashMap<>();// 用户属性对应的访问控制结构中的哪些行？I记录这些行的具体内容
-    private Pairing bp; // 双线性对，因为LSSS矩阵当中可能会出现一些需要的运算
+    private final Node accessTree; // 核心3：悄悄包含了一个访问控制树
+    private final CompiledAccessTree<Node> compiledTree; // 访问控制树的编译结果，与LSSS矩阵同时构建，解密时在它上面规划满足集合
+    private final Pairing bp; // 双线性对，因为LSSS矩阵当中可能会出现一些需要的运算
 
     // LewkoWaters方法初始化矩阵（输入为一个访问控制树和一个双线性对）
     public CPABELewkoWatersLSSS(Node root, Pairing bp) {
@@ -138,6 +190,7 @@ public class CPABELewkoWatersLSSS {
                     LSSSMatrix[leaveRow][i] = pendingNode.LSSSVector.get(i);
                     attributeRho[leaveRow] = pendingNode.attribute;
                 }
+                pendingNode.row = leaveRow;
                 leaveRow += 1;
             }
 
@@ -148,117 +201,178 @@ public class CPABELewkoWatersLSSS {
                 }
             }
         }
+
+        // 第三步：将整数形式的LSSS矩阵一次性转换为Zr上的不可变Element并缓存
+        this.elementLSSSMatrix = new Element[l][n];
+        for (int i = 0; i < l; i++) {
+            for (int j = 0; j < n; j++) {
+                elementLSSSMatrix[i][j] = bp.getZr().newElement(LSSSMatrix[i][j]).getImmutable();
+            }
+        }
+        this.compiledTree = CompiledAccessTree.compile(root, x -> x.children, x -> x.threshold, x -> x.attribute);
     }
 
 
     public boolean isSatisfied(int[] attributes) {
+        return isSatisfied(AttributeSet.of(attributes));
+    }
+
+    public boolean isSatisfied(AttributeSet attributes) {
         return this.isSatisfiedHelper(attributes, accessTree);
     }
 
 
     /**
      * 计算WVector：要求用户属性对应的LSSSMatrix的行，与WVector的线性组合构成(1,0,0……0)
+     * 解密时每个选中的行需要两次配对运算，所以这里先在访问控制树上选出叶子数最少的满足集合，只对这些行求解，
+     * 并且把系数为0的行剔除，保证返回的每一行都真正参与秘密恢复。
+     * 注意结果是高斯消元得到的一个基本解(自由变量取0)：非零系数不超过rank(M_I)个、对应的行线性无关，
+     * 但不保证是所有合法解中非零系数最少的(求最小支撑集是NP难的)；行数的精简主要来自上面叶子数最少的满足集合
      * @param userAttributes 用户属性
-     * @return 能使得矩阵有解的组合对应的解向量
+     * @return 能使得矩阵有解的组合对应的解向量。结果是不可变的，不会写回策略对象，因此多个解密线程可以共享同一个策略对象
      */
-    public Map<Integer, Element> computeWVector(int[] userAttributes) {
-        this.I.clear();
-        this.selectedRows.clear();
+    public WVector computeWVector(int[] userAttributes) {
+        return computeWVector(AttributeSet.of(userAttributes));
+    }
 
+    public WVector computeWVector(AttributeSet userAttributes) {
+        // 获取集合I：在访问控制树上选择叶子数最少的满足集合。I是局部变量，只属于本次调用
+        List<Integer> I = selectMinimalRows(userAttributes);
 
         // 检查用户属性是否满足条件
-        if (!isSatisfied(userAttributes)) {
+        if (I == null) {
             throw new IllegalArgumentException("用户属性不匹配，解密失败！");
         }
 
-        // 获取集合I：选择满足条件的LSSSMatrix的行
-        for (int attr : userAttributes) {
-            for (int i = 0; i < attributeRho.length; i++) {
-                if (attributeRho[i] == attr) {
-                    I.add(i);
-                    selectedRows.put(i, LSSSMatrix[i]);
-                }
-            }
-        }
-
         // 如果没有找到符合条件的行，返回null
         if (I.size() == 0) {
             throw new IllegalArgumentException("没有找到满足条件的行！");
         }
 
-        // 穷举所有可能的二进制向量w (0或1)，并检查线性组合是否为目标向量(1, 0, 0, ..., 0)
-        int n = I.size();
-        int[] wIntegerVector = new int[n]; // 用来存储二进制向量w
-
-        // 穷举所有二进制向量，范围从 0 到 2^n - 1
-        for (int mask = 0; mask < (1 << n); mask++) {
-            // 将mask转换为wIntegerVector
-            for (int i = 0; i < n; i++) {
-                wIntegerVector[i] = (mask & (1 << i)) != 0 ? 1 : 0;
-            }
-
-            // 计算线性组合
-            int[] linearCombination = new int[LSSSMatrix[0].length]; // 使用int[]来表示线性组合
+        // 在Zr上求解 wVector * M_I = (1, 0, 0, ..., 0)。
+        // 使用高斯消元代替穷举2^|I|个0/1组合，复杂度是多项式级别的；自由变量取0，因此非零系数的个数不超过M_I的秩
+        Element[][] rowsI = new Element[I.size()][];
+        for (int i = 0; i < I.size(); i++) {
+            rowsI[i] = Mi(I.get(i));
+        }
+        Element[] targetVector = new Element[LSSSMatrix[0].length];
+        targetVector[0] = bp.getZr().newOneElement().getImmutable();
+        for (int j = 1; j < targetVector.length; j++) {
+            targetVector[j] = bp.getZr().newZeroElement().getImmutable();
+        }
+        Element[] w = GaussElementUtils.computeBasicSolution(rowsI, targetVector);
 
-            // 初始化为零向量
-            Arrays.fill(linearCombination, 0);
+        // 如果没有找到符合的解，返回null
+        if (w == null) {
+            return null;
+        }
 
-            // 计算当前二进制向量对应的线性组合
-            for (int i = 0; i < n; i++) {
-                if (wIntegerVector[i] == 1) {
-                    // 将对应的LSSSMatrix行加到线性组合中
-                    for (int j = 0; j < linearCombination.length; j++) {
-                        linearCombination[j] += selectedRows.get(I.get(i))[j];
-                    }
-                }
+        // 剔除系数为0的行：这些行对秘密恢复没有贡献，却要花费两次配对运算
+        int nonZero = 0;
+        for (Element wi : w) {
+            if (!wi.isZero()) {
+                nonZero++;
+            }
+        }
+        int[] rows = new int[nonZero];
+        Element[] coefficients = new Element[nonZero];
+        int k = 0;
+        for (int i = 0; i < I.size(); i++) {
+            if (!w[i].isZero()) {
+                rows[k] = I.get(i);
+                coefficients[k] = w[i];
+                k++;
             }
+        }
+        return new WVector(rows, coefficients);
+    }
 
-            // 检查线性组合是否等于目标向量 (1, 0, 0, ..., 0)
-            if (isTargetVector(linearCombination)) {
-                // 如果是，返回对应的wElementVector
-                Map<Integer, Element> wElementVector = new LinkedHashMap<>();
-                for (int i = 0; i < n; i++) {
-                    wElementVector.put(I.get(i),bp.getZr().newElement(wIntegerVector[i]).getImmutable());
+    // 在访问控制树上选择叶子数最少的满足集合(见CompiledAccessTree.plan)，返回这些叶子对应的LSSS矩阵行下标；不满足时返回null
+    // 门限值即需要满足的子树个数(OR为1，AND为2)
+    private List<Integer> selectMinimalRows(AttributeSet attributeSet) {
+        CompiledAccessTree<Node> c = compiledTree;
+        int[][] plan = c.plan(0, i -> attributeSet.contains(c.attribute(i)));
+        if (plan == null) {
+            return null;
+        }
+        List<Integer> rows = new ArrayList<>();
+        if (c.isLeaf(0)) {
+            rows.add(c.node(0).row);
+            return rows;
+        }
+        // plan中只有从根节点沿着选择能到达的门限节点不为null，它们选中的叶子子节点就是满足集合
+        for (int i = 0; i < c.size(); i++) {
+            if (plan[i] == null) {
+                continue;
+            }
+            for (int k : plan[i]) {
+                int child = c.childStart(i) + k;
+                if (c.isLeaf(child)) {
+                    rows.add(c.node(child).row);
                 }
-                return wElementVector;
             }
         }
-
-
-
-        // 如果没有找到符合的解，返回null
-        return null;
+        return rows;
     }
 
 
-    // 返回矩阵的第i行元素(以Element形式)
+    // 返回矩阵的第i行元素(以Element形式)。返回的是缓存行的浅拷贝，其中的Element都是不可变的，不会分配新的Element
     public Element[] Mi(int index) {
         if (index < 0 || index >= LSSSMatrix.length) {
-            System.out.println("调用Mi函数时index出现故障");
-        }
-        Element[] result = new Element[LSSSMatrix[index].length];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = bp.getZr().newElement(LSSSMatrix[index][i]).getImmutable();
+            throw new IndexOutOfBoundsException("调用Mi函数时index出现故障: " + index);
         }
-        return result;
+        return elementLSSSMatrix[index].clone();
     }
 
     public int rhoi(int i) {
         return attributeRho[i];
     }
 
-    public Element recoverSecret(int[] userAttributes, Element CPrime, Element K, Element L, HashMap<Integer, Element> Ci, HashMap<Integer, Element> Di, HashMap<Integer, Element> Kx) {
-        Element eCPrimeK = bp.pairing(CPrime, K).getImmutable();
-        Map<Integer, Element> wVector = this.computeWVector(userAttributes);
+    /**
+     * 恢复 e(g, g)^(alpha*s)
+     * 私钥元素K、L、Kx都来自私钥句柄sk。同一指数的项合并成一次乘积配对，只做一次最终幂运算；
+     * 单独成组的项(通常是e(C', K))使用sk中缓存的配对预计算，同一个私钥解密多个密文时无需重复计算
+     */
+    public Element recoverSecret(int[] userAttributes, Element CPrime, Map<Integer, Element> Ci, Map<Integer, Element> Di, ABESecretKey sk) {
+        return recoverSecret(AttributeSet.of(userAttributes), CPrime, Ci, Di, sk);
+    }
+
+    public Element recoverSecret(AttributeSet userAttributes, Element CPrime, Map<Integer, Element> Ci, Map<Integer, Element> Di, ABESecretKey sk) {
+        return recoverSecret(userAttributes, CPrime, (IntFunction<Element>) Ci::get, Di::get, sk);
+    }
+
+    // 与上面的方法相同，第i行的Ci、Di按需获取，只有w向量选中的行才会被取出
+    public Element recoverSecret(AttributeSet userAttributes, Element CPrime, IntFunction<Element> Ci, IntFunction<Element> Di, ABESecretKey sk) {
+        WVector wVector = this.computeWVector(userAttributes);
+        if (wVector == null) {
+            return null;
+        }
 
-        Element result = bp.getGT().newOneElement().getImmutable();
-        for (int i : I) {
-            Element CiL = bp.pairing(Ci.get(i), L).powZn(wVector.get(i)).getImmutable();
-            Element DiKpi = bp.pairing(Di.get(i), Kx.get(rhoi(i))).powZn(wVector.get(i)).getImmutable();
-            result = result.mul(CiL).mul(DiKpi);
+        // e(C', K) / Π (e(Ci, L) * e(Di, K_ρ(i)))^wi 写成一个配对乘积：分母中的项取指数-wi。
+        // 由PairingUtils负责按指数分组、合并相同的L，避免逐项做完整配对和GT指数运算
+        int size = 1 + 2 * wVector.size();
+        Element[] left = new Element[size];
+        Element[] right = new Element[size];
+        PairingPreProcessing[] rightPreProcessing = new PairingPreProcessing[size];
+        Element[] exponents = new Element[size];
+        left[0] = CPrime;
+        right[0] = sk.get("K");
+        rightPreProcessing[0] = sk.getPairingPreProcessing("K");
+        exponents[0] = bp.getZr().newOneElement().getImmutable();
+        for (int k = 0; k < wVector.size(); k++) {
+            int i = wVector.row(k);
+            Element negW = wVector.coefficient(k).negate().getImmutable();
+            left[1 + 2 * k] = Ci.apply(i);
+            right[1 + 2 * k] = sk.get("L");
+            rightPreProcessing[1 + 2 * k] = sk.getPairingPreProcessing("L");
+            exponents[1 + 2 * k] = negW;
+            left[2 + 2 * k] = Di.apply(i);
+            right[2 + 2 * k] = sk.get("Kx" + rhoi(i));
+            rightPreProcessing[2 + 2 * k] = sk.getPairingPreProcessing("Kx" + rhoi(i));
+            exponents[2 + 2 * k] = negW;
         }
 
-        return eCPrimeK.div(result).getImmutable();
+        return PairingUtils.productOfPairings(bp, left, right, rightPreProcessing, exponents);
     }
 
     // 打印 LSSS Matrix函数
@@ -273,15 +387,10 @@ public class CPABELewkoWatersLSSS {
     }
 
     // 判断访问控制树的节点是否满足给定的属性集
-    private boolean isSatisfiedHelper(int[] attributes, Node node) {
+    private boolean isSatisfiedHelper(AttributeSet attributes, Node node) {
         // 如果是叶子节点，检查其属性是否在给定的属性集内
         if (node.threshold == -1) {
-            for (int attr : attributes) {
-                if (attr == node.attribute) {
-                    return true;  // 叶子节点的属性存在于给定的属性集合中
-                }
-            }
-            return false;  // 叶子节点的属性不存在于给定的属性集合中
+            return attributes.contains(node.attribute);
         }
 
         // 非叶子节点的处理
@@ -303,23 +412,4 @@ public class CPABELewkoWatersLSSS {
         return satisfiedCount >= node.threshold;
     }
 
-    /**
-     * 检查给定的线性组合是否为目标向量 (1, 0, 0, ..., 0)
-     * @param linearCombination 线性组合，使用int表示
-     * @return 是否为目标向量
-     */
-    private boolean isTargetVector(int[] linearCombination) {
-        // 检查是否符合 (1, 0, 0, ..., 0)
-        // 目标向量为 (1, 0, 0, ..., 0)，即第一个元素为1，其他元素为0
-        if (linearCombination[0] != 1) {
-            return false;
-        }
-        for (int i = 1; i < linearCombination.length; i++) {
-            if (linearCombination[i] != 0) {
-                return false;
-            }
-        }
-        return true;
-    }
-
 }
@@ -1,6 +1,7 @@
 package CPABE_Waters11;
 
 import CPABE_Waters11.CPABELewkoWatersLSSS.*;
+import it.unisa.dia.gas.jpbc.Element;
 import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
 
 public class CPABELewkoWatersLSSSTest {
@@ -74,7 +75,56 @@ public class CPABELewkoWatersLSSSTest {
 //        System.out.println(Arrays.toString(demo2.computeWVector(new int[]{5, 1, 2, 3})));
     }
 
+    // 宽策略：(1 AND 2) OR (3 AND 4) OR …… OR (2k-1 AND 2k)，共2k个叶子节点
+    public static Node getTree3(int k) {
+        Node root = null;
+        for (int i = 0; i < k; i++) {
+            Node and = new Node(2, null);
+            and.addChild(new Node(2 * i + 1), new Node(2 * i + 2));
+            if (root == null) {
+                root = and;
+            } else {
+                Node or = new Node(1, null);
+                or.addChild(root, and);
+                root = or;
+            }
+        }
+        return root;
+    }
+
+    // 案例3: 用户持有全部32个属性，穷举2^32个0/1组合是不可行的，高斯消元可以直接求出wVector
+    public static void testCase3() {
+        Node root = getTree3(16);
+        CPABELewkoWatersLSSS demo3 = new CPABELewkoWatersLSSS(root, PairingFactory.getPairing("a.properties"));
+
+        int[] userAttributes = new int[32];
+        for (int i = 0; i < userAttributes.length; i++) {
+            userAttributes[i] = i + 1;
+        }
+        System.out.println("{1, 2, ..., 32} is satisfied: " + demo3.isSatisfied(userAttributes));
+        WVector wVector = demo3.computeWVector(userAttributes);
+        System.out.println(wVector);
+
+        // 检查 w * M_I = (1, 0, ..., 0)
+        Element[] sum = demo3.Mi(0);
+        for (int j = 0; j < sum.length; j++) {
+            sum[j] = sum[j].getField().newZeroElement();
+        }
+        for (int k = 0; k < wVector.size(); k++) {
+            Element[] row = demo3.Mi(wVector.row(k));
+            for (int j = 0; j < sum.length; j++) {
+                sum[j].add(row[j].duplicate().mul(wVector.coefficient(k)));
+            }
+        }
+        boolean correct = sum[0].isOne();
+        for (int j = 1; j < sum.length; j++) {
+            correct = correct && sum[j].isZero();
+        }
+        System.out.println("w * M_I = (1, 0, ..., 0): " + correct);
+    }
+
     public static void main(String[] args) {
         testCase1();
+        testCase3();
     }
 }
@@ -1,14 +1,18 @@
 package CPABE_Waters11;
 
-import Utils.ConversionUtils;
-import Utils.PropertiesUtils;
+import Utils.ABECiphertext;
+import Utils.ABESecretKey;
+import Utils.AttributeParameterStore;
+import Utils.AttributeSet;
+import Utils.ElementContainer;
+import Utils.LazyPowPreProcessing;
+import Utils.ParallelUtils;
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
 import it.unisa.dia.gas.jpbc.Pairing;
 import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
 
 public class CPABEWaters11 {
 
@@ -19,7 +23,17 @@ public class CPABEWaters11 {
     private Element a;
     private Element eggAlpha;  //Gt
     private Element ga; // G1
-    private Element[] h;
+    private byte[] hSeed; // h0 …… hU-1由种子和属性编号确定性地导出，种子属于公共参数
+    private AttributeParameterStore<Element> h; // 属性x -> hx ∈ G1，第一次用到属性x时才导出
+    private Element gAlpha; // g^alpha，每次密钥生成都会用到，在setUp中预先算好
+
+    // 以下底数的预计算表在第一次求幂时构建
+    private ElementPowPreProcessing gPre; // 密钥生成的L = g^t，加密的C' = g^s和每一行的Di
+    private ElementPowPreProcessing gaPre; // 密钥生成的g^(at)，加密中每一行的g^(a*lambdai)
+    private ElementPowPreProcessing eggAlphaPre; // 只用于加密的e(g, g)^(alpha*s)
+
+    // 加密时并行计算各行密文分量所用的线程池，为null时顺序计算
+    private ForkJoinPool encryptionPool;
 
     public Pairing getBp() {
         return this.bp;
@@ -29,6 +43,11 @@ public class CPABEWaters11 {
         this.universe = u;
     }
 
+    // 设置加密时并行计算LSSS矩阵各行的Ci、Di所用的线程池，为null时在调用线程中顺序计算(默认)
+    public void setEncryptionPool(ForkJoinPool pool) {
+        this.encryptionPool = pool;
+    }
+
     public void setUp(String pairingFilePath) {
         this.bp = PairingFactory.getPairing(pairingFilePath);
         this.g = bp.getG1().newRandomElement().getImmutable(); // g <- G1
@@ -36,32 +55,99 @@ public class CPABEWaters11 {
         this.a = bp.getZr().newRandomElement().getImmutable(); // alpha <- Zr
         this.eggAlpha = bp.pairing(g, g).powZn(alpha).getImmutable(); // e(g, g)^alpha
         this.ga = g.powZn(a).getImmutable();
-        this.h = new Element[universe];
-        for (int i = 0; i < universe; i++) {
-            h[i] = bp.getG1().newRandomElement().getImmutable(); // h1 h2 …… hU
+        this.gAlpha = g.powZn(alpha).getImmutable();
+        this.hSeed = AttributeParameterStore.newSeed(); // h1 h2 …… hU由种子导出
+        initPreProcessing();
+    }
+
+    // 保存公共参数(g, e(g, g)^alpha, g^a以及导出h_x的种子)，加密方只需要这个文件；不含主密钥，可以公开
+    public void storePublicParameters(String publicParamsFilePath) {
+        ElementContainer params = new ElementContainer("CPABEWaters11.pk", bp);
+        params.putInts("universe", new int[]{universe});
+        params.putElement("g", g);
+        params.putElement("eggAlpha", eggAlpha);
+        params.putElement("ga", ga);
+        params.putBytes("hSeed", hSeed);
+        params.store(publicParamsFilePath);
+    }
+
+    // 保存主密钥(alpha, a, g^alpha)，只有生成密钥的一方需要，应妥善保管
+    public void storeMasterKey(String mskFilePath) {
+        ElementContainer msk = new ElementContainer("CPABEWaters11.msk", bp);
+        msk.putElement("alpha", alpha);
+        msk.putElement("a", a);
+        msk.putElement("gAlpha", gAlpha);
+        msk.store(mskFilePath);
+    }
+
+    // 代替setUp：只恢复storePublicParameters保存的公共参数，不重新生成参数、不做配对。恢复后可以加密、解密，不能生成密钥
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath) {
+        this.bp = PairingFactory.getPairing(pairingFilePath);
+        ElementContainer params = ElementContainer.load(publicParamsFilePath, "CPABEWaters11.pk", bp);
+        if (params.getInts("universe")[0] != universe) {
+            throw new IllegalArgumentException("参数文件的属性上限为" + params.getInts("universe")[0] + "，而不是" + universe);
         }
+        this.g = params.getElement("g");
+        this.eggAlpha = params.getElement("eggAlpha");
+        this.ga = params.getElement("ga");
+        this.hSeed = params.getBytes("hSeed");
+        this.alpha = null;
+        this.a = null;
+        this.gAlpha = null;
+        initPreProcessing();
+    }
+
+    // 代替setUp：恢复公共参数和storeMasterKey保存的主密钥，恢复后可以生成密钥、加密和解密，与原来进程的密钥、密文互通
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath, String mskFilePath) {
+        loadParameters(pairingFilePath, publicParamsFilePath);
+        ElementContainer msk = ElementContainer.load(mskFilePath, "CPABEWaters11.msk", bp);
+        this.alpha = msk.getElement("alpha");
+        this.a = msk.getElement("a");
+        this.gAlpha = msk.getElement("gAlpha");
+    }
+
+    private void initPreProcessing() {
+        this.gPre = new LazyPowPreProcessing(g);
+        this.gaPre = new LazyPowPreProcessing(ga);
+        this.eggAlphaPre = new LazyPowPreProcessing(eggAlpha);
+        // hx = H(seed, x)映射到G1，与原来的随机元素一样没有已知的离散对数
+        this.h = new AttributeParameterStore<>(0, universe - 1, AttributeParameterStore.DEFAULT_CAPACITY,
+                x -> AttributeParameterStore.derive(hSeed, "h", x, bp.getG1()));
     }
 
     public void keyGeneration(int[] userAttributes, String skFilePath) {
-        Properties skProperties = new Properties();
+        keyGeneration(userAttributes).store(skFilePath);
+    }
+
+    // 生成私钥并直接返回内存中的私钥句柄，不写文件
+    public ABESecretKey keyGeneration(int[] userAttributes) {
+        if (gAlpha == null) {
+            throw new IllegalStateException("只加载了公共参数，没有主密钥，不能生成密钥");
+        }
+        ABESecretKey sk = new ABESecretKey("CPABEWaters11", bp);
 
         Element t = this.bp.getZr().newRandomElement().getImmutable(); // t <- Zr
 
-        Element K = this.g.powZn(alpha).mul(ga.powZn(t)); // K = g^alpha * g^at
-        Element L = g.powZn(t).getImmutable(); // L = g^t
-        skProperties.setProperty("K", ConversionUtils.bytes2String(K.toBytes()));
-        skProperties.setProperty("L", ConversionUtils.bytes2String(L.toBytes()));
+        Element K = this.gAlpha.mul(gaPre.powZn(t)); // K = g^alpha * g^at
+        Element L = gPre.powZn(t).getImmutable(); // L = g^t
+        sk.put("K", K);
+        sk.put("L", L);
 
         for (int x : userAttributes) { // for each attribute j ∈ S(user Attributes)
-            Element Kx = h[x].powZn(t);
-            skProperties.setProperty("Kx"+x, ConversionUtils.bytes2String(Kx.toBytes()));
+            Element Kx = h.get(x).powZn(t);
+            sk.put("Kx"+x, Kx);
         }
 
-        PropertiesUtils.store(skProperties, skFilePath);
+        return sk;
     }
 
     public void encrypt(CPABELewkoWatersLSSS messageMatrix, Element message, String ctFilePath) {
-        Properties ctProperties = new Properties();
+        encrypt(messageMatrix, message).store(ctFilePath);
+    }
+
+    // 加密并直接返回内存中的密文对象，不写文件
+    public ABECiphertext encrypt(CPABELewkoWatersLSSS messageMatrix, Element message) {
+        ABECiphertext ct = new ABECiphertext("CPABEWaters11", bp);
 
         // random vector v = [s, y2, y3, ……, yn] <—— Zp
         Element[] v = new Element[messageMatrix.n];
@@ -69,67 +155,68 @@ public class CPABEWaters11 {
             v[i] = bp.getZr().newRandomElement().getImmutable();
         }
 
-        Element eggAlphaS = eggAlpha.powZn(v[0]).getImmutable();
+        Element eggAlphaS = eggAlphaPre.powZn(v[0]).getImmutable();
         System.out.println("eggAlphaS-e(g,g)^(alpha*s): " + eggAlphaS);
         Element C = message.mul(eggAlphaS); // C = M * (e(g,g)^alpha)^s
         System.out.println("加密阶段加密得到的C：" + C);
-        Element CPrime = g.powZn(v[0]); // C' = g^s
-        ctProperties.setProperty("C", ConversionUtils.bytes2String(C.toBytes()));
-        ctProperties.setProperty("CPrime", ConversionUtils.bytes2String(CPrime.toBytes()));
+        Element CPrime = gPre.powZn(v[0]); // C' = g^s
+        ct.put("C", C);
+        ct.put("CPrime", CPrime);
 
-        for (int i = 0; i < messageMatrix.l; i++) {
-            Element[] Mi = Arrays.copyOf(messageMatrix.Mi(i), messageMatrix.Mi(i).length);
+        // 各行的Ci、Di相互独立，可以并行计算，计算完成后再按行的顺序写入密文
+        Element[][] rowComponents = ParallelUtils.map(encryptionPool, messageMatrix.l, i -> {
+            Element[] Mi = messageMatrix.Mi(i);
             Element lambdai = bp.getZr().newZeroElement().getImmutable();
             Element ri = bp.getZr().newRandomElement().getImmutable();
             for (int j = 0; j < messageMatrix.n; j++) {
+                if (Mi[j].isZero()) continue; // LSSS矩阵中大部分元素为0，跳过
                 lambdai = lambdai.add(Mi[j].mul(v[j]));
             }
-            Element Ci = (ga.powZn(lambdai)).div(h[messageMatrix.rhoi(i)].powZn(ri)); // Ci = g^(a*lambdai) / h_rho^ri
-            Element Di = g.powZn(ri).getImmutable(); // Di = g^(ri)
-            ctProperties.setProperty("Ci"+i, ConversionUtils.bytes2String(Ci.toBytes()));
-            ctProperties.setProperty("Di"+i, ConversionUtils.bytes2String(Di.toBytes()));
+            Element Ci = (gaPre.powZn(lambdai)).div(h.get(messageMatrix.rhoi(i)).powZn(ri)).getImmutable(); // Ci = g^(a*lambdai) / h_rho^ri
+            Element Di = gPre.powZn(ri).getImmutable(); // Di = g^(ri)
+            return new Element[]{Ci, Di};
+        });
+        for (int i = 0; i < messageMatrix.l; i++) {
+            ct.put("Ci"+i, rowComponents[i][0]);
+            ct.put("Di"+i, rowComponents[i][1]);
         }
 
-        PropertiesUtils.store(ctProperties, ctFilePath);
+        return ct;
+    }
+
+    // 从私钥文件加载私钥句柄。同一个用户解密多个密文时应复用同一个句柄，以复用K、L、Kx的配对预计算
+    public ABESecretKey loadSecretKey(String skFilePath) {
+        return ABESecretKey.load(skFilePath, "CPABEWaters11", bp);
+    }
+
+    public ABECiphertext loadCiphertext(String ctFilePath) {
+        return ABECiphertext.load(ctFilePath, "CPABEWaters11", bp);
     }
 
     public Element decrypt(CPABELewkoWatersLSSS messageMatrix, int[] userAttributes, String skFilePath, String ctFilePath) {
-        Properties skProperties = PropertiesUtils.load(skFilePath);
-        Properties ctProperties = PropertiesUtils.load(ctFilePath);
-
-        String KStr = skProperties.getProperty("K");
-        Element K = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(KStr)).getImmutable();
-        String LStr = skProperties.getProperty("L");
-        Element L = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(LStr)).getImmutable();
-        HashMap<Integer, Element> SecretKeyKx = new HashMap<>();
-        for (int x : userAttributes) { // for each attribute j ∈ S(user Attributes)
-            String KxStr = skProperties.getProperty("Kx"+x);
-            Element kx = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(KxStr)).getImmutable();
-            SecretKeyKx.put(x, kx);
-        }
+        return decrypt(messageMatrix, userAttributes, loadSecretKey(skFilePath), loadCiphertext(ctFilePath));
+    }
 
-        String CStr = ctProperties.getProperty("C");
-        Element C = bp.getGT().newElementFromBytes(ConversionUtils.String2Bytes(CStr)).getImmutable();
-        System.out.println("解密阶段恢复出来的C：" + C);
+    public Element decrypt(CPABELewkoWatersLSSS messageMatrix, int[] userAttributes, ABESecretKey sk, String ctFilePath) {
+        return decrypt(messageMatrix, userAttributes, sk, loadCiphertext(ctFilePath));
+    }
 
-        String CPrimeStr = ctProperties.getProperty("CPrime");
-        Element CPrime = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(CPrimeStr)).getImmutable();
+    // 私钥和密文都已经在内存中，解密过程不打开任何文件
+    public Element decrypt(CPABELewkoWatersLSSS messageMatrix, int[] userAttributes, ABESecretKey sk, ABECiphertext ct) {
 
-        HashMap<Integer, Element> CiphertextCi = new HashMap<>();
-        HashMap<Integer, Element> CiphertextDi = new HashMap<>();
-        for (int i = 0; i < messageMatrix.l; i++) {
-            String CiStr = ctProperties.getProperty("Ci"+i);
-            CiphertextCi.put(i, bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(CiStr)).getImmutable());
-            String DiStr = ctProperties.getProperty("Di"+i);
-            CiphertextDi.put(i, bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DiStr)).getImmutable());
-        }
+        Element C = ct.get("C");
+        System.out.println("解密阶段恢复出来的C：" + C);
+
+        Element CPrime = ct.get("CPrime");
 
-        if (!messageMatrix.isSatisfied(userAttributes)) {
+        // 满足性检查和选择矩阵行共用同一个属性集合
+        AttributeSet userAttributeSet = AttributeSet.of(userAttributes);
+        if (!messageMatrix.isSatisfied(userAttributeSet)) {
             System.out.println("解密失败！属性策略不符合。");
             return null;
         }
         else {
-            Element eggAlphaSRecover = messageMatrix.recoverSecret(userAttributes, CPrime, K, L, CiphertextCi, CiphertextDi, SecretKeyKx); // e(g,g)^(alpha*s)
+            Element eggAlphaSRecover = messageMatrix.recoverSecret(userAttributeSet, CPrime, i -> ct.get("Ci"+i), i -> ct.get("Di"+i), sk); // 只取出选中行的Ci、Di // e(g,g)^(alpha*s)
             System.out.println("eggAlphaSRecover-e(g,g)^(alpha*s): " + eggAlphaSRecover);
             return C.div(eggAlphaSRecover); // C = M*e(g,g)^(alpha*s) , M = C / eggAlphaSRecover
         }
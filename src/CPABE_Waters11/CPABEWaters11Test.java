@@ -9,7 +9,7 @@ public class CPABEWaters11Test {
         cpabewaters11Instance.setUp("a.properties");
 
         int[] userAttributes = new int[]{1, 2, 3};
-        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test1/sk.properties";
+        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test1/sk.bin";
         cpabewaters11Instance.keyGeneration(userAttributes, skFilePath);
 
         CPABELewkoWatersLSSS.Node r = CPABELewkoWatersLSSSTest.getTree1();
@@ -17,7 +17,7 @@ public class CPABEWaters11Test {
         // 随机选取Gt上的元素作为消息并打印出来
         Element M = cpabewaters11Instance.getBp().getGT().newRandomElement().getImmutable();
         System.out.println("M 是 " + M);
-        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test1/ct.properties";
+        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test1/ct.bin";
         cpabewaters11Instance.encrypt(messageAccess, M, ctFilePath);
 
         Element M_  = cpabewaters11Instance.decrypt(messageAccess, userAttributes, skFilePath, ctFilePath);
@@ -29,7 +29,7 @@ public class CPABEWaters11Test {
         cpabewaters11Instance.setUp("a.properties");
 
         int[] userAttributes = new int[]{1, 2, 3};
-        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test2/sk.properties";
+        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test2/sk.bin";
         cpabewaters11Instance.keyGeneration(userAttributes, skFilePath);
 
         CPABELewkoWatersLSSS.Node r = CPABELewkoWatersLSSSTest.getTree2();
@@ -37,7 +37,7 @@ public class CPABEWaters11Test {
         // 随机选取Gt上的元素作为消息并打印出来
         Element M = cpabewaters11Instance.getBp().getGT().newRandomElement().getImmutable();
         System.out.println("M 是 " + M);
-        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test2/ct.properties";
+        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test2/ct.bin";
         cpabewaters11Instance.encrypt(messageAccess, M, ctFilePath);
 
         Element M_  = cpabewaters11Instance.decrypt(messageAccess, userAttributes, skFilePath, ctFilePath);
@@ -49,7 +49,7 @@ public class CPABEWaters11Test {
         cpabewaters11Instance.setUp("a.properties");
 
         int[] userAttributes = new int[]{1, 2, 5};
-        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test3/sk.properties";
+        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test3/sk.bin";
         cpabewaters11Instance.keyGeneration(userAttributes, skFilePath);
 
         CPABELewkoWatersLSSS.Node r = CPABELewkoWatersLSSSTest.getTree2();
@@ -57,7 +57,7 @@ public class CPABEWaters11Test {
         // 随机选取Gt上的元素作为消息并打印出来
         Element M = cpabewaters11Instance.getBp().getGT().newRandomElement().getImmutable();
         System.out.println("M 是 " + M);
-        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test3/ct.properties";
+        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test3/ct.bin";
         cpabewaters11Instance.encrypt(messageAccess, M, ctFilePath);
 
         Element M_  = cpabewaters11Instance.decrypt(messageAccess, userAttributes, skFilePath, ctFilePath);
@@ -69,7 +69,7 @@ public class CPABEWaters11Test {
         cpabewaters11Instance.setUp("a.properties");
 
         int[] userAttributes = new int[]{1, 2, 3, 5};
-        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test4/sk.properties";
+        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test4/sk.bin";
         cpabewaters11Instance.keyGeneration(userAttributes, skFilePath);
 
         CPABELewkoWatersLSSS.Node r = CPABELewkoWatersLSSSTest.getTree2();
@@ -77,7 +77,7 @@ public class CPABEWaters11Test {
         // 随机选取Gt上的元素作为消息并打印出来
         Element M = cpabewaters11Instance.getBp().getGT().newRandomElement().getImmutable();
         System.out.println("M 是 " + M);
-        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test4/ct.properties";
+        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test4/ct.bin";
         cpabewaters11Instance.encrypt(messageAccess, M, ctFilePath);
 
         Element M_  = cpabewaters11Instance.decrypt(messageAccess, userAttributes, skFilePath, ctFilePath);
@@ -89,7 +89,7 @@ public class CPABEWaters11Test {
         cpabewaters11Instance.setUp("a.properties");
 
         int[] userAttributes = new int[]{1, 2, 4};
-        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test5/sk.properties";
+        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test5/sk.bin";
         cpabewaters11Instance.keyGeneration(userAttributes, skFilePath);
 
         CPABELewkoWatersLSSS.Node r = CPABELewkoWatersLSSSTest.getTree1();
@@ -97,7 +97,7 @@ public class CPABEWaters11Test {
         // 随机选取Gt上的元素作为消息并打印出来
         Element M = cpabewaters11Instance.getBp().getGT().newRandomElement().getImmutable();
         System.out.println("M 是 " + M);
-        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test5/ct.properties";
+        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test5/ct.bin";
         cpabewaters11Instance.encrypt(messageAccess, M, ctFilePath);
 
         Element M_  = cpabewaters11Instance.decrypt(messageAccess, userAttributes, skFilePath, ctFilePath);
@@ -109,7 +109,7 @@ public class CPABEWaters11Test {
         cpabewaters11Instance.setUp("a.properties");
 
         int[] userAttributes = new int[]{1, 2, 3, 4};
-        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test6/sk.properties";
+        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test6/sk.bin";
         cpabewaters11Instance.keyGeneration(userAttributes, skFilePath);
 
         CPABELewkoWatersLSSS.Node r = CPABELewkoWatersLSSSTest.getTree1();
@@ -117,7 +117,7 @@ public class CPABEWaters11Test {
         // 随机选取Gt上的元素作为消息并打印出来
         Element M = cpabewaters11Instance.getBp().getGT().newRandomElement().getImmutable();
         System.out.println("M 是 " + M);
-        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test6/ct.properties";
+        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test6/ct.bin";
         cpabewaters11Instance.encrypt(messageAccess, M, ctFilePath);
 
         Element M_  = cpabewaters11Instance.decrypt(messageAccess, userAttributes, skFilePath, ctFilePath);
@@ -129,7 +129,7 @@ public class CPABEWaters11Test {
         cpabewaters11Instance.setUp("a.properties");
 
         int[] userAttributes = new int[]{2, 3, 4};
-        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test7/sk.properties";
+        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test7/sk.bin";
         cpabewaters11Instance.keyGeneration(userAttributes, skFilePath);
 
         CPABELewkoWatersLSSS.Node r = CPABELewkoWatersLSSSTest.getTree1();
@@ -137,14 +137,39 @@ public class CPABEWaters11Test {
         // 随机选取Gt上的元素作为消息并打印出来
         Element M = cpabewaters11Instance.getBp().getGT().newRandomElement().getImmutable();
         System.out.println("M 是 " + M);
-        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test7/ct.properties";
+        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test7/ct.bin";
         cpabewaters11Instance.encrypt(messageAccess, M, ctFilePath);
 
         Element M_  = cpabewaters11Instance.decrypt(messageAccess, userAttributes, skFilePath, ctFilePath);
         System.out.println("M_ 是 " + M_);
     }
 
+    public static void test8() {
+        // 属性宇宙很大，setUp只生成h的种子，只有用到的属性才会导出hx
+        long start = System.currentTimeMillis();
+        CPABEWaters11 cpabewaters11Instance = new CPABEWaters11(1_000_000);
+        cpabewaters11Instance.setUp("a.properties");
+        System.out.println("setUp耗时 " + (System.currentTimeMillis() - start) + " ms");
+
+        int[] userAttributes = new int[]{1, 2, 3, 999_999};
+        String skFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test8/sk.bin";
+        cpabewaters11Instance.keyGeneration(userAttributes, skFilePath);
+
+        CPABELewkoWatersLSSS.Node r = CPABELewkoWatersLSSSTest.getTree1();
+        CPABELewkoWatersLSSS messageAccess = new CPABELewkoWatersLSSS(r, cpabewaters11Instance.getBp());
+        // 随机选取Gt上的元素作为消息并打印出来
+        Element M = cpabewaters11Instance.getBp().getGT().newRandomElement().getImmutable();
+        System.out.println("M 是 " + M);
+        String ctFilePath = "src/CPABE_Waters11/CPABEWatersFiles/test8/ct.bin";
+        cpabewaters11Instance.encrypt(messageAccess, M, ctFilePath);
+
+        Element M_  = cpabewaters11Instance.decrypt(messageAccess, userAttributes, skFilePath, ctFilePath);
+        System.out.println("M_ 是 " + M_);
+        System.out.println("大属性宇宙下解密是否正确: " + M.isEqual(M_));
+    }
+
     public static void main(String[] args) {
         test6();
+        test8();
     }
 }
@@ -1,10 +1,16 @@
 package EHCPABE;
 
+import Utils.ABECiphertext;
+import Utils.ABESecretKey;
 import Utils.AESUtils;
-import Utils.ConversionUtils;
+import Utils.AttributeSet;
+import Utils.CompiledAccessTree;
+import Utils.ElementContainer;
+import Utils.LazyPowPreProcessing;
 import Utils.MathUtils;
-import Utils.PropertiesUtils;
+import Utils.ParallelUtils;
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
 import it.unisa.dia.gas.jpbc.Pairing;
 import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
 
@@ -12,7 +18,8 @@ import javax.crypto.SecretKey;
 import java.io.File;
 import java.util.Base64;
 import java.util.HashMap;
-import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
 
 /**
  * Xiao, M., Li, H., Huang, Q., Yu, S., & Susilo, W. (2022).
@@ -33,17 +40,31 @@ public class EHCPABE {
     private Element h; // h = g^beta;
     private Element msk_beta;  //Zr
     private Element msk_gAlpha;
+    private Element eggAlpha; // e(g, g)^alpha
+
+    // 以下底数的预计算表在第一次求幂时构建
+    private ElementPowPreProcessing gPre; // 密钥生成的g^r，加密中非叶子节点的C2x
+    private ElementPowPreProcessing hPre; // 密钥生成的h^r、Di'，加密中叶子节点的Cy
+    private ElementPowPreProcessing eggAlphaPre; // 只用于加密中非叶子节点的C1x
 
     // 记载明文路径与密文路径匹配关系的映射；记载明文路径与解密后文件路径匹配关系的映射
     private HashMap<String, String> plainText2Ciphertext;
     private HashMap<String, String> plainText2DecryptedText;
 
+    // 加密时并行计算叶子节点密文分量所用的线程池，为null时顺序计算
+    private ForkJoinPool encryptionPool;
+
     public EHCPABE(int u, HashMap<String, String> m1, HashMap<String, String> m2) {
         this.universe = u;
         plainText2Ciphertext = m1;
         plainText2DecryptedText = m2;
     }
 
+    // 设置加密时并行计算叶子节点Cy、CyPrime所用的线程池，为null时在调用线程中顺序计算(默认)
+    public void setEncryptionPool(ForkJoinPool pool) {
+        this.encryptionPool = pool;
+    }
+
     // 初始化步骤，需要双线性对参数作为参数
     public void setUp(String pairingFilePath) {
         this.bp = PairingFactory.getPairing(pairingFilePath);
@@ -52,58 +73,129 @@ public class EHCPABE {
         this.msk_beta = bp.getZr().newRandomElement().getImmutable(); // beta <- Zr
         this.h = this.g.powZn(this.msk_beta).getImmutable(); // h = g^beta
         this.msk_gAlpha = this.g.powZn(this.alpha).getImmutable();  // g^alpha
+        this.eggAlpha = bp.pairing(g, g).powZn(alpha).getImmutable(); // e(g, g)^alpha
+        initPreProcessing();
+    }
+
+    // 保存公共参数(g, h, e(g, g)^alpha)，加密方只需要这个文件；不含主密钥，可以公开
+    public void storePublicParameters(String publicParamsFilePath) {
+        ElementContainer params = new ElementContainer("EHCPABE.pk", bp);
+        params.putInts("universe", new int[]{universe});
+        params.putElement("g", g);
+        params.putElement("h", h);
+        params.putElement("eggAlpha", eggAlpha);
+        params.store(publicParamsFilePath);
+    }
+
+    // 保存主密钥(alpha, beta, g^alpha)，只有生成密钥的一方需要，应妥善保管
+    public void storeMasterKey(String mskFilePath) {
+        ElementContainer msk = new ElementContainer("EHCPABE.msk", bp);
+        msk.putElement("alpha", alpha);
+        msk.putElement("beta", msk_beta);
+        msk.putElement("gAlpha", msk_gAlpha);
+        msk.store(mskFilePath);
+    }
+
+    // 代替setUp：只恢复storePublicParameters保存的公共参数，不重新生成参数、不做求幂和配对。恢复后可以加密、解密，不能生成密钥
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath) {
+        this.bp = PairingFactory.getPairing(pairingFilePath);
+        ElementContainer params = ElementContainer.load(publicParamsFilePath, "EHCPABE.pk", bp);
+        if (params.getInts("universe")[0] != universe) {
+            throw new IllegalArgumentException("参数文件的属性上限为" + params.getInts("universe")[0] + "，而不是" + universe);
+        }
+        this.g = params.getElement("g");
+        this.h = params.getElement("h");
+        this.eggAlpha = params.getElement("eggAlpha");
+        this.alpha = null;
+        this.msk_beta = null;
+        this.msk_gAlpha = null;
+        initPreProcessing();
+    }
+
+    // 代替setUp：恢复公共参数和storeMasterKey保存的主密钥，恢复后可以生成密钥、加密和解密，与原来进程的密钥、密文互通
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath, String mskFilePath) {
+        loadParameters(pairingFilePath, publicParamsFilePath);
+        ElementContainer msk = ElementContainer.load(mskFilePath, "EHCPABE.msk", bp);
+        this.alpha = msk.getElement("alpha");
+        this.msk_beta = msk.getElement("beta");
+        this.msk_gAlpha = msk.getElement("gAlpha");
+    }
+
+    private void initPreProcessing() {
+        this.gPre = new LazyPowPreProcessing(g);
+        this.hPre = new LazyPowPreProcessing(h);
+        this.eggAlphaPre = new LazyPowPreProcessing(eggAlpha);
     }
 
     // 密钥生成步骤，需要用户属性和密钥文件存储地址作为参数
     public void keyGeneration(int[] userAttributes, String skFilePath) {
-        Properties skProperties = new Properties();
+        keyGeneration(userAttributes).store(skFilePath);
+    }
+
+    // 生成私钥并直接返回内存中的私钥句柄，不写文件
+    public ABESecretKey keyGeneration(int[] userAttributes) {
+        if (msk_gAlpha == null) {
+            throw new IllegalStateException("只加载了公共参数，没有主密钥，不能生成密钥");
+        }
+        ABESecretKey sk = new ABESecretKey("EHCPABE", bp);
 
         // r <- Zr; gR = g^r
         Element r = this.bp.getZr().newRandomElement().getImmutable();
-        Element gR = this.g.powZn(r).getImmutable();
+        Element gR = this.gPre.powZn(r).getImmutable();
 
         // D = g^α * h^r
-        Element D = msk_gAlpha.mul(h.powZn(r)).getImmutable();
-        skProperties.setProperty("D", ConversionUtils.bytes2String(D.toBytes()));
+        Element D = msk_gAlpha.mul(hPre.powZn(r)).getImmutable();
+        sk.put("D", D);
 
         // for each attribute j ∈ S(user Attributes)
         for (int i : userAttributes) {
             Element ri = this.bp.getZr().newRandomElement().getImmutable(); // rj <- Zr
-            Element hi = MathUtils.H1(String.valueOf(i), bp).getImmutable(); // H(i)
-            Element hiRi = hi.powZn(ri).getImmutable(); // hiRi = H(i)^ri
+            Element hiRi = MathUtils.H1Pow(String.valueOf(i), ri, bp); // hiRi = H(i)^ri
 
             Element Di = gR.mul(hiRi).getImmutable(); // Di = g^r * H(i)^ri
-            Element DiPrime = this.h.powZn(ri).getImmutable(); // Di' = h^ri
+            Element DiPrime = this.hPre.powZn(ri).getImmutable(); // Di' = h^ri
 
-            skProperties.setProperty("Di"+i, ConversionUtils.bytes2String(Di.toBytes()));
-            skProperties.setProperty("DiPrime"+i, ConversionUtils.bytes2String(DiPrime.toBytes()));
+            sk.put("Di"+i, Di);
+            sk.put("DiPrime"+i, DiPrime);
         }
+        sk.setAttributes(userAttributes); // 私钥携带自己的属性列表，解密时不需要再提供
 
-        PropertiesUtils.store(skProperties, skFilePath);
+        return sk;
     }
 
     // 加密步骤，需要密文属性访问控制树，注意消息已经集成在访问控制树当中了
     public void encrypt(AccessTreeEHCPABE messageAttributes, String ctFilePath) throws Exception {
-        Properties ctProperties = new Properties();
+        ElementContainer ctContainer = new ElementContainer("EHCPABE", bp);
 
         // 加密第一部分：在给定的层级访问控制树上面自上而下的生成对应的多项式
         Element qA_0 = bp.getZr().newRandomElement().getImmutable(); // s <- Zr
-        messageAttributes.generatePolySecret(bp, qA_0);
+        // 各节点的秘密值只属于本次加密，访问控制树本身不被修改
+        Element[] shares = messageAttributes.generatePolySecret(bp, qA_0);
+        CompiledAccessTree<AccessTreeEHCPABE.Node> tree = messageAttributes.compiled();
+
+        // 叶子节点的Cy、Cy'相互独立，先(可能并行地)全部算出来，按节点编号存放
+        Element[][] leafComponents = ParallelUtils.map(encryptionPool, tree.size(), i -> {
+            if (!tree.isLeaf(i)) {
+                return null;
+            }
+            Element Cy = hPre.powZn(shares[i]).getImmutable();
+            Element CyPrime = MathUtils.H1Pow(String.valueOf(tree.node(i).attribute), shares[i], bp);
+            return new Element[]{Cy, CyPrime};
+        });
 
         // 加密第二部分：对于所有非叶子节点x生成：Cx(1) Cx(2) Cx(3)。对于所有叶子节点y生成：Cy Cy'
-        for (AccessTreeEHCPABE.Node n : messageAttributes) {
+        for (int i = 0; i < tree.size(); i++) {
+            AccessTreeEHCPABE.Node n = tree.node(i);
             if (n.isLeave()) {
                 int yCount = n.id;
-                Element Cy = h.powZn(n.polynomial[0]).getImmutable();
-                Element CyPrime = (MathUtils.H1(String.valueOf(n.attribute), bp)).powZn(n.polynomial[0]);
-                ctProperties.setProperty("Cy"+yCount, ConversionUtils.bytes2String(Cy.toBytes()));
-                ctProperties.setProperty("CyPrime"+yCount, ConversionUtils.bytes2String(CyPrime.toBytes()));
+                ctContainer.putElement("Cy"+yCount, leafComponents[i][0]);
+                ctContainer.putElement("CyPrime"+yCount, leafComponents[i][1]);
             }
             else {
                 int xCount = n.id;
                 Element Rx = bp.getGT().newRandomElement().getImmutable();
-                Element C1x = Rx.mul(bp.pairing(g.powZn(alpha), g.powZn(n.polynomial[0]))).getImmutable();
-                Element C2x = g.powZn(n.polynomial[0]);
+                Element C1x = Rx.mul(eggAlphaPre.powZn(shares[i])).getImmutable(); // Rx * e(g^alpha, g^qx(0)) = Rx * e(g, g)^(alpha*qx(0))
+                Element C2x = gPre.powZn(shares[i]);
                 SecretKey Kx = AESUtils.generateSecretKey(MathUtils.EHCPABE_H2(C1x, C2x, Rx));
                 // 打印加密阶段时恢复出来的密钥key
                 System.out.println("加密阶段的密钥"+n.id+" : "+Base64.getEncoder().encodeToString(Kx.getEncoded()));
@@ -114,63 +206,54 @@ public class EHCPABE {
                     File ciphertext = new File(plainText2Ciphertext.get(n.filePath));
                     AESUtils.encrypt(message, ciphertext, Kx);
                 }
-                ctProperties.setProperty("C1x"+xCount, ConversionUtils.bytes2String(C1x.toBytes()));
-                ctProperties.setProperty("C2x"+xCount, ConversionUtils.bytes2String(C2x.toBytes()));
+                ctContainer.putElement("C1x"+xCount, C1x);
+                ctContainer.putElement("C2x"+xCount, C2x);
             }
         }
 
-        PropertiesUtils.store(ctProperties, ctFilePath);
+        ctContainer.store(ctFilePath);
+    }
+
+    // 从私钥文件加载私钥句柄。同一个用户解密多个密文时应复用同一个句柄，以复用D、Di、Di'的配对预计算
+    public ABESecretKey loadSecretKey(String skFilePath) {
+        return ABESecretKey.load(skFilePath, "EHCPABE", bp);
+    }
+
+    // 用户属性取自私钥携带的属性列表
+    public void decrypt(AccessTreeEHCPABE messageAttributes, String skFilePath, String ctFilePath) throws Exception {
+        decrypt(messageAttributes, loadSecretKey(skFilePath), ctFilePath);
+    }
+
+    public void decrypt(AccessTreeEHCPABE messageAttributes, ABESecretKey sk, String ctFilePath) throws Exception {
+        decrypt(messageAttributes, sk.attributeSet(), sk, ctFilePath);
     }
 
     public void decrypt(AccessTreeEHCPABE messageAttributes, int[] userAttributes, String skFilePath, String ctFilePath) throws Exception {
-        Properties skProperties = PropertiesUtils.load(skFilePath);
-        Properties ctProperties = PropertiesUtils.load(ctFilePath);
-
-        // 解密需要准备好Di和Di'：这是与属性有关的解密项，是在密钥生成部分生成的内容。将其从密钥文件中恢复出来存储到secretKeyDi和secretKeyDiPrime中
-        HashMap<Integer, Element> secretKeyDi = new HashMap<>();
-        HashMap<Integer, Element> secretKeyDiPrime = new HashMap<>();
-        for (int i = 0; i < universe; i++) {
-            if (skProperties.containsKey("Di"+i)) {
-                String DiStr = skProperties.getProperty("Di"+i);
-                Element Di = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DiStr)).getImmutable();
-                secretKeyDi.put(i, Di);
-            }
-            if (skProperties.containsKey("DiPrime"+i)) {
-                String DiPrimeStr = skProperties.getProperty("DiPrime"+i);
-                Element DiPrime = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DiPrimeStr)).getImmutable();
-                secretKeyDiPrime.put(i, DiPrime);
-            }
-        }
+        decrypt(messageAttributes, userAttributes, loadSecretKey(skFilePath), ctFilePath);
+    }
 
-        // 解密还需要准备好Cy和Cy'：这是与叶子节点是有关的，是在加密部分生成的内容。将其从密文文件中恢复出来存储到leaveNodeCy和leaveNodeCyPrime中
-        HashMap<Integer, Element> leaveNodeCy = new HashMap<>();
-        HashMap<Integer, Element> leaveNodeCyPrime = new HashMap<>();
-        for (AccessTreeEHCPABE.Node n : messageAttributes) {
-            if (n.isLeave()) {
-                int yCount = n.id;
-                String CyStr = ctProperties.getProperty(("Cy"+yCount));
-                Element Cy = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(CyStr)).getImmutable();
-                String CyPrimeStr = ctProperties.getProperty("CyPrime"+yCount);
-                Element CyPrime = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(CyPrimeStr)).getImmutable();
-                leaveNodeCy.put(yCount, Cy);
-                leaveNodeCyPrime.put(yCount, CyPrime);
-            }
-        }
+    public void decrypt(AccessTreeEHCPABE messageAttributes, int[] userAttributes, ABESecretKey sk, String ctFilePath) throws Exception {
+        // 用户属性集合只构建一次，各个level node的解密共用
+        decrypt(messageAttributes, AttributeSet.of(userAttributes), sk, ctFilePath);
+    }
 
-        String DStr = skProperties.getProperty("D");
-        Element D = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DStr)).getImmutable();
+    // 各个level node的解密只取出选中叶子的Cy、Cy'和私钥中对应属性的Di、Di'，与属性宇宙的大小无关
+    private void decrypt(AccessTreeEHCPABE messageAttributes, AttributeSet userAttributeSet, ABESecretKey sk, String ctFilePath) throws Exception {
+        // 密文元素在第一次取用时才解码，并在各个level node之间共用
+        ABECiphertext ct = ABECiphertext.load(ctFilePath, "EHCPABE", bp);
 
+        // 叶子的Cy和Cy'按叶子编号从密文中按需取出
+        IntFunction<Element> leaveNodeCy = yCount -> ct.get("Cy"+yCount);
+        IntFunction<Element> leaveNodeCyPrime = yCount -> ct.get("CyPrime"+yCount);
         for (AccessTreeEHCPABE.Node n : messageAttributes) {
             if (!n.isLeave() && n.filePath != null) {
-                String C1xStr = ctProperties.getProperty("C1x"+n.id);
-                Element C1x = bp.getGT().newElementFromBytes(ConversionUtils.String2Bytes(C1xStr)).getImmutable();
-                String C2xStr = ctProperties.getProperty("C2x"+n.id);
-                Element C2x = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(C2xStr)).getImmutable();
+                Element C1x = ct.get("C1x"+n.id);
+                Element C2x = ct.get("C2x"+n.id);
 
-                Element decNode = messageAttributes.decryptNode(n, userAttributes, secretKeyDi, secretKeyDiPrime, leaveNodeCy, leaveNodeCyPrime, bp);
+                Element decNode = messageAttributes.decryptNode(n, userAttributeSet, sk, leaveNodeCy, leaveNodeCyPrime, bp);
                 if (decNode != null) {
                     System.out.println("密文属性和用户属性访问控制树匹配，解密成功！");
-                    Element Rx = C1x.div((bp.pairing(C2x, D)).div(decNode));
+                    Element Rx = C1x.div((sk.pairing("D", C2x)).div(decNode));
 
                     SecretKey Kx = AESUtils.generateSecretKey(MathUtils.EHCPABE_H2(C1x, C2x, Rx));
 
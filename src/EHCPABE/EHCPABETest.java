@@ -6,8 +6,8 @@ public class EHCPABETest {
 
     public static void testCase1() throws Exception {
         //测试文件路径
-        String skFilePath = "src/EHCPABE/EHCPABEFile/test1/sk.properties";
-        String ctFilePath = "src/EHCPABE/EHCPABEFile/test1/ct.properties";
+        String skFilePath = "src/EHCPABE/EHCPABEFile/test1/sk.bin";
+        String ctFilePath = "src/EHCPABE/EHCPABEFile/test1/ct.bin";
         System.out.println("\n测试案例1：");
         // 初始化操作，设置属性上限为10
 
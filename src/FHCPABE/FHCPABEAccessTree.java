@@ -1,16 +1,21 @@
 package FHCPABE;
 
+import Utils.ABESecretKey;
+import Utils.AttributeSet;
+import Utils.CompiledAccessTree;
 import Utils.MathUtils;
+import Utils.PairingUtils;
 import it.unisa.dia.gas.jpbc.Element;
 import it.unisa.dia.gas.jpbc.Pairing;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
 
 public class FHCPABEAccessTree implements Iterable<FHCPABEAccessTree.Node> {
 
     public static class Node {
 
-        public Element[] polynomial; // 每个节点被赋予一个多项式。多项式的常数项系数=多项式在x=0处的取值=该节点的秘密值
         public int threshold; // 非叶子节点具有门限阈值；叶子节点的门限阈值置为-1
         public int attribute; // 叶子节点具有属性值；非叶子节点的属性值置为-1
         public String filePath; // 如果非叶子节点对应一个文献，那么这个非叶子节点称作level node。注意，如果按照树的层序遍历，每层只允许有一个level node
@@ -20,14 +25,12 @@ public class FHCPABEAccessTree implements Iterable<FHCPABEAccessTree.Node> {
 
         // 对于叶子节点进行初始化操作：提供叶子节点所对应的属性
         public Node(int attribute) {
-            this.polynomial = new Element[1];
             this.threshold = -1;
             this.attribute = attribute;
         }
 
         // 对于非叶子节点进行初始化操作：提供非叶子节点对应的阈值和子节点；也可以通过后续addChild和addChildren操作添加非叶子节点的子节点
         public Node(int threshold, String filePath, List<Node> children) {
-            this.polynomial = new Element[threshold];
             this.threshold = threshold;
             this.attribute = -1;
             this.filePath = filePath;
@@ -62,6 +65,7 @@ public class FHCPABEAccessTree implements Iterable<FHCPABEAccessTree.Node> {
         // 非叶子节点添加单个子节点
         public void addChild(Node child) {
             this.children.add(child);
+            CompiledAccessTree.treeModified();
         }
 
 
@@ -71,138 +75,78 @@ public class FHCPABEAccessTree implements Iterable<FHCPABEAccessTree.Node> {
     public Node root;
     // k表示level node的个数，也是这个FHCPABE的Access Tree所携带的文件个数
     public int k;
+    // 编译后的扁平化表示，见compiled()
+    private final CompiledAccessTree.Cache<Node> compiled = new CompiledAccessTree.Cache<>(n -> n.children, n -> n.threshold, n -> n.attribute);
+    private ForkJoinPool decryptionPool; // 解密时并行计算选中子树所用的线程池，为null时顺序计算
 
     public FHCPABEAccessTree(Node root) {
         this.root = root;
     }
 
-    // 密钥分发阶段，自顶向下配置各节点的秘密值和多项式。每次操作都是设置当前节点的叶子节点，注意根节点一开始就要提供
-    private void generatePolySecretHelper(Node n, Pairing bp, Element[] s) {
-        // 如果当前节点是叶子节点，直接返回不进行操作(每次操作都是设置当前节点的子节点，叶子节点没有子节点)
-        if (n.isLeave()) return;
-
-        // 如果当前节点不是叶子节点，首先给当前节点设置好多项式q(x)(注意多项式的常量是秘密值)
-        n.polynomial = MathUtils.generateRandomPolynomial(n.threshold, n.polynomial[0], bp);
-
-        // 然后对于当前节点的每一个叶子节点child，计算q(index(child))的多项式值作为child的秘密值
-        for (int i = 0; i < n.children.size(); i++) {
-            Node childNode = n.children.get(i);
-            // childNode的常数项要么是秘密值，要么是q(index)。这里index(child)就是child在children数组的下标+1
-            childNode.polynomial[0] = childNode.isLevelNode() ? s[childNode.levelId-1] : MathUtils.qx(n.polynomial, bp.getZr().newElement(i+1));
-            // 继续递归生成秘密
-            generatePolySecretHelper(childNode, bp, s);
-        }
+    // 返回编译后的访问控制树(扁平化的数组表示)，加密、解密都在它上面遍历。
+    // root被替换或通过addChild/addChildren修改过时会自动重新编译(直接修改Node的字段后需调用CompiledAccessTree.treeModified)；修改树的结构后仍需重新调用generateLeaveSequence为节点编号
+    public CompiledAccessTree<Node> compiled() {
+        return compiled.get(root);
     }
-     // 密钥分发阶段，自顶向下配置各节点的秘密值和多项式，注意需要提供根节点的秘密值
-    public void generatePolySecret(Pairing bp, Element[] s) {
-        // 设置根节点的秘密：秘密值 = 根节点多项式的常数项系数 = 根节点多项式在x=0处的取值
-        this.root.polynomial[0] = s[0];
-        generatePolySecretHelper(this.root, bp, s);
+
+    // 设置解密时并行计算兄弟子树(及其叶子的配对)所用的线程池，为null时在调用线程中顺序计算(默认)
+    public void setDecryptionPool(ForkJoinPool pool) {
+        this.decryptionPool = pool;
     }
 
-    // accessTree的层序遍历迭代器
+    // 加密阶段，自顶向下分发秘密：level node的秘密值为s[levelId-1]，其余节点为父节点多项式q(index(child))的值。
+    // 返回按compiled()编号索引的各节点秘密值(多项式的常数项)，树本身不被修改，同一棵树可以同时用于多次加密
+    public Element[] generatePolySecret(Pairing bp, Element[] s) {
+        CompiledAccessTree<Node> c = compiled();
+        return c.shareSecret(s[0], i -> c.node(i).isLevelNode() ? s[c.node(i).levelId-1] : null, bp);
+    }
+
+    // accessTree的层序遍历迭代器，直接遍历编译后的节点数组
     @Override
     public Iterator<Node> iterator() {
-        return new Iterator<>() {
-            private ArrayDeque<Node> queue = new ArrayDeque<>();
-
-            {
-                // 将根节点加入队列
-                if (root != null) {
-                    queue.addLast(root);
-                }
-            }
+        return compiled().iterator();
+    }
 
-            @Override
-            public boolean hasNext() {
-                return !queue.isEmpty();
-            }
 
-            @Override
-            public Node next() {
-                if (!hasNext()) {
-                    throw new NoSuchElementException();
-                }
-                // 获取并移除队列头部的节点
-                Node current = queue.removeFirst();
-                // 将当前节点的子节点按顺序加入队列
-                if (current.children != null) {
-                    queue.addAll(current.children);
-                }
-                return current;
-            }
-        };
+    // 私钥元素Dj、Dj'来自私钥句柄sk，每个叶子的两次配对合并成一次乘积配对(PairingUtils.pairingQuotient)
+    // 两阶段解密：先不做配对，只根据属性选出以n为根的子树中叶子数最少的满足子树；再只对选中的叶子计算配对。不满足时返回null
+    public Element decryptNode(Node n, int[] userAttributes, ABESecretKey sk, Map<Integer, Element> Cxy,  Map<Integer, Element> CxyPrime, Pairing bp) {
+        return decryptNode(n, AttributeSet.of(userAttributes), sk, Cxy, CxyPrime, bp);
     }
 
+    // 与上面的方法相同，属性集合已经构建好。解密多个level node时应复用同一个属性集合
+    public Element decryptNode(Node n, AttributeSet attributeSet, ABESecretKey sk, Map<Integer, Element> Cxy,  Map<Integer, Element> CxyPrime, Pairing bp) {
+        return decryptNode(n, attributeSet, sk, (IntFunction<Element>) Cxy::get, CxyPrime::get, bp);
+    }
 
-    public Element decryptNode(Node n, int[] userAttributes, Map<Integer, Element> Dj , Map<Integer, Element> DjPrime, Map<Integer, Element> Cxy,  Map<Integer, Element> CxyPrime, Pairing bp) {
-        // 如果n是叶子节点
-        if (n.isLeave()) {
-            // 检测n的属性是否在userAttributes当中被包含
-            for (int u : userAttributes) {
-                if (n.attribute == u) {
-                    //如果被包含，返回e(Dj, Cxy)/e(Dj', Cxy')
-                    Element e_Dj_Cxy = bp.pairing(Dj.get(n.attribute), Cxy.get(n.id)).getImmutable();
-                    Element e_DjPrime_CxyPrime = bp.pairing(DjPrime.get(n.attribute), CxyPrime.get(n.id)).getImmutable();
-                    return e_Dj_Cxy.div(e_DjPrime_CxyPrime).getImmutable();
-                }
-            }
+    // 与上面的方法相同，叶子的Cxy、Cxy'按叶子编号按需获取，只有选中的叶子才会被取出
+    public Element decryptNode(Node n, AttributeSet attributeSet, ABESecretKey sk, IntFunction<Element> Cxy, IntFunction<Element> CxyPrime, Pairing bp) {
+        CompiledAccessTree<Node> c = compiled();
+        int from = c.indexOf(n);
+        int[][] plan = c.plan(from, i -> attributeSet.contains(c.attribute(i)));
+        if (plan == null) {
             return null;
         }
-
-        // 如果n是非叶子节点，维护返回true的index-Node和index-SecretValue。index-SecretValue是论文当中的Fz
-        HashMap<Integer, Node> index2ValidChildren = new HashMap<>(); // 记录返回true的index和Node
-        HashMap<Integer, Element> index2SecretValue = new HashMap<>(); // 记录返回true的index和secret
-
-        for (int i = 0; i < n.children.size(); i++){
-            Node childNode = n.children.get(i);
-            // 递归调用，恢复子节点的秘密值
-            Element childSecret = decryptNode(childNode, userAttributes, Dj, DjPrime, Cxy, CxyPrime, bp);
-            if (childSecret != null){
-                // 注意子节点child的index(child)就是child节点在n.children中的下标+1
-                index2ValidChildren.put(i+1, childNode);
-                index2SecretValue.put(i+1, childSecret);
-                // 如果满足条件的子节点个数已经达到门限值，则跳出循环，不再计算剩余的节点。此时index2ValidChildren构成了论文中的S
-                if (index2ValidChildren.size() == n.threshold) {
-                    break;
-                }
-            }
-        }
-
-        // 如果非叶子节点n的返回true的子节点个数满足n的阈值，则可以恢复n的秘密
-        if (index2ValidChildren.size() == n.threshold) {
-            Element result = bp.getGT().newOneElement().getImmutable();
-            // 对于非叶子节点n的返回true的子节点构成的大小为threshold的集合S，遍历S
-            for (int i : index2ValidChildren.keySet()) {
-                Element delta = MathUtils.computeLagrangeBasis(i, index2ValidChildren.keySet().stream().mapToInt(Integer::intValue).toArray(), 0, bp);  //计算拉个朗日插值因子
-                // result = ∏ Fz^delta
-                result = result.mul(index2SecretValue.get(i).duplicate().powZn(delta)).getImmutable();
-            }
-            return result;
-        }
-        return null;
+        // 规划阶段已经确认选中叶子的属性被用户属性包含，叶子的值为e(Dj, Cxy)/e(Dj', Cxy')
+        return c.reconstruct(from, plan, i -> {
+            Node leaf = c.node(i);
+            return PairingUtils.pairingQuotient(bp, sk.get("Dj" + leaf.attribute), Cxy.apply(leaf.id),
+                    sk.get("DjPrime" + leaf.attribute), CxyPrime.apply(leaf.id));
+        }, bp, decryptionPool);
     }
 
 
-
+    // 叶子节点、非叶子节点分别按层序从1开始编号，level node另外按层序从1开始编层级编号
     public void generateLeaveSequence() {
-        int level = 1;
-        int leaveIndex = 1;
-        int noLeaveIndex = 1;
-        for (Node n : this) {
+        CompiledAccessTree<Node> c = compiled();
+        this.k = 0;
+        for (int i = 0; i < c.size(); i++) {
+            Node n = c.node(i);
             if (n.isLevelNode()) {
-                n.levelId = level;
-                level += 1;
                 this.k++;
+                n.levelId = this.k;
             }
-            if (n.isLeave()) {
-                n.id = leaveIndex;
-                leaveIndex += 1;
-            }
-            else {
-                n.id = noLeaveIndex;
-                noLeaveIndex +=1;
-            }
+            n.id = c.sequence(i);
         }
     }
 
@@ -233,7 +177,6 @@ public class FHCPABEAccessTree implements Iterable<FHCPABEAccessTree.Node> {
     }
 
 
-
     public static void main(String[] args) {
         getInstance1();
         int a;
@@ -1,10 +1,16 @@
 package FHCPABE;
 
+import Utils.ABECiphertext;
+import Utils.ABESecretKey;
 import Utils.AESUtils;
-import Utils.ConversionUtils;
+import Utils.AttributeSet;
+import Utils.CompiledAccessTree;
+import Utils.ElementContainer;
+import Utils.LazyPowPreProcessing;
 import Utils.MathUtils;
-import Utils.PropertiesUtils;
+import Utils.ParallelUtils;
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
 import it.unisa.dia.gas.jpbc.Pairing;
 import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
 
@@ -12,7 +18,8 @@ import javax.crypto.SecretKey;
 import java.io.File;
 import java.util.Base64;
 import java.util.HashMap;
-import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
 
 /**
  * Xiao, M., Li, H., Huang, Q., Yu, S., & Susilo, W. (2022).
@@ -35,17 +42,30 @@ public class FHCPABEDemo {
     private Element msk_gAlpha;
     private Element eggAlpha;
 
+    // 以下底数的预计算表在第一次求幂时构建
+    private ElementPowPreProcessing gPre; // 密钥生成的g^r，加密中每个level node的Ci'
+    private ElementPowPreProcessing hPre; // 密钥生成的h^r、Dj'，加密中叶子节点的Cxy
+    private ElementPowPreProcessing eggAlphaPre; // 只用于加密：Ci~和传输节点的CPower
+
 
     // 记载明文路径与密文路径匹配关系的映射；记载明文路径与解密后文件路径匹配关系的映射
     private HashMap<String, String> plainText2Ciphertext;
     private HashMap<String, String> plainText2DecryptedText;
 
+    // 加密时并行计算叶子节点密文分量所用的线程池，为null时顺序计算
+    private ForkJoinPool encryptionPool;
+
     public FHCPABEDemo(int u, HashMap<String, String> m1, HashMap<String, String> m2) {
         this.universe = u;
         plainText2Ciphertext = m1;
         plainText2DecryptedText = m2;
     }
 
+    // 设置加密时并行计算叶子节点Cxy、CxyPrime所用的线程池，为null时在调用线程中顺序计算(默认)
+    public void setEncryptionPool(ForkJoinPool pool) {
+        this.encryptionPool = pool;
+    }
+
     // 初始化步骤，需要双线性对参数作为参数
     public void setUp(String pairingFilePath) {
         this.bp = PairingFactory.getPairing(pairingFilePath);
@@ -55,38 +75,97 @@ public class FHCPABEDemo {
         this.h = this.g.powZn(this.msk_beta).getImmutable(); // h = g^beta
         this.msk_gAlpha = this.g.powZn(this.alpha).getImmutable();  // g^alpha
         this.eggAlpha = bp.pairing(g, g).powZn(alpha).getImmutable(); // e(g, g)^alpha
+        initPreProcessing();
+    }
+
+    // 保存公共参数(g, h, e(g, g)^alpha)，加密方只需要这个文件；不含主密钥，可以公开
+    public void storePublicParameters(String publicParamsFilePath) {
+        ElementContainer params = new ElementContainer("FHCPABE.pk", bp);
+        params.putInts("universe", new int[]{universe});
+        params.putElement("g", g);
+        params.putElement("h", h);
+        params.putElement("eggAlpha", eggAlpha);
+        params.store(publicParamsFilePath);
+    }
+
+    // 保存主密钥(alpha, beta, g^alpha)，只有生成密钥的一方需要，应妥善保管
+    public void storeMasterKey(String mskFilePath) {
+        ElementContainer msk = new ElementContainer("FHCPABE.msk", bp);
+        msk.putElement("alpha", alpha);
+        msk.putElement("beta", msk_beta);
+        msk.putElement("gAlpha", msk_gAlpha);
+        msk.store(mskFilePath);
+    }
+
+    // 代替setUp：只恢复storePublicParameters保存的公共参数，不重新生成参数、不做求幂和配对。恢复后可以加密、解密，不能生成密钥
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath) {
+        this.bp = PairingFactory.getPairing(pairingFilePath);
+        ElementContainer params = ElementContainer.load(publicParamsFilePath, "FHCPABE.pk", bp);
+        if (params.getInts("universe")[0] != universe) {
+            throw new IllegalArgumentException("参数文件的属性上限为" + params.getInts("universe")[0] + "，而不是" + universe);
+        }
+        this.g = params.getElement("g");
+        this.h = params.getElement("h");
+        this.eggAlpha = params.getElement("eggAlpha");
+        this.alpha = null;
+        this.msk_beta = null;
+        this.msk_gAlpha = null;
+        initPreProcessing();
+    }
+
+    // 代替setUp：恢复公共参数和storeMasterKey保存的主密钥，恢复后可以生成密钥、加密和解密，与原来进程的密钥、密文互通
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath, String mskFilePath) {
+        loadParameters(pairingFilePath, publicParamsFilePath);
+        ElementContainer msk = ElementContainer.load(mskFilePath, "FHCPABE.msk", bp);
+        this.alpha = msk.getElement("alpha");
+        this.msk_beta = msk.getElement("beta");
+        this.msk_gAlpha = msk.getElement("gAlpha");
+    }
+
+    private void initPreProcessing() {
+        this.gPre = new LazyPowPreProcessing(g);
+        this.hPre = new LazyPowPreProcessing(h);
+        this.eggAlphaPre = new LazyPowPreProcessing(eggAlpha);
     }
 
     // 密钥生成步骤，需要用户属性和密钥文件存储地址作为参数
     public void keyGeneration(int[] userAttributes, String skFilePath) {
-        Properties skProperties = new Properties();
+        keyGeneration(userAttributes).store(skFilePath);
+    }
+
+    // 生成私钥并直接返回内存中的私钥句柄，不写文件
+    public ABESecretKey keyGeneration(int[] userAttributes) {
+        if (msk_gAlpha == null) {
+            throw new IllegalStateException("只加载了公共参数，没有主密钥，不能生成密钥");
+        }
+        ABESecretKey sk = new ABESecretKey("FHCPABE", bp);
 
         // r <- Zr; gR = g^r
         Element r = this.bp.getZr().newRandomElement().getImmutable();
-        Element gR = this.g.powZn(r).getImmutable();
+        Element gR = this.gPre.powZn(r).getImmutable();
 
         // D = g^α * h^r = g^α * g^βr = g^(α+βr)
-        Element D = msk_gAlpha.mul(h.powZn(r)).getImmutable();
-        skProperties.setProperty("D", ConversionUtils.bytes2String(D.toBytes()));
+        Element D = msk_gAlpha.mul(hPre.powZn(r)).getImmutable();
+        sk.put("D", D);
 
         // for each attribute j ∈ S(user Attributes)
         for (int j : userAttributes) {
             Element rj = this.bp.getZr().newRandomElement().getImmutable(); // rj <- Zr
-            Element hj = MathUtils.H1(String.valueOf(j), bp).getImmutable(); // H(i)
-            Element hjRj = hj.powZn(rj).getImmutable(); // hiRi = H(i)^ri
+            Element hjRj = MathUtils.H1Pow(String.valueOf(j), rj, bp); // hiRi = H(i)^ri
 
             Element Dj = gR.mul(hjRj).getImmutable(); // Dj = g^r * H(j)^rj
-            Element DjPrime = this.h.powZn(rj).getImmutable(); // Dj' = h^rj
+            Element DjPrime = this.hPre.powZn(rj).getImmutable(); // Dj' = h^rj
 
-            skProperties.setProperty("Dj"+j, ConversionUtils.bytes2String(Dj.toBytes()));
-            skProperties.setProperty("DjPrime"+j, ConversionUtils.bytes2String(DjPrime.toBytes()));
+            sk.put("Dj"+j, Dj);
+            sk.put("DjPrime"+j, DjPrime);
         }
-        PropertiesUtils.store(skProperties, skFilePath);
+        sk.setAttributes(userAttributes); // 私钥携带自己的属性列表，解密时不需要再提供
+        return sk;
     }
 
     // 加密步骤，需要密文属性访问控制树，注意消息已经集成在访问控制树当中了
     public void encrypt(FHCPABEAccessTree messageAttributes, String ctFilePath) throws Exception {
-        Properties ctProperties = new Properties();
+        ElementContainer ctContainer = new ElementContainer("FHCPABE", bp);
 
         // 加密第一部分：生成ck={ck1, ck2, …… ckk}和s1 s2 …… sk in Zp
         Element[] ck = new Element[messageAttributes.k];
@@ -109,94 +188,96 @@ public class FHCPABEDemo {
 
         // 加密第二部分：对于所有的层级节点i，生成CiWave和CiPrime。这是密文的一部分。
         for (int i = 1; i <= messageAttributes.k; i++) {
-            Element CiWave = ck[i-1].mul(eggAlpha.powZn(s[i-1])).getImmutable(); //Ci~ = ck * (e(g, g)^alpha)^si
-            Element CiPrime = g.powZn(s[i-1]).getImmutable(); // Ci' = g^si
-            ctProperties.setProperty("CiWave"+i, ConversionUtils.bytes2String(CiWave.toBytes()));
-            ctProperties.setProperty("CiPrime"+i, ConversionUtils.bytes2String(CiPrime.toBytes()));
+            Element CiWave = ck[i-1].mul(eggAlphaPre.powZn(s[i-1])).getImmutable(); //Ci~ = ck * (e(g, g)^alpha)^si
+            Element CiPrime = gPre.powZn(s[i-1]).getImmutable(); // Ci' = g^si
+            ctContainer.putElement("CiWave"+i, CiWave);
+            ctContainer.putElement("CiPrime"+i, CiPrime);
         }
 
         // 加密第三部分：在给定的层级访问控制树上面自上而下的生成对应的多项式。注意，level node的多项式生成特殊一些；root必须是level node
-        messageAttributes.generatePolySecret(bp, s);
+        // 各节点的秘密值只属于本次加密，访问控制树本身不被修改
+        Element[] shares = messageAttributes.generatePolySecret(bp, s);
+        CompiledAccessTree<FHCPABEAccessTree.Node> tree = messageAttributes.compiled();
+
+        // 叶子节点的Cxy、Cxy'相互独立，先(可能并行地)全部算出来，按节点编号存放
+        Element[][] leafComponents = ParallelUtils.map(encryptionPool, tree.size(), i -> {
+            if (!tree.isLeaf(i)) {
+                return null;
+            }
+            Element Cxy = hPre.powZn(shares[i]).getImmutable();
+            Element CxyPrime = MathUtils.H1Pow(String.valueOf(tree.node(i).attribute), shares[i], bp);
+            return new Element[]{Cxy, CxyPrime};
+        });
 
         // 加密第四部分：对于所有叶子节点xy生成：Cxy Cxy'.对于所有传输节点x的孩子生成：C^x(j) Cx(2) Cx(3)
-        for (FHCPABEAccessTree.Node n : messageAttributes) {
+        for (int i = 0; i < tree.size(); i++) {
+            FHCPABEAccessTree.Node n = tree.node(i);
             // 叶子节点生成Cxy和Cxy'
             if (n.isLeave()) {
                 int xyCount = n.id;
-                Element Cxy = h.powZn(n.polynomial[0]).getImmutable();
-                Element CxyPrime = (MathUtils.H1(String.valueOf(n.attribute), bp)).powZn(n.polynomial[0]);
-                ctProperties.setProperty("Cxy"+xyCount, ConversionUtils.bytes2String(Cxy.toBytes()));
-                ctProperties.setProperty("CxyPrime"+xyCount, ConversionUtils.bytes2String(CxyPrime.toBytes()));
+                ctContainer.putElement("Cxy"+xyCount, leafComponents[i][0]);
+                ctContainer.putElement("CxyPrime"+xyCount, leafComponents[i][1]);
             }
             // 传输节点的孩子节点生成需要的内容
             if (n.isTransparentNode()) {
                 int xCount = n.id;
-                Element q_xy_0 = n.polynomial[0];
+                Element q_xy_0 = shares[i];
 
                 for (int j = 0; j < n.children.size(); j++) {
                     if (!n.children.get(j).isLeave()) {
-                        Element CPower1 = eggAlpha.powZn((q_xy_0.add(n.children.get(j).polynomial[0]))).getImmutable();
+                        Element CPower1 = eggAlphaPre.powZn((q_xy_0.add(shares[tree.childStart(i) + j]))).getImmutable();
                         //todo: FHCPABE_H2()没有实现
-                        Element CPower2 = bp.pairing(g,g).powZn(alpha.mul(q_xy_0)).getImmutable();
+                        Element CPower2 = eggAlphaPre.powZn(q_xy_0).getImmutable(); // e(g, g)^(alpha*q_xy(0))
                         Element CPower = CPower1.mul(CPower2);
-                        ctProperties.setProperty("CPower_"+xCount+"_"+j, ConversionUtils.bytes2String(CPower.toBytes()));
+                        ctContainer.putElement("CPower_"+xCount+"_"+j, CPower);
                     }
                 }
             }
         }
-        PropertiesUtils.store(ctProperties, ctFilePath);
+        ctContainer.store(ctFilePath);
+    }
+
+    // 从私钥文件加载私钥句柄。同一个用户解密多个密文时应复用同一个句柄，以复用D、Dj、Dj'的配对预计算
+    public ABESecretKey loadSecretKey(String skFilePath) {
+        return ABESecretKey.load(skFilePath, "FHCPABE", bp);
+    }
+
+    // 用户属性取自私钥携带的属性列表
+    public void decrypt(FHCPABEAccessTree messageAttributes, String skFilePath, String ctFilePath) throws Exception {
+        decrypt(messageAttributes, loadSecretKey(skFilePath), ctFilePath);
+    }
+
+    public void decrypt(FHCPABEAccessTree messageAttributes, ABESecretKey sk, String ctFilePath) throws Exception {
+        decrypt(messageAttributes, sk.attributeSet(), sk, ctFilePath);
     }
 
     public void decrypt(FHCPABEAccessTree messageAttributes, int[] userAttributes, String skFilePath, String ctFilePath) throws Exception {
-        Properties skProperties = PropertiesUtils.load(skFilePath);
-        Properties ctProperties = PropertiesUtils.load(ctFilePath);
-
-        // 解密需要准备好Di和Di'：这是与属性有关的解密项，是在密钥生成部分生成的内容。将其从密钥文件中恢复出来存储到secretKeyDi和secretKeyDiPrime中
-        HashMap<Integer, Element> secretKeyDj = new HashMap<>();
-        HashMap<Integer, Element> secretKeyDjPrime = new HashMap<>();
-        for (int j = 0; j < universe; j++) {
-            if (skProperties.containsKey("Dj"+j)) {
-                String DjStr = skProperties.getProperty("Dj"+j);
-                Element Dj = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DjStr)).getImmutable();
-                secretKeyDj.put(j, Dj);
-            }
-            if (skProperties.containsKey("DjPrime"+j)) {
-                String DjPrimeStr = skProperties.getProperty("DjPrime"+j);
-                Element DjPrime = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DjPrimeStr)).getImmutable();
-                secretKeyDjPrime.put(j, DjPrime);
-            }
-        }
+        decrypt(messageAttributes, userAttributes, loadSecretKey(skFilePath), ctFilePath);
+    }
 
-        // 解密还需要准备好Cxy和Cxy'：这是与叶子节点是有关的，是在加密部分生成的内容。将其从密文文件中恢复出来存储到leaveNodeCxy和leaveNodeCxyPrime中
-        HashMap<Integer, Element> leaveNodeCxy = new HashMap<>();
-        HashMap<Integer, Element> leaveNodeCxyPrime = new HashMap<>();
-        for (FHCPABEAccessTree.Node n : messageAttributes) {
-            if (n.isLeave()) {
-                int yCount = n.id;
-                String CxyStr = ctProperties.getProperty(("Cxy"+yCount));
-                Element Cxy = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(CxyStr)).getImmutable();
-                String CxyPrimeStr = ctProperties.getProperty("CxyPrime"+yCount);
-                Element CxyPrime = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(CxyPrimeStr)).getImmutable();
-                leaveNodeCxy.put(yCount, Cxy);
-                leaveNodeCxyPrime.put(yCount, CxyPrime);
-            }
-        }
+    public void decrypt(FHCPABEAccessTree messageAttributes, int[] userAttributes, ABESecretKey sk, String ctFilePath) throws Exception {
+        // 用户属性集合只构建一次，各个level node的解密共用
+        decrypt(messageAttributes, AttributeSet.of(userAttributes), sk, ctFilePath);
+    }
 
-        String DStr = skProperties.getProperty("D");
-        Element D = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DStr)).getImmutable();
+    // 各个level node的解密只取出选中叶子的Cxy、Cxy'和私钥中对应属性的Dj、Dj'，与属性宇宙的大小无关
+    private void decrypt(FHCPABEAccessTree messageAttributes, AttributeSet userAttributeSet, ABESecretKey sk, String ctFilePath) throws Exception {
+        // 密文元素在第一次取用时才解码，并在各个level node之间共用
+        ABECiphertext ct = ABECiphertext.load(ctFilePath, "FHCPABE", bp);
 
+        // 叶子的Cxy和Cxy'按叶子编号从密文中按需取出
+        IntFunction<Element> leaveNodeCxy = yCount -> ct.get("Cxy"+yCount);
+        IntFunction<Element> leaveNodeCxyPrime = yCount -> ct.get("CxyPrime"+yCount);
         for (FHCPABEAccessTree.Node n : messageAttributes) {
             if (n.isLevelNode()) {
-                Element Ai = messageAttributes.decryptNode(n, userAttributes, secretKeyDj, secretKeyDjPrime, leaveNodeCxy, leaveNodeCxyPrime, bp).getImmutable();
+                Element Ai = messageAttributes.decryptNode(n, userAttributeSet, sk, leaveNodeCxy, leaveNodeCxyPrime, bp).getImmutable();
 
                 if (Ai != null) {
-                    String CiPrimeStr = ctProperties.getProperty(("CiPrime"+n.levelId));
-                    Element CiPrime = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(CiPrimeStr)).getImmutable();
+                    Element CiPrime = ct.get("CiPrime"+n.levelId);
 
-                    String CiWaveStr = ctProperties.getProperty(("CiWave"+n.levelId));
-                    Element CiWave = bp.getGT().newElementFromBytes(ConversionUtils.String2Bytes(CiWaveStr)).getImmutable();
+                    Element CiWave = ct.get("CiWave"+n.levelId);
 
-                    Element Fi = bp.pairing(CiPrime, D).div(Ai).getImmutable();
+                    Element Fi = sk.pairing("D", CiPrime).div(Ai).getImmutable();
                     Element cki = CiWave.div(Fi);
 
                     SecretKey Kx = AESUtils.generateSecretKey(cki.toBytes());
@@ -219,8 +300,8 @@ public class FHCPABEDemo {
 
     public static void testCase1() throws Exception {
         //测试文件路径
-        String skFilePath = "src/FHCPABE/FHCPABEFile/test1/sk.properties";
-        String ctFilePath = "src/FHCPABE/FHCPABEFile/test1/ct.properties";
+        String skFilePath = "src/FHCPABE/FHCPABEFile/test1/sk.bin";
+        String ctFilePath = "src/FHCPABE/FHCPABEFile/test1/ct.bin";
         System.out.println("\n测试案例1：");
         // 初始化操作，设置属性上限为10
 
@@ -1,13 +1,18 @@
 package FIBE;
 
-import Utils.PropertiesUtils;
+import Utils.ABECiphertext;
+import Utils.ABESecretKey;
 import Utils.ConversionUtils;
+import Utils.ElementContainer;
+import Utils.LazyPowPreProcessing;
 import Utils.MathUtils;
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
 import it.unisa.dia.gas.jpbc.Pairing;
 import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
 
-import java.util.Properties;
+import java.util.Arrays;
+
 
 /**
  * FIBE (Fuzzy Identity Based Encryption) 演示类
@@ -27,11 +32,16 @@ public class FIBEa {
     private Element g; // G1群的生成元
 
     private Element[] msk_ti; // 主密钥ti: Zr群的密钥元素数组
+    private Element[] msk_tiInverse; // 主密钥ti的逆1/ti，在setUp中批量求逆得到，密钥生成时不再逐个做除法
     private Element msk_y; // 主密钥y: Zr群的密钥元素
 
     private Element[] pk_Ti; // 公钥Ti: G1群的公钥元素数组
     private Element pk_Y; // 公钥Y: GT群的公钥元素
 
+    // 以下底数的预计算表在第一次求幂时构建
+    private ElementPowPreProcessing gPre; // 公钥T_i = g^t_i，密钥生成的Di
+    private ElementPowPreProcessing pk_YPre; // 只用于加密的Y^s
+
     /**
      * 构造函数，用于初始化FIBEDemo类
      * @param u 属性宇宙的大小，u代表属性可以选取[1, 2, …… , u-1, u]
@@ -51,45 +61,133 @@ public class FIBEa {
     public void setUp(String pairingFilePath) {
         bp = PairingFactory.getPairing(pairingFilePath);
         g = bp.getG1().newRandomElement().getImmutable();
+        gPre = new LazyPowPreProcessing(g);
 
         // 为每个属性生成主密钥和公钥。注意msk_ti[0]与pk_ti[0]是没有任何意义的。
         for (int i = 1; i <= universe; i++) {
             msk_ti[i] = bp.getZr().newRandomElement().getImmutable(); // msk: t1 t2 …… tu <- Zr
-            pk_Ti[i] = g.powZn(msk_ti[i]).getImmutable(); // PK: g^t1, g^t2, ……, g^tu ∈ G1
+            pk_Ti[i] = gPre.powZn(msk_ti[i]).getImmutable(); // PK: g^t1, g^t2, ……, g^tu ∈ G1
         }
+        invertMasterKey();
         msk_y = bp.getZr().newRandomElement().getImmutable(); // msk: y <- Zr
         pk_Y = bp.pairing(g, g).powZn(msk_y).getImmutable(); // PK: Y = e(g, g)^y ∈ GT
+        pk_YPre = new LazyPowPreProcessing(pk_Y);
         System.out.println("已成功初始化，属性大小为 " + universe + "，容错距离为 " + distance);
     }
 
+    /**
+     * 保存公共参数(g, T1 …… Tu, Y)，加密方只需要这个文件；不含主密钥，可以公开
+     * @param publicParamsFilePath 公共参数文件路径
+     */
+    public void storePublicParameters(String publicParamsFilePath) {
+        ElementContainer params = new ElementContainer("FIBEa.pk", bp);
+        params.putInts("universe", new int[]{universe, distance});
+        params.putElement("g", g);
+        for (int i = 1; i <= universe; i++) {
+            params.putElement("T"+i, pk_Ti[i]);
+        }
+        params.putElement("Y", pk_Y);
+        params.store(publicParamsFilePath);
+    }
+
+    /**
+     * 保存主密钥(t1 …… tu, y)，只有生成密钥的一方需要，应妥善保管
+     * @param mskFilePath 主密钥文件路径
+     */
+    public void storeMasterKey(String mskFilePath) {
+        ElementContainer msk = new ElementContainer("FIBEa.msk", bp);
+        for (int i = 1; i <= universe; i++) {
+            msk.putElement("t"+i, msk_ti[i]);
+        }
+        msk.putElement("y", msk_y);
+        msk.store(mskFilePath);
+    }
+
+    /**
+     * 代替setUp：只恢复storePublicParameters保存的公共参数，不再为每个属性做一次G1求幂。恢复后可以加密、解密，不能生成密钥
+     * @param pairingFilePath 双线性对参数文件路径
+     * @param publicParamsFilePath storePublicParameters保存的公共参数文件路径
+     */
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath) {
+        bp = PairingFactory.getPairing(pairingFilePath);
+        ElementContainer params = ElementContainer.load(publicParamsFilePath, "FIBEa.pk", bp);
+        int[] sizes = params.getInts("universe");
+        if (sizes[0] != universe || sizes[1] != distance) {
+            throw new IllegalArgumentException("参数文件的属性大小为" + sizes[0] + "、容错距离为" + sizes[1] + "，与本方案不一致");
+        }
+        g = params.getElement("g");
+        gPre = new LazyPowPreProcessing(g);
+        for (int i = 1; i <= universe; i++) {
+            msk_ti[i] = null;
+            pk_Ti[i] = params.getElement("T"+i);
+        }
+        msk_tiInverse = null;
+        msk_y = null;
+        pk_Y = params.getElement("Y");
+        pk_YPre = new LazyPowPreProcessing(pk_Y);
+    }
+
+    /**
+     * 代替setUp：恢复公共参数和storeMasterKey保存的主密钥，恢复后可以生成密钥、加密和解密，与原来进程的密钥、密文互通
+     * @param pairingFilePath 双线性对参数文件路径
+     * @param publicParamsFilePath storePublicParameters保存的公共参数文件路径
+     * @param mskFilePath storeMasterKey保存的主密钥文件路径
+     */
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath, String mskFilePath) {
+        loadParameters(pairingFilePath, publicParamsFilePath);
+        ElementContainer msk = ElementContainer.load(mskFilePath, "FIBEa.msk", bp);
+        for (int i = 1; i <= universe; i++) {
+            msk_ti[i] = msk.getElement("t"+i);
+        }
+        invertMasterKey();
+        msk_y = msk.getElement("y");
+    }
+
+    // 所有ti只做一次求逆
+    private void invertMasterKey() {
+        msk_tiInverse = new Element[universe+1];
+        System.arraycopy(MathUtils.batchInvert(Arrays.copyOfRange(msk_ti, 1, universe+1)), 0, msk_tiInverse, 1, universe);
+    }
+
     /**
      * 密钥生成方法，根据用户的属性生成用户的密钥
      * @param userAttributes 用户的属性数组
      * @param skFilePath 密钥存储文件路径
      */
     public void keyGeneration(int[] userAttributes, String skFilePath) {
+        keyGeneration(userAttributes).store(skFilePath);
+    }
+
+    /**
+     * 密钥生成方法，直接返回内存中的私钥句柄，不写文件
+     * @param userAttributes 用户的属性数组
+     * @return 私钥句柄
+     */
+    public ABESecretKey keyGeneration(int[] userAttributes) {
+        if (msk_y == null) {
+            throw new IllegalStateException("只加载了公共参数，没有主密钥，不能生成密钥");
+        }
         // 校验用户属性的合法性
         checkAttributeSet(userAttributes);
 
         // 生成随机多项式q(x)用于加密计算。q(0)=y
         Element[] q = MathUtils.generateRandomPolynomial(distance, msk_y, bp);
 
-        // 存储用户私钥的属性文件
-        Properties skProperties = new Properties();
+        // 用户私钥
+        ABESecretKey sk = new ABESecretKey("FIBEa", bp);
 
         // 为用户的每个属性生成对应的私钥
         for (int i : userAttributes) {
-            Element ti = msk_ti[i]; // 获取属性对应的私钥ti
+            Element tiInverse = msk_tiInverse[i]; // 获取属性对应的私钥ti的逆
             Element qi = MathUtils.qx(q, bp.getZr().newElement(i)); // 计算q(i)
-            Element Di = g.powZn(qi.div(ti)).getImmutable(); // 计算Di = g^(q(i)/ti)
+            Element Di = gPre.powZn(qi.mul(tiInverse)).getImmutable(); // 计算Di = g^(q(i)/ti)
 
-            // 将私钥保存到属性文件中
-            skProperties.setProperty("Attribute" + i, ConversionUtils.bytes2String(Di.toBytes()));
+            // 将私钥保存到私钥句柄中
+            sk.put("Attribute" + i, Di);
         }
 
-        // 将私钥属性文件保存到指定路径
-        PropertiesUtils.store(skProperties, skFilePath);
         System.out.println("已为用户属性 【" + ConversionUtils.intArray2String(userAttributes) + "】 生成密钥");
+        return sk;
     }
 
 
@@ -100,31 +198,40 @@ public class FIBEa {
      * @param ctFilePath 加密文本存储文件路径
      */
     public void encrypt(int[] messageAttributes, Element message, String ctFilePath) {
+        encrypt(messageAttributes, message).store(ctFilePath);
+    }
+
+    /**
+     * 加密方法，直接返回内存中的密文对象，不写文件
+     * @param messageAttributes 加密消息的属性数组
+     * @param message 要加密的消息
+     * @return 密文对象
+     */
+    public ABECiphertext encrypt(int[] messageAttributes, Element message) {
         // 校验消息属性的合法性
         checkAttributeSet(messageAttributes);
 
-        // 存储密文的属性文件:ω' message attributes
-        Properties ctProperties = new Properties();
+        // 密文:ω' message attributes
+        ABECiphertext ct = new ABECiphertext("FIBEa", bp);
 
         // 保存加密消息的属性信息
-        ctProperties.setProperty("Message Attributes ω' ", ConversionUtils.intArray2String(messageAttributes));
+        ct.putInts("Message Attributes ω' ", messageAttributes);
 
         // 随机生成一个元素s用于加密
         Element s = bp.getZr().newRandomElement().getImmutable();
 
         // 计算加密后的密文组件 E' = M * Y^s
-        Element EPrime = message.mul(pk_Y.powZn(s)).getImmutable();
-        ctProperties.setProperty("E' ", ConversionUtils.bytes2String(EPrime.toBytes()));
+        Element EPrime = message.mul(pk_YPre.powZn(s)).getImmutable();
+        ct.put("E' ", EPrime);
 
         // 为每个消息属性计算对应的密文组件Ei
         for (int i : messageAttributes) {
             Element Ei = pk_Ti[i].powZn(s).getImmutable();
-            ctProperties.setProperty("E" + i, ConversionUtils.bytes2String(Ei.toBytes()));
+            ct.put("E" + i, Ei);
         }
 
-        // 将加密后的属性信息保存到文件中
-        PropertiesUtils.store(ctProperties, ctFilePath);
         System.out.println("已为消息属性 【" + ConversionUtils.intArray2String(messageAttributes) + "】 加密消息");
+        return ct;
     }
 
     /**
@@ -135,12 +242,40 @@ public class FIBEa {
      * @return 解密得到的消息
      */
     public Element decrypt(int[] userAttributes, String skFilePath, String ctFilePath) {
+        return decrypt(userAttributes, loadSecretKey(skFilePath), loadCiphertext(ctFilePath));
+    }
+
+    /**
+     * 从私钥文件加载私钥句柄
+     * @param skFilePath 用户密钥文件路径
+     * @return 私钥句柄
+     */
+    public ABESecretKey loadSecretKey(String skFilePath) {
+        return ABESecretKey.load(skFilePath, "FIBEa", bp);
+    }
+
+    /**
+     * 从密文文件加载密文对象
+     * @param ctFilePath 密文文件路径
+     * @return 密文对象
+     */
+    public ABECiphertext loadCiphertext(String ctFilePath) {
+        return ABECiphertext.load(ctFilePath, "FIBEa", bp);
+    }
+
+    /**
+     * 私钥和密文都已经在内存中，解密过程不打开任何文件
+     * @param userAttributes 用户的属性数组
+     * @param sk 私钥句柄
+     * @param ct 密文对象
+     * @return 解密得到的消息
+     */
+    public Element decrypt(int[] userAttributes, ABESecretKey sk, ABECiphertext ct) {
         // 校验用户属性的合法性
         checkAttributeSet(userAttributes);
 
-        // 加载密文属性
-        Properties ctProperties = PropertiesUtils.load(ctFilePath);
-        int[] messageAttributes = ConversionUtils.String2intArray(ctProperties.getProperty("Message Attributes ω' "));
+        // 密文属性
+        int[] messageAttributes = ct.getInts("Message Attributes ω' ");
 
         // 如果用户属性和消息属性的交集大小不够容错距离，则解密失败
         // // if |ω ∩ ω′| ≥ d, Choose an arbitrary d-element subset S ⊂ (ω ∩ ω′)
@@ -151,21 +286,19 @@ public class FIBEa {
         }
 
         // 解密步骤
-        Properties skProperties = PropertiesUtils.load(skFilePath);
-        String EPrimeStr = ctProperties.getProperty("E' ");
-        Element EPrime = bp.getGT().newElementFromBytes(ConversionUtils.String2Bytes(EPrimeStr)).getImmutable();
+        Element EPrime = ct.get("E' ");
 
         // 初始化分母元素为1
         Element denominator = bp.getGT().newOneElement().getImmutable();
 
-        // 计算Lagrange基并累乘相应的e(Di, Ei)^delta项
-        for (int i : S) {
-            String DiStr = skProperties.getProperty("Attribute" + i);
-            Element Di = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DiStr)).getImmutable();
-            String EiStr = ctProperties.getProperty("E" + i);
-            Element Ei = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(EiStr)).getImmutable();
+        // 计算Lagrange基并累乘相应的e(Di, Ei)^delta项。S的全部Lagrange基一次取得(带缓存)
+        Element[] deltas = MathUtils.lagrangeCoefficients(S, 0, bp);
+        for (int k = 0; k < S.length; k++) {
+            int i = S[k];
+            Element Di = sk.get("Attribute" + i);
+            Element Ei = ct.get("E" + i);
 
-            Element delta = MathUtils.computeLagrangeBasis(i, S, 0, bp);
+            Element delta = deltas[k];
             denominator = denominator.mul(bp.pairing(Di, Ei).powZn(delta)); // 计算分母项
         }
 
@@ -18,8 +18,8 @@ public class FIBEaTest {
      * 输入的用户属性为【1, 2, 3, 4】，密文属性为【2, 3, 4, 5】。
      */
     public static void testCase1() {
-        String skFilePath = "src/FIBE/FIBEFile/test1/sk.properties";
-        String ctFilePath = "src/FIBE/FIBEFile/test1/ct.properties";
+        String skFilePath = "src/FIBE/FIBEFile/test1/sk.bin";
+        String ctFilePath = "src/FIBE/FIBEFile/test1/ct.bin";
 
         System.out.println("\n测试案例1：");
         FIBEa fibeInstance = new FIBEa(10, 3); // 属性【1, 2, 3, 4, 5, 6, 7, 8, 9, 10】 容错距离：3
@@ -38,8 +38,8 @@ public class FIBEaTest {
      * 输入的用户属性为【0, 2, 4】，密文属性为【1, 2, 3】。
      */
     public static void testCase2() {
-        String skFilePath = "src/FIBE/FIBEFile/test2/sk.properties";
-        String ctFilePath = "src/FIBE/FIBEFile/test2/ct.properties";
+        String skFilePath = "src/FIBE/FIBEFile/test2/sk.bin";
+        String ctFilePath = "src/FIBE/FIBEFile/test2/ct.bin";
 
         System.out.println("\n测试案例2：");
         FIBEa fibeInstance = new FIBEa(5, 2);
@@ -59,8 +59,8 @@ public class FIBEaTest {
      * 输入的用户属性为【0, 5, 6, 10, 11, 15】, 密文属性为【0, 5, 6, 8, 11, 15, 16】。
      */
     public static void testCase3() {
-        String skFilePath = "src/FIBE/FIBEFile/test3/sk.properties";
-        String ctFilePath = "src/FIBE/FIBEFile/test3/ct.properties";
+        String skFilePath = "src/FIBE/FIBEFile/test3/sk.bin";
+        String ctFilePath = "src/FIBE/FIBEFile/test3/ct.bin";
 
         System.out.println("\n测试案例3：");
         FIBEa fibeInstance = new FIBEa(20, 5);
@@ -79,8 +79,8 @@ public class FIBEaTest {
      * 输入的用户属性为【1, 3, 6, 9】, 密文属性为【2, 4, 7, 10】。
      */
     public static void testCase4() {
-        String skFilePath = "src/FIBE/FIBEFile/test4/sk.properties";
-        String ctFilePath = "src/FIBE/FIBEFile/test4/ct.properties";
+        String skFilePath = "src/FIBE/FIBEFile/test4/sk.bin";
+        String ctFilePath = "src/FIBE/FIBEFile/test4/ct.bin";
 
         System.out.println("\n测试案例4：");
         FIBEa fibeInstance = new FIBEa(11, 3);
@@ -99,8 +99,8 @@ public class FIBEaTest {
      * 输入的用户属性为【0】, 密文属性为【0】。
      */
     public static void testCase5() {
-        String skFilePath = "src/FIBE/FIBEFile/test5/sk.properties";
-        String ctFilePath = "src/FIBE/FIBEFile/test5/ct.properties";
+        String skFilePath = "src/FIBE/FIBEFile/test5/sk.bin";
+        String ctFilePath = "src/FIBE/FIBEFile/test5/ct.bin";
 
         System.out.println("\n测试案例5：");
         FIBEa fibeInstance = new FIBEa(1, 1);
@@ -119,8 +119,8 @@ public class FIBEaTest {
      * 属性宇宙为【0, 1, ..., 10】, 容错距离为10，输入的用户属性为【0, 1, 2, ..., 9】。
      */
     public static void testCase6() {
-        String skFilePath = "src/FIBE/FIBEFile/test6/sk.properties";
-        String ctFilePath = "src/FIBE/FIBEFile/test6/ct.properties";
+        String skFilePath = "src/FIBE/FIBEFile/test6/sk.bin";
+        String ctFilePath = "src/FIBE/FIBEFile/test6/ct.bin";
 
         System.out.println("\n测试案例6：");
         FIBEa fibeInstance = new FIBEa(11, 10);
@@ -138,8 +138,8 @@ public class FIBEaTest {
      * 测试不同用户的属性宇宙没有交集的情况，验证密钥和密文的有效性。
      */
     public static void testCase7() {
-        String skFilePath = "src/FIBE/FIBEFile/test7/sk.properties";
-        String ctFilePath = "src/FIBE/FIBEFile/test7/ct.properties";
+        String skFilePath = "src/FIBE/FIBEFile/test7/sk.bin";
+        String ctFilePath = "src/FIBE/FIBEFile/test7/ct.bin";
 
         System.out.println("\n测试案例7：");
         FIBEa fibeInstance = new FIBEa(10, 3);
@@ -157,8 +157,8 @@ public class FIBEaTest {
      * 测试属性宇宙为空的特殊情况，验证算法如何处理这种情况。
      */
     public static void testCase8() {
-        String skFilePath = "src/FIBE/FIBEFile/test8/sk.properties";
-        String ctFilePath = "src/FIBE/FIBEFile/test8/ct.properties";
+        String skFilePath = "src/FIBE/FIBEFile/test8/sk.bin";
+        String ctFilePath = "src/FIBE/FIBEFile/test8/ct.bin";
 
         System.out.println("\n测试案例8：");
         FIBEa fibeInstance = new FIBEa(0, 0); // 属性宇宙大小为0
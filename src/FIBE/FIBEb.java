@@ -1,13 +1,17 @@
 package FIBE;
 
+import Utils.ABECiphertext;
+import Utils.ABESecretKey;
 import Utils.ConversionUtils;
+import Utils.ElementContainer;
+import Utils.LazyPowPreProcessing;
 import Utils.MathUtils;
-import Utils.PropertiesUtils;
+import Utils.TFunction;
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
 import it.unisa.dia.gas.jpbc.Pairing;
 import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
 
-import java.util.Properties;
 
 /**
  * FIBE (Fuzzy Identity Based Encryption) 演示类
@@ -29,6 +33,14 @@ public class FIBEb {
     private Element g2; // g2 ∈ G1
     private Element[] pk_Ti; // G1
 
+    // 以下底数的预计算表在第一次求幂时构建
+    private ElementPowPreProcessing gPre; // 密钥生成的di = g^ri，加密的E'' = g^s
+    private ElementPowPreProcessing g2Pre; // 密钥生成的g2^q(i)，以及T(x)中的g2^(x^n)
+    private ElementPowPreProcessing[] pk_TiPre; // 只在计算T(x)时使用
+    private Element eg1g2; // e(g1, g2) ∈ GT
+    private ElementPowPreProcessing eg1g2Pre; // 只用于加密的e(g1, g2)^s
+    private TFunction tFunction; // T(x)的求值：分母在setUp中预先求逆，T(x)按属性缓存
+
     public FIBEb(int n, int d) {
         this.n = n;
         this.d = d;
@@ -50,40 +62,126 @@ public class FIBEb {
         for (int i = 1; i < this.pk_Ti.length; i++) {
             pk_Ti[i] = bp.getG1().newRandomElement().getImmutable(); // pk: t_1 t_2 …… t_n, t_n+1 <- G1
         }
+        eg1g2 = bp.pairing(g1, g2).getImmutable(); // e(g1, g2)
+        initPreProcessing();
         System.out.println("已成功初始化，属性集合的大小上限为 " + this.n + "，容错距离为 " + this.d);
     }
 
+    /**
+     * 保存公共参数(g, g1, g2, t1 …… tn+1, e(g1, g2))，加密方只需要这个文件；不含主密钥，可以公开
+     * @param publicParamsFilePath 公共参数文件路径
+     */
+    public void storePublicParameters(String publicParamsFilePath) {
+        ElementContainer params = new ElementContainer("FIBEb.pk", bp);
+        params.putInts("n", new int[]{n, d});
+        params.putElement("g", g);
+        params.putElement("g1", g1);
+        params.putElement("g2", g2);
+        for (int i = 1; i < pk_Ti.length; i++) {
+            params.putElement("t"+i, pk_Ti[i]);
+        }
+        params.putElement("eg1g2", eg1g2);
+        params.store(publicParamsFilePath);
+    }
+
+    /**
+     * 保存主密钥y，只有生成密钥的一方需要，应妥善保管
+     * @param mskFilePath 主密钥文件路径
+     */
+    public void storeMasterKey(String mskFilePath) {
+        ElementContainer msk = new ElementContainer("FIBEb.msk", bp);
+        msk.putElement("y", y);
+        msk.store(mskFilePath);
+    }
+
+    /**
+     * 代替setUp：只恢复storePublicParameters保存的公共参数，不重新生成参数、不做求幂和配对。恢复后可以加密、解密，不能生成密钥
+     * @param pairingFilePath 双线性对参数文件路径
+     * @param publicParamsFilePath storePublicParameters保存的公共参数文件路径
+     */
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath) {
+        bp = PairingFactory.getPairing(pairingFilePath);
+        ElementContainer params = ElementContainer.load(publicParamsFilePath, "FIBEb.pk", bp);
+        int[] sizes = params.getInts("n");
+        if (sizes[0] != n || sizes[1] != d) {
+            throw new IllegalArgumentException("参数文件的属性集合大小上限为" + sizes[0] + "、容错距离为" + sizes[1] + "，与本方案不一致");
+        }
+        g = params.getElement("g");
+        y = null;
+        g1 = params.getElement("g1");
+        g2 = params.getElement("g2");
+        for (int i = 1; i < pk_Ti.length; i++) {
+            pk_Ti[i] = params.getElement("t"+i);
+        }
+        eg1g2 = params.getElement("eg1g2");
+        initPreProcessing();
+    }
+
+    /**
+     * 代替setUp：恢复公共参数和storeMasterKey保存的主密钥，恢复后可以生成密钥、加密和解密，与原来进程的密钥、密文互通
+     * @param pairingFilePath 双线性对参数文件路径
+     * @param publicParamsFilePath storePublicParameters保存的公共参数文件路径
+     * @param mskFilePath storeMasterKey保存的主密钥文件路径
+     */
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath, String mskFilePath) {
+        loadParameters(pairingFilePath, publicParamsFilePath);
+        ElementContainer msk = ElementContainer.load(mskFilePath, "FIBEb.msk", bp);
+        y = msk.getElement("y");
+    }
+
+    private void initPreProcessing() {
+        gPre = new LazyPowPreProcessing(g);
+        g2Pre = new LazyPowPreProcessing(g2);
+        pk_TiPre = new ElementPowPreProcessing[pk_Ti.length];
+        for (int i = 1; i < pk_Ti.length; i++) {
+            pk_TiPre[i] = new LazyPowPreProcessing(pk_Ti[i]);
+        }
+        eg1g2Pre = new LazyPowPreProcessing(eg1g2);
+        tFunction = new TFunction(n, g2Pre, pk_TiPre, bp);
+    }
+
     /**
      * 密钥生成方法，根据用户的属性生成用户的密钥
      * @param userAttributes 用户的属性数组
      * @param skFilePath 密钥存储文件路径
      */
     public void keyGeneration(int[] userAttributes, String skFilePath) {
+        keyGeneration(userAttributes).store(skFilePath);
+    }
+
+    /**
+     * 密钥生成方法，直接返回内存中的私钥句柄，不写文件
+     * @param userAttributes 用户的属性数组
+     * @return 私钥句柄
+     */
+    public ABESecretKey keyGeneration(int[] userAttributes) {
+        if (y == null) {
+            throw new IllegalStateException("只加载了公共参数，没有主密钥，不能生成密钥");
+        }
         // 校验用户属性的合法性
         checkAttributeSet(userAttributes);
 
         // 生成随机多项式q(x)用于加密计算。q(0)=y
         Element[] q = MathUtils.generateRandomPolynomial(d, y, bp);
 
-        // 存储用户私钥的属性文件
-        Properties skProperties = new Properties();
+        // 用户私钥
+        ABESecretKey sk = new ABESecretKey("FIBEb", bp);
 
         // 为用户的每个属性生成对应的私钥
         for (int i : userAttributes) {
             Element ri = bp.getZr().newRandomElement().getImmutable(); // 获取随机的ri
             Element qi = MathUtils.qx(q, bp.getZr().newElement(i)); // 计算q(i)
-            Element Di = (g2.powZn(qi)).mul(T(i).powZn(ri)).getImmutable(); // 计算Di = [g2^(q(i))] * [T(i)^ri]
-            Element di = g.powZn(ri); // di = g^(ri)
+            Element Di = (g2Pre.powZn(qi)).mul(tFunction.pow(i, ri)).getImmutable(); // 计算Di = [g2^(q(i))] * [T(i)^ri]
+            Element di = gPre.powZn(ri); // di = g^(ri)
 
 
-            // 将私钥保存到属性文件中
-            skProperties.setProperty("D" + i, ConversionUtils.bytes2String(Di.toBytes()));
-            skProperties.setProperty("d" + i, ConversionUtils.bytes2String(di.toBytes()));
+            // 将私钥保存到私钥句柄中
+            sk.put("D" + i, Di);
+            sk.put("d" + i, di);
         }
 
-        // 将私钥属性文件保存到指定路径
-        PropertiesUtils.store(skProperties, skFilePath);
         System.out.println("已为用户属性 【" + ConversionUtils.intArray2String(userAttributes) + "】 生成密钥");
+        return sk;
     }
 
     /**
@@ -93,36 +191,45 @@ public class FIBEb {
      * @param ctFilePath 加密文本存储文件路径
      */
     public void encrypt(int[] messageAttributes, Element message, String ctFilePath) {
+        encrypt(messageAttributes, message).store(ctFilePath);
+    }
+
+    /**
+     * 加密方法，直接返回内存中的密文对象，不写文件
+     * @param messageAttributes 加密消息的属性数组
+     * @param message 要加密的消息
+     * @return 密文对象
+     */
+    public ABECiphertext encrypt(int[] messageAttributes, Element message) {
         // 校验消息属性的合法性
         checkAttributeSet(messageAttributes);
 
-        // 存储密文的属性文件:ω' message attributes
-        Properties ctProperties = new Properties();
+        // 密文:ω' message attributes
+        ABECiphertext ct = new ABECiphertext("FIBEb", bp);
 
         // 保存加密消息的属性信息
-        ctProperties.setProperty("Message Attributes ω' ", ConversionUtils.intArray2String(messageAttributes));
+        ct.putInts("Message Attributes ω' ", messageAttributes);
 
         // 随机生成一个元素s用于加密
         Element s = bp.getZr().newRandomElement().getImmutable();
 
         // 计算加密后的密文组件 E' = M * e(g1, g2)^s
-        Element EPrime = message.mul(bp.pairing(g1, g2).powZn(s)).getImmutable();
-        ctProperties.setProperty("E' ", ConversionUtils.bytes2String(EPrime.toBytes()));
+        Element EPrime = message.mul(eg1g2Pre.powZn(s)).getImmutable();
+        ct.put("E' ", EPrime);
 
         // 计算加密后的密文组件 E'' = g^s
-        Element EPrimePrime = g.powZn(s).getImmutable();
-        ctProperties.setProperty("E'' ", ConversionUtils.bytes2String(EPrimePrime.toBytes()));
+        Element EPrimePrime = gPre.powZn(s).getImmutable();
+        ct.put("E'' ", EPrimePrime);
 
 
         // 为每个消息属性计算对应的密文组件Ei = T(i)^s
         for (int i : messageAttributes) {
-            Element Ei = T(i).powZn(s).getImmutable();
-            ctProperties.setProperty("E" + i, ConversionUtils.bytes2String(Ei.toBytes()));
+            Element Ei = tFunction.pow(i, s);
+            ct.put("E" + i, Ei);
         }
 
-        // 将加密后的属性信息保存到文件中
-        PropertiesUtils.store(ctProperties, ctFilePath);
         System.out.println("已为消息属性 【" + ConversionUtils.intArray2String(messageAttributes) + "】 加密消息");
+        return ct;
     }
 
     /**
@@ -133,12 +240,40 @@ public class FIBEb {
      * @return 解密得到的消息
      */
     public Element decrypt(int[] userAttributes, String skFilePath, String ctFilePath) {
+        return decrypt(userAttributes, loadSecretKey(skFilePath), loadCiphertext(ctFilePath));
+    }
+
+    /**
+     * 从私钥文件加载私钥句柄
+     * @param skFilePath 用户密钥文件路径
+     * @return 私钥句柄
+     */
+    public ABESecretKey loadSecretKey(String skFilePath) {
+        return ABESecretKey.load(skFilePath, "FIBEb", bp);
+    }
+
+    /**
+     * 从密文文件加载密文对象
+     * @param ctFilePath 密文文件路径
+     * @return 密文对象
+     */
+    public ABECiphertext loadCiphertext(String ctFilePath) {
+        return ABECiphertext.load(ctFilePath, "FIBEb", bp);
+    }
+
+    /**
+     * 私钥和密文都已经在内存中，解密过程不打开任何文件
+     * @param userAttributes 用户的属性数组
+     * @param sk 私钥句柄
+     * @param ct 密文对象
+     * @return 解密得到的消息
+     */
+    public Element decrypt(int[] userAttributes, ABESecretKey sk, ABECiphertext ct) {
         // 校验用户属性的合法性
         checkAttributeSet(userAttributes);
 
-        // 加载密文属性
-        Properties ctProperties = PropertiesUtils.load(ctFilePath);
-        int[] messageAttributes = ConversionUtils.String2intArray(ctProperties.getProperty("Message Attributes ω' "));
+        // 密文属性
+        int[] messageAttributes = ct.getInts("Message Attributes ω' ");
 
         // 如果用户属性和消息属性的交集大小不够容错距离，则解密失败
         // // if |ω ∩ ω′| ≥ d, Choose an arbitrary d-element subset S ⊂ (ω ∩ ω′)
@@ -149,27 +284,22 @@ public class FIBEb {
         }
 
         // 解密步骤
-        Properties skProperties = PropertiesUtils.load(skFilePath);
-
-        String EPrimeStr = ctProperties.getProperty("E' ");
-        Element EPrime = bp.getGT().newElementFromBytes(ConversionUtils.String2Bytes(EPrimeStr)).getImmutable();
+        Element EPrime = ct.get("E' ");
 
-        String EPrimePrimeStr = ctProperties.getProperty("E'' ");
-        Element EPrimePrime = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(EPrimePrimeStr)).getImmutable();
+        Element EPrimePrime = ct.get("E'' ");
 
         // 初始化分母元素为1
         Element denominator = bp.getGT().newOneElement().getImmutable();
 
-        // 计算Lagrange基并累乘相应的e(Di, Ei)^delta项
-        for (int i : S) {
-            String DiStr = skProperties.getProperty("D" + i);
-            Element Di = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DiStr)).getImmutable();
-            String diStr = skProperties.getProperty("d" + i);
-            Element di = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(diStr)).getImmutable();
-            String EiStr = ctProperties.getProperty("E" + i);
-            Element Ei = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(EiStr)).getImmutable();
+        // 计算Lagrange基并累乘相应的e(Di, Ei)^delta项。S的全部Lagrange基一次取得(带缓存)
+        Element[] deltas = MathUtils.lagrangeCoefficients(S, 0, bp);
+        for (int k = 0; k < S.length; k++) {
+            int i = S[k];
+            Element Di = sk.get("D" + i);
+            Element di = sk.get("d" + i);
+            Element Ei = ct.get("E" + i);
 
-            Element delta = MathUtils.computeLagrangeBasis(i, S, 0, bp);
+            Element delta = deltas[k];
             denominator = denominator.mul((bp.pairing(di, Ei).div(bp.pairing(Di, EPrimePrime))).powZn(delta)); // 计算分母项
         }
 
@@ -179,23 +309,6 @@ public class FIBEb {
         return decryptedMessage;
     }
 
-    private Element T(int x) {
-        Element xElement = bp.getZr().newElement(x).getImmutable();
-        Element xn = xElement.powZn(bp.getZr().newElement(n)).getImmutable();
-        Element result = this.g2.powZn(xn).getImmutable(); // g2^(x^n)
-
-        int[] N = new int[n+1];
-        for (int i = 0; i < N.length; i++) {
-            N[i] = i+1;
-        }
-        for (int i = 1; i <= n+1; i++) {
-            Element ti = pk_Ti[i].duplicate().getImmutable();
-            Element delta = MathUtils.computeLagrangeBasis(i, N, x, bp);
-            result = result.mul(ti.powZn(delta));
-        }
-
-        return result;
-    }
 
     /**
      * 生成随机的明文，供后续的测试和验证使用。
@@ -18,8 +18,8 @@ public class FIBEbTest {
      * 输入的用户属性为【1, 2, 3, 4】，密文属性为【2, 3, 4, 5】。
      */
     public static void testCase1() {
-        String skFilePath = "src/FIBE/FIBEbFile/test1/sk.properties";
-        String ctFilePath = "src/FIBE/FIBEbFile/test1/ct.properties";
+        String skFilePath = "src/FIBE/FIBEbFile/test1/sk.bin";
+        String ctFilePath = "src/FIBE/FIBEbFile/test1/ct.bin";
 
         System.out.println("\n测试案例1：");
         // 属性集合长度不超过10即可，可以超出【0, 1, 2, 3, 4, 5, 6, 7, 8, 9】的范围达到大宇宙。 容错距离：3
@@ -40,8 +40,8 @@ public class FIBEbTest {
      * 输入的用户属性为【0, 2, 4】，密文属性为【1, 2, 3】。
      */
     public static void testCase2() {
-        String skFilePath = "src/FIBE/FIBEFile/test2/sk.properties";
-        String ctFilePath = "src/FIBE/FIBEFile/test2/ct.properties";
+        String skFilePath = "src/FIBE/FIBEFile/test2/sk.bin";
+        String ctFilePath = "src/FIBE/FIBEFile/test2/ct.bin";
 
         System.out.println("\n测试案例2：");
         FIBEa fibeInstance = new FIBEa(5, 2);
@@ -41,8 +41,7 @@ public class IBEDemo {
      * @param skFilePath 私钥文件路径
      */
     public void keyGeneration(String id, String skFilePath) {
-        Element Qid = MathUtils.H1(id, pairing); // 计算Qid = H1(id)
-        Element sk = Qid.powZn(msk_x); // 计算用户私钥 sk = Qid^x
+        Element sk = MathUtils.H1Pow(id, msk_x, pairing); // 计算用户私钥 sk = Qid^x，Qid = H1(id)
 
         Properties skProperties = new Properties(); // 创建私钥属性
         skProperties.setProperty("sk", Base64.getEncoder().encodeToString(sk.toBytes())); // 编码私钥
@@ -1,16 +1,21 @@
 package KPABE;
 
+import Utils.ABESecretKey;
+import Utils.AttributeSet;
+import Utils.CompiledAccessTree;
 import Utils.MathUtils;
+import Utils.PairingUtils;
 import it.unisa.dia.gas.jpbc.Element;
 import it.unisa.dia.gas.jpbc.Pairing;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
 
 public class AccessTreeKPABE implements Iterable<AccessTreeKPABE.Node> {
 
     public static class Node {
 
-        public Element[] polynomial; // 每个节点被赋予一个多项式。多项式的常数项系数=多项式在x=0处的取值=该节点的秘密值
         public int threshold; // 非叶子节点具有门限阈值；叶子节点的门限阈值置为-1
         public int attribute; // 叶子节点具有属性值；非叶子节点的属性值置为-1
         public List<Node> children; // 非叶子节点具有子节点，以列表维护。注意论文当中的index(child)代表child在children当中的下标+1
@@ -18,14 +23,12 @@ public class AccessTreeKPABE implements Iterable<AccessTreeKPABE.Node> {
 
         // 对于叶子节点进行初始化操作：提供叶子节点所对应的属性
         public Node(int attribute) {
-            this.polynomial = new Element[1];
             this.threshold = -1;
             this.attribute = attribute;
         }
 
         // 对于非叶子节点进行初始化操作：提供非叶子节点对应的阈值和子节点；也可以通过后续addChild和addChildren操作添加非叶子节点的子节点
         public Node(int threshold, List<Node> children) {
-            this.polynomial = new Element[threshold];
             this.threshold = threshold;
             this.attribute = -1;
             this.children = (children != null) ? children : new ArrayList<>();
@@ -43,6 +46,7 @@ public class AccessTreeKPABE implements Iterable<AccessTreeKPABE.Node> {
          */
         public void addChild(Node child) {
             this.children.add(child);
+            CompiledAccessTree.treeModified();
         }
 
         /**
@@ -51,6 +55,7 @@ public class AccessTreeKPABE implements Iterable<AccessTreeKPABE.Node> {
         public void addChildren(Node... newChildren) {
             if (newChildren != null && newChildren.length > 0) {
                 this.children.addAll(Arrays.asList(newChildren));
+                CompiledAccessTree.treeModified();
             }
         }
 
@@ -59,139 +64,79 @@ public class AccessTreeKPABE implements Iterable<AccessTreeKPABE.Node> {
 
     // accessTree：包装好根节点
     private Node root;
+    // 编译后的扁平化表示，见compiled()
+    private final CompiledAccessTree.Cache<Node> compiled = new CompiledAccessTree.Cache<>(n -> n.children, n -> n.threshold, n -> n.attribute);
+    private ForkJoinPool decryptionPool; // 解密时并行计算选中子树所用的线程池，为null时顺序计算
 
     public AccessTreeKPABE(Node root) {
         this.root = root;
     }
 
-    // 密钥分发阶段，自顶向下配置各节点的秘密值和多项式，注意需要提供根节点的秘密值
-    public void generatePolySecret(Pairing bp, Element rootSecret) {
-        // 设置根节点的秘密：秘密值 = 根节点多项式的常数项系数 = 根节点多项式在x=0处的取值
-        this.root.polynomial[0] = rootSecret;
-        generatePolySecretHelper(this.root, bp);
+    // 返回编译后的访问控制树(扁平化的数组表示)，加密、解密都在它上面遍历。
+    // root被替换或通过addChild/addChildren修改过时会自动重新编译(直接修改Node的字段后需调用CompiledAccessTree.treeModified)；修改树的结构后仍需重新调用generateLeafID为节点编号
+    public CompiledAccessTree<Node> compiled() {
+        return compiled.get(root);
     }
 
-    public Element decryptNodeA(int[] messageAttributes, Map<Integer, Element> Dx, Map<Integer, Element> Ei, Pairing bp) {
-        return decryptNodeCommonUniverseHelper(root, messageAttributes, Dx, Ei, bp);
+    // 设置解密时并行计算兄弟子树(及其叶子的配对)所用的线程池，为null时在调用线程中顺序计算(默认)
+    public void setDecryptionPool(ForkJoinPool pool) {
+        this.decryptionPool = pool;
     }
 
-    public Element decryptNodeB(int[] messageAttributes, Map<Integer, Element> Dx, Map<Integer, Element> Rx,Map<Integer, Element> Ei, Element EPrimePrime, Pairing bp) {
-        return decryptNodeLargeUniverseHelper(root, messageAttributes, Dx, Rx, Ei, EPrimePrime, bp);
+    // 自顶向下分发秘密，注意需要提供根节点的秘密值。返回按compiled()编号索引的各节点秘密值(多项式在x=0处的取值)。
+    // 秘密值只属于本次调用，树本身不被修改，因此同一棵树可以同时用于多次密钥生成
+    public Element[] generatePolySecret(Pairing bp, Element rootSecret) {
+        return compiled().shareSecret(rootSecret, null, bp);
     }
 
-    // 密钥分发阶段，自顶向下配置各节点的秘密值和多项式。每次操作都是设置当前节点的叶子节点，注意根节点一开始就要提供
-    private void generatePolySecretHelper(Node n, Pairing bp) {
-        // 如果当前节点是叶子节点，直接返回不进行操作(每次操作都是设置当前节点的子节点，叶子节点没有子节点)
-        if (n.isLeave()) return;
-
-        // 如果当前节点不是叶子节点，首先给当前节点设置好多项式q(x)(注意多项式的常量是秘密值)
-        n.polynomial = MathUtils.generateRandomPolynomial(n.threshold, n.polynomial[0], bp);
-
-        // 然后对于当前节点的每一个叶子节点child，计算q(index(child))的多项式值作为child的秘密值
-        for (int i = 0; i < n.children.size(); i++) {
-            Node childNode = n.children.get(i);
-            // 这里index(child)就是child在children数组的下标+1
-            childNode.polynomial[0] = MathUtils.qx(n.polynomial, bp.getZr().newElement(i+1));
-            // 继续递归生成秘密
-            generatePolySecretHelper(childNode, bp);
-        }
+    // 私钥元素(KPABEa的D、KPABEb的Dx和Rx，按叶子节点编号命名)来自私钥句柄sk。
+    // KPABEa的叶子只有一次配对，复用sk中缓存的配对预计算；KPABEb的叶子有两次配对，合并成一次乘积配对(PairingUtils.pairingQuotient)
+    // 两阶段解密：先由plan选出叶子数最少的满足子树，再只对选中的叶子计算配对。不满足访问控制树时返回null
+    public Element decryptNodeA(int[] messageAttributes, ABESecretKey sk, Map<Integer, Element> Ei, Pairing bp) {
+        return decryptNodeA(AttributeSet.of(messageAttributes), sk, Ei, bp);
     }
 
+    public Element decryptNodeA(AttributeSet messageAttributes, ABESecretKey sk, Map<Integer, Element> Ei, Pairing bp) {
+        return decryptNodeA(messageAttributes, sk, (IntFunction<Element>) Ei::get, bp);
+    }
 
-    private Element decryptNodeCommonUniverseHelper(Node n, int[] messageAttributes, Map<Integer, Element> Di, Map<Integer, Element> Ei, Pairing bp) {
-        // 如果n是叶子节点
-        if (n.isLeave()) {
-            // 检测n的属性是否在messageAttributes当中被包含
-            for (int m : messageAttributes) {
-                if (n.attribute == m) {
-                    //如果被包含，返回e(Di, Ei)
-                    return bp.pairing(Di.get(n.leafID), Ei.get(n.attribute));
-                }
-            }
+    // 与上面的方法相同，属性i对应的Ei按需获取，只有选中叶子的属性才会被取出
+    public Element decryptNodeA(AttributeSet messageAttributes, ABESecretKey sk, IntFunction<Element> Ei, Pairing bp) {
+        CompiledAccessTree<Node> c = compiled();
+        int[][] plan = plan(messageAttributes);
+        if (plan == null) {
             return null;
         }
+        // 规划阶段已经确认选中叶子的属性被消息属性包含，叶子的值为e(Di, Ei)
+        return c.reconstruct(0, plan, i -> sk.pairing("D" + c.node(i).leafID, Ei.apply(c.attribute(i))), bp, decryptionPool);
+    }
 
-        // 如果n是非叶子节点，维护返回true的index-Node和index-SecretValue。index-SecretValue是论文当中的Fz
-        HashMap<Integer, Node> index2ValidChildren = new HashMap<>(); // 记录返回true的index和Node
-        HashMap<Integer, Element> index2SecretValue = new HashMap<>(); // 记录返回true的index和secret
-
-        for (int i = 0; i < n.children.size(); i++){
-            Node childNode = n.children.get(i);
-            // 递归调用，恢复子节点的秘密值
-            Element childSecret = decryptNodeCommonUniverseHelper(childNode, messageAttributes, Di, Ei, bp);
-            if (childSecret != null){
-                // 注意子节点child的index(child)就是child节点在n.children中的下标+1
-                index2ValidChildren.put(i+1, childNode);
-                index2SecretValue.put(i+1, childSecret);
-                // 如果满足条件的子节点个数已经达到门限值，则跳出循环，不再计算剩余的节点。此时index2ValidChildren构成了论文中的S
-                if (index2ValidChildren.size() == n.threshold) {
-                    break;
-                }
-            }
-        }
-
-        // 如果非叶子节点n的返回true的子节点个数满足n的阈值，则可以恢复n的秘密
-        if (index2ValidChildren.size() == n.threshold) {
-            Element result = bp.getGT().newOneElement().getImmutable();
-            // 对于非叶子节点n的返回true的子节点构成的大小为threshold的集合S，遍历S
-            for (int i : index2ValidChildren.keySet()) {
-                Element delta = MathUtils.computeLagrangeBasis(i, index2ValidChildren.keySet().stream().mapToInt(Integer::intValue).toArray(), 0, bp);  //计算拉个朗日插值因子
-                // result = ∏ Fz^delta
-                result = result.mul(index2SecretValue.get(i).duplicate().powZn(delta)).getImmutable();
-            }
-            return result;
-        }
+    public Element decryptNodeB(int[] messageAttributes, ABESecretKey sk, Map<Integer, Element> Ei, Element EPrimePrime, Pairing bp) {
+        return decryptNodeB(AttributeSet.of(messageAttributes), sk, Ei, EPrimePrime, bp);
+    }
 
-        return null;
+    public Element decryptNodeB(AttributeSet messageAttributes, ABESecretKey sk, Map<Integer, Element> Ei, Element EPrimePrime, Pairing bp) {
+        return decryptNodeB(messageAttributes, sk, (IntFunction<Element>) Ei::get, EPrimePrime, bp);
     }
 
-    private Element decryptNodeLargeUniverseHelper(Node n, int[] messageAttributes, Map<Integer, Element> Dx, Map<Integer, Element> Rx, Map<Integer, Element> Ei, Element EPrimePrime, Pairing bp) {
-        // 如果n是叶子节点
-        if (n.isLeave()) {
-            // 检测n的属性是否在messageAttributes当中被包含
-            for (int m : messageAttributes) {
-                if (n.attribute == m) {
-                    //如果被包含，返回e(Dx, E'')/e(Rx, Ei)
-                    Element DzEpp = bp.pairing(Dx.get(n.leafID), EPrimePrime).getImmutable();
-                    Element RxEi = bp.pairing(Rx.get(n.leafID), Ei.get(n.attribute)).getImmutable();
-                    return (DzEpp).div(RxEi).getImmutable();
-                }
-            }
+    // 与上面的方法相同，属性i对应的Ei按需获取，只有选中叶子的属性才会被取出
+    public Element decryptNodeB(AttributeSet messageAttributes, ABESecretKey sk, IntFunction<Element> Ei, Element EPrimePrime, Pairing bp) {
+        CompiledAccessTree<Node> c = compiled();
+        int[][] plan = plan(messageAttributes);
+        if (plan == null) {
             return null;
         }
+        // 规划阶段已经确认选中叶子的属性被消息属性包含，叶子的值为e(Dx, E'')/e(Rx, Ei)
+        return c.reconstruct(0, plan, i -> {
+            int leafID = c.node(i).leafID;
+            return PairingUtils.pairingQuotient(bp, sk.get("Dx" + leafID), EPrimePrime, sk.get("Rx" + leafID), Ei.apply(c.attribute(i)));
+        }, bp, decryptionPool);
+    }
 
-        // 如果n是非叶子节点，维护返回true的index-Node和index-SecretValue。index-SecretValue是论文当中的Fz
-        HashMap<Integer, Node> index2ValidChildren = new HashMap<>(); // 记录返回true的index和Node
-        HashMap<Integer, Element> index2SecretValue = new HashMap<>(); // 记录返回true的index和secret
-
-        for (int i = 0; i < n.children.size(); i++){
-            Node childNode = n.children.get(i);
-            // 递归调用，恢复子节点的秘密值
-            Element childSecret = decryptNodeLargeUniverseHelper(childNode, messageAttributes, Dx, Rx, Ei, EPrimePrime, bp);
-            if (childSecret != null){
-                // 注意子节点child的index(child)就是child节点在n.children中的下标+1
-                index2ValidChildren.put(i+1, childNode);
-                index2SecretValue.put(i+1, childSecret);
-                // 如果满足条件的子节点个数已经达到门限值，则跳出循环，不再计算剩余的节点。此时index2ValidChildren构成了论文中的S
-                if (index2ValidChildren.size() == n.threshold) {
-                    break;
-                }
-            }
-        }
-
-        // 如果非叶子节点n的返回true的子节点个数满足n的阈值，则可以恢复n的秘密
-        if (index2ValidChildren.size() == n.threshold) {
-            Element result = bp.getGT().newOneElement().getImmutable();
-            // 对于非叶子节点n的返回true的子节点构成的大小为threshold的集合S，遍历S
-            for (int i : index2ValidChildren.keySet()) {
-                Element delta = MathUtils.computeLagrangeBasis(i, index2ValidChildren.keySet().stream().mapToInt(Integer::intValue).toArray(), 0, bp);  //计算拉个朗日插值因子
-                // result = ∏ Fz^delta
-                result = result.mul(index2SecretValue.get(i).duplicate().powZn(delta)).getImmutable();
-            }
-            return result;
-        }
-
-        return null;
+    // 解密的规划阶段：不做配对，只根据消息属性在每个门限节点选出叶子数最少的满足子节点
+    private int[][] plan(AttributeSet messageAttributes) {
+        CompiledAccessTree<Node> c = compiled();
+        return c.plan(0, i -> messageAttributes.contains(c.attribute(i)));
     }
 
 
@@ -199,52 +144,20 @@ public class AccessTreeKPABE implements Iterable<AccessTreeKPABE.Node> {
      * 生成叶子节点的编号序列。
      */
     public void generateLeafID() {
-        int sequenceNumber = 1;
-        for (AccessTreeKPABE.Node n : this) {
-            if (n.isLeave()) {
-                n.leafID = sequenceNumber;
-                sequenceNumber += 1;
-            }
+        CompiledAccessTree<Node> c = compiled();
+        for (int k = 0; k < c.leafCount(); k++) {
+            int i = c.leaf(k);
+            c.node(i).leafID = c.sequence(i);
         }
     }
 
-    // accessTree的层序遍历迭代器
+    // accessTree的层序遍历迭代器，直接遍历编译后的节点数组
     @Override
     public Iterator<Node> iterator() {
-        return new Iterator<>() {
-            private ArrayDeque<Node> queue = new ArrayDeque<>();
-
-            {
-                // 将根节点加入队列
-                if (root != null) {
-                    queue.addLast(root);
-                }
-            }
-
-            @Override
-            public boolean hasNext() {
-                return !queue.isEmpty();
-            }
-
-            @Override
-            public Node next() {
-                if (!hasNext()) {
-                    throw new NoSuchElementException();
-                }
-                // 获取并移除队列头部的节点
-                Node current = queue.removeFirst();
-                // 将当前节点的子节点按顺序加入队列
-                if (current.children != null) {
-                    queue.addAll(current.children);
-                }
-                return current;
-            }
-        };
+        return compiled().iterator();
     }
 
 
-
-
     public static AccessTreeKPABE getInstance1() {
         Node[] nodes = new Node[7];
         nodes[0] = new Node(2,null);
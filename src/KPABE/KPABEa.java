@@ -1,14 +1,19 @@
 package KPABE;
 
+import Utils.ABECiphertext;
+import Utils.ABESecretKey;
+import Utils.AttributeSet;
+import Utils.CompiledAccessTree;
 import Utils.ConversionUtils;
+import Utils.ElementContainer;
+import Utils.LazyPowPreProcessing;
 import Utils.MathUtils;
-import Utils.PropertiesUtils;
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
 import it.unisa.dia.gas.jpbc.Pairing;
 import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
 
-import java.util.HashMap;
-import java.util.Properties;
+import java.util.Arrays;
 
 /**
  * KPABE (Key-Policy Attribute Based Encryption) 演示类
@@ -26,11 +31,16 @@ public class KPABEa {
     private Element g; // G1群的生成元
 
     private Element[] msk_ti; // 主密钥ti: Zr群的密钥元素数组
+    private Element[] msk_tiInverse; // 主密钥ti的逆1/ti，在setUp中批量求逆得到，密钥生成时不再逐个做除法
     private Element msk_y; // 主密钥y: Zr群的密钥元素
 
     private Element[] pk_Ti; // 公钥Ti: G1群的公钥元素数组
     private Element pk_Y; // 公钥Y: GT群的公钥元素
 
+    // 以下底数的预计算表在第一次求幂时构建
+    private ElementPowPreProcessing gPre; // 公钥T_i = g^t_i，密钥生成中叶子节点的D
+    private ElementPowPreProcessing pk_YPre; // 只用于加密的Y^s
+
     public KPABEa(int u) {
         this.universe = u;
         this.msk_ti = new Element[u+1];
@@ -45,17 +55,93 @@ public class KPABEa {
     public void setUp(String pairingFilePath) {
         bp = PairingFactory.getPairing(pairingFilePath);
         g = bp.getG1().newRandomElement().getImmutable();
+        gPre = new LazyPowPreProcessing(g);
 
         // 为每个属性生成主密钥和公钥。注意msk_ti[0]与pk_ti[0]是没有任何意义的。
         for (int i = 1; i <= universe; i++) {
             msk_ti[i] = bp.getZr().newRandomElement().getImmutable(); // msk: t1 t2 …… tu <- Zr
-            pk_Ti[i] = g.powZn(msk_ti[i]).getImmutable(); // PK: g^t1, g^t2, ……, g^tu ∈ G1
+            pk_Ti[i] = gPre.powZn(msk_ti[i]).getImmutable(); // PK: g^t1, g^t2, ……, g^tu ∈ G1
         }
+        invertMasterKey();
         msk_y = bp.getZr().newRandomElement().getImmutable(); // msk: y <- Zr
         pk_Y = bp.pairing(g, g).powZn(msk_y).getImmutable(); // PK: Y = e(g, g)^y ∈ GT
+        pk_YPre = new LazyPowPreProcessing(pk_Y);
         System.out.println("已成功初始化，属性大小为 " + universe);
     }
 
+    /**
+     * 保存公共参数(g, T1 …… Tu, Y)，加密方只需要这个文件；不含主密钥，可以公开
+     * @param publicParamsFilePath 公共参数文件路径
+     */
+    public void storePublicParameters(String publicParamsFilePath) {
+        ElementContainer params = new ElementContainer("KPABEa.pk", bp);
+        params.putInts("universe", new int[]{universe});
+        params.putElement("g", g);
+        for (int i = 1; i <= universe; i++) {
+            params.putElement("T"+i, pk_Ti[i]);
+        }
+        params.putElement("Y", pk_Y);
+        params.store(publicParamsFilePath);
+    }
+
+    /**
+     * 保存主密钥(t1 …… tu, y)，只有生成密钥的一方需要，应妥善保管
+     * @param mskFilePath 主密钥文件路径
+     */
+    public void storeMasterKey(String mskFilePath) {
+        ElementContainer msk = new ElementContainer("KPABEa.msk", bp);
+        for (int i = 1; i <= universe; i++) {
+            msk.putElement("t"+i, msk_ti[i]);
+        }
+        msk.putElement("y", msk_y);
+        msk.store(mskFilePath);
+    }
+
+    /**
+     * 代替setUp：只恢复storePublicParameters保存的公共参数，不再为每个属性做一次G1求幂。恢复后可以加密、解密，不能生成密钥
+     * @param pairingFilePath 双线性对参数文件路径
+     * @param publicParamsFilePath storePublicParameters保存的公共参数文件路径
+     */
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath) {
+        bp = PairingFactory.getPairing(pairingFilePath);
+        ElementContainer params = ElementContainer.load(publicParamsFilePath, "KPABEa.pk", bp);
+        if (params.getInts("universe")[0] != universe) {
+            throw new IllegalArgumentException("参数文件的属性上限为" + params.getInts("universe")[0] + "，而不是" + universe);
+        }
+        g = params.getElement("g");
+        gPre = new LazyPowPreProcessing(g);
+        for (int i = 1; i <= universe; i++) {
+            msk_ti[i] = null;
+            pk_Ti[i] = params.getElement("T"+i);
+        }
+        msk_tiInverse = null;
+        msk_y = null;
+        pk_Y = params.getElement("Y");
+        pk_YPre = new LazyPowPreProcessing(pk_Y);
+    }
+
+    /**
+     * 代替setUp：恢复公共参数和storeMasterKey保存的主密钥，恢复后可以生成密钥、加密和解密，与原来进程的密钥、密文互通
+     * @param pairingFilePath 双线性对参数文件路径
+     * @param publicParamsFilePath storePublicParameters保存的公共参数文件路径
+     * @param mskFilePath storeMasterKey保存的主密钥文件路径
+     */
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath, String mskFilePath) {
+        loadParameters(pairingFilePath, publicParamsFilePath);
+        ElementContainer msk = ElementContainer.load(mskFilePath, "KPABEa.msk", bp);
+        for (int i = 1; i <= universe; i++) {
+            msk_ti[i] = msk.getElement("t"+i);
+        }
+        invertMasterKey();
+        msk_y = msk.getElement("y");
+    }
+
+    // 所有ti只做一次求逆
+    private void invertMasterKey() {
+        msk_tiInverse = new Element[universe+1];
+        System.arraycopy(MathUtils.batchInvert(Arrays.copyOfRange(msk_ti, 1, universe+1)), 0, msk_tiInverse, 1, universe);
+    }
+
     /**
      * 加密方法，根据一组属性加密消息
      * @param messageAttributes 加密消息的属性数组
@@ -63,22 +149,32 @@ public class KPABEa {
      * @param ctFilePath 加密文本存储文件路径
      */
     public void encrypt(int[] messageAttributes, Element message, String ctFilePath) {
+        encrypt(messageAttributes, message).store(ctFilePath);
+    }
+
+    /**
+     * 加密方法，直接返回内存中的密文对象，不写文件
+     * @param messageAttributes 加密消息的属性数组
+     * @param message 要加密的消息
+     * @return 密文对象
+     */
+    public ABECiphertext encrypt(int[] messageAttributes, Element message) {
         checkAttributeSet(messageAttributes);
 
-        Properties ctProperties = new Properties();
-        ctProperties.setProperty("Message Attributes w' ", ConversionUtils.intArray2String(messageAttributes));
+        ABECiphertext ct = new ABECiphertext("KPABEa", bp);
+        ct.putInts("Message Attributes w' ", messageAttributes);
 
         Element s = bp.getZr().newRandomElement().getImmutable();
         // 生成密文E‘ = M * Y^s
-        Element EPrime = message.mul(pk_Y.powZn(s)).getImmutable();
-        ctProperties.setProperty("E' ", ConversionUtils.bytes2String(EPrime.toBytes()));
+        Element EPrime = message.mul(pk_YPre.powZn(s)).getImmutable();
+        ct.put("E' ", EPrime);
         // 生成密文Ei: i∈ω, Ei = Ti^s
         for (int i : messageAttributes) {
             Element Ei = pk_Ti[i].powZn(s).getImmutable();
-            ctProperties.setProperty("E"+i, ConversionUtils.bytes2String(Ei.toBytes()));
+            ct.put("E"+i, Ei);
         }
-        PropertiesUtils.store(ctProperties, ctFilePath);
         System.out.println("已为密文属性 【" + ConversionUtils.intArray2String(messageAttributes) + "】 加密消息");
+        return ct;
     }
 
     /**
@@ -87,21 +183,51 @@ public class KPABEa {
      * @param skFilePath 密钥存储文件路径
      */
     public void keyGeneration(AccessTreeKPABE userAttributes, String skFilePath) {
-        // 访问控制树操作：设置根节点的秘密值/多项式的常量/多项式在x=0处的取值
-        userAttributes.generatePolySecret(this.bp, this.msk_y);
+        keyGeneration(userAttributes).store(skFilePath);
+    }
+
+    /**
+     * 密钥生成方法，直接返回内存中的私钥句柄，不写文件
+     * @param userAttributes 用户的属性访问控制树
+     * @return 私钥句柄
+     */
+    public ABESecretKey keyGeneration(AccessTreeKPABE userAttributes) {
+        if (msk_y == null) {
+            throw new IllegalStateException("只加载了公共参数，没有主密钥，不能生成密钥");
+        }
+        // 访问控制树操作：设置根节点的秘密值/多项式的常量/多项式在x=0处的取值。各节点的秘密值只属于本次密钥生成，访问控制树本身不被修改
+        Element[] shares = userAttributes.generatePolySecret(this.bp, this.msk_y);
+        CompiledAccessTree<AccessTreeKPABE.Node> tree = userAttributes.compiled();
 
         // 生成密钥部分
-        Properties skProperties = new Properties();
-        for (AccessTreeKPABE.Node n : userAttributes) {
-            if (n.isLeave()) {
-                Element qx0 = MathUtils.qx(n.polynomial, bp.getZr().newElement(0));
-                // 为用户访问控制树的每个叶子节点x生成对应的Dx(不是跟着属性i走！)
-                // for each leaf node x: Dx = g^(qx0/ti) where i = attr(x)
-                Element D = this.g.powZn(qx0.div(this.msk_ti[n.attribute])).getImmutable();
-                skProperties.setProperty("D" + n.leafID, ConversionUtils.bytes2String(D.toBytes()));
-            }
+        ABESecretKey sk = new ABESecretKey("KPABEa", bp);
+        for (int k = 0; k < tree.leafCount(); k++) {
+            AccessTreeKPABE.Node n = tree.node(tree.leaf(k));
+            Element qx0 = shares[tree.leaf(k)];
+            // 为用户访问控制树的每个叶子节点x生成对应的Dx(不是跟着属性i走！)
+            // for each leaf node x: Dx = g^(qx0/ti) where i = attr(x)
+            Element D = this.gPre.powZn(qx0.mul(this.msk_tiInverse[n.attribute])).getImmutable();
+            sk.put("D" + n.leafID, D);
         }
-        PropertiesUtils.store(skProperties, skFilePath);
+        return sk;
+    }
+
+    /**
+     * 从私钥文件加载私钥句柄
+     * @param skFilePath 密钥存储文件路径
+     * @return 私钥句柄
+     */
+    public ABESecretKey loadSecretKey(String skFilePath) {
+        return ABESecretKey.load(skFilePath, "KPABEa", bp);
+    }
+
+    /**
+     * 从密文文件加载密文对象
+     * @param ctFilePath 加密文本存储文件路径
+     * @return 密文对象
+     */
+    public ABECiphertext loadCiphertext(String ctFilePath) {
+        return ABECiphertext.load(ctFilePath, "KPABEa", bp);
     }
 
     /**
@@ -112,33 +238,35 @@ public class KPABEa {
      * @return 解密后的消息
      */
     public Element decrypt(AccessTreeKPABE userAttributes, String skFilePath, String ctFilePath) {
-        Properties ctProperties = PropertiesUtils.load(ctFilePath);
-        int[] messageAttributes = ConversionUtils.String2intArray(ctProperties.getProperty("Message Attributes w' "));
+        return decrypt(userAttributes, loadSecretKey(skFilePath), loadCiphertext(ctFilePath));
+    }
 
-        // 解密需要准备好E'
-        Properties skProperties = PropertiesUtils.load(skFilePath);
-        String EPrimeStr = ctProperties.getProperty("E' ");
-        Element EPrime = bp.getGT().newElementFromBytes(ConversionUtils.String2Bytes(EPrimeStr)).getImmutable();
+    /**
+     * 使用内存中的私钥句柄解密。同一个用户解密多个密文时应复用同一个句柄，以复用D的配对预计算
+     * @param userAttributes 用户的属性访问控制树
+     * @param sk 私钥句柄，见loadSecretKey
+     * @param ctFilePath 加密文本存储文件路径
+     * @return 解密后的消息
+     */
+    public Element decrypt(AccessTreeKPABE userAttributes, ABESecretKey sk, String ctFilePath) {
+        return decrypt(userAttributes, sk, loadCiphertext(ctFilePath));
+    }
 
-        // 解密需要准备好Ei，这与属性对应。还需要准备好Di，这与叶子节点对应。
-        HashMap<Integer, Element> ciphertextEi = new HashMap<>();
-        HashMap<Integer, Element> secretKeyDi = new HashMap<>();
-        for (int i : messageAttributes) {
-            String EiStr = ctProperties.getProperty("E" + i);
-            Element Ei = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(EiStr)).getImmutable();
-            ciphertextEi.put(i, Ei);
-        }
+    /**
+     * 私钥和密文都已经在内存中，解密过程不打开任何文件
+     * @param userAttributes 用户的属性访问控制树
+     * @param sk 私钥句柄
+     * @param ct 密文对象
+     * @return 解密后的消息
+     */
+    public Element decrypt(AccessTreeKPABE userAttributes, ABESecretKey sk, ABECiphertext ct) {
+        int[] messageAttributes = ct.getInts("Message Attributes w' ");
 
-        for (AccessTreeKPABE.Node n : userAttributes) {
-            if (n.isLeave()) {
-                String DiStr = skProperties.getProperty("D" + n.leafID);
-                Element Di = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DiStr)).getImmutable();
-                secretKeyDi.put(n.leafID, Di);
-            }
-        }
+        // 解密需要准备好E'
+        Element EPrime = ct.get("E' ");
 
-        // 调用decryptNode(E, D, root)得到Y^s
-        Element Ys = userAttributes.decryptNodeA(messageAttributes, secretKeyDi, ciphertextEi, bp);
+        // 调用decryptNode(E, D, root)得到Y^s。Ei与属性对应，只有选中叶子的属性才会从密文中取出；Di与叶子节点对应，在私钥句柄中。
+        Element Ys = userAttributes.decryptNodeA(AttributeSet.of(messageAttributes), sk, i -> ct.get("E" + i), bp);
         if (Ys != null) {
             System.out.println("密文设置的属性和用户属性访问控制树匹配，解密成功！");
             return EPrime.div(Ys);
@@ -6,8 +6,8 @@ public class KPABEaTest {
 
     public static void testCase1() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEaFile/test1/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEaFile/test1/ct.properties";
+        String skFilePath = "src/KPABE/KPABEaFile/test1/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEaFile/test1/ct.bin";
         System.out.println("\n测试案例1：");
 
         // 初始化操作，设置属性宇宙为【1, 2, 3, 4, 5, 6, 7, 8, 9, 10】
@@ -29,8 +29,8 @@ public class KPABEaTest {
 
     public static void testCase2() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEaFile/test2/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEaFile/test2/ct.properties";
+        String skFilePath = "src/KPABE/KPABEaFile/test2/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEaFile/test2/ct.bin";
         System.out.println("\n测试案例2：");
 
         // 初始化操作，设置属性宇宙为【1, 2, 3, 4, 5, 6, 7, 8, 9, 10】
@@ -52,8 +52,8 @@ public class KPABEaTest {
 
     public static void testCase3() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEaFile/test3/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEaFile/test3/ct.properties";
+        String skFilePath = "src/KPABE/KPABEaFile/test3/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEaFile/test3/ct.bin";
         System.out.println("\n测试案例3：");
 
         // 初始化操作，设置属性宇宙为【1, 2, 3, 4, 5, 6, 7, 8, 9, 10】
@@ -75,8 +75,8 @@ public class KPABEaTest {
 
     public static void testCase4() { // 无法通过
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEaFile/test4/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEaFile/test4/ct.properties";
+        String skFilePath = "src/KPABE/KPABEaFile/test4/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEaFile/test4/ct.bin";
         System.out.println("\n测试案例4：");
 
         // 初始化操作，设置属性宇宙为【1, 2, 3, 4, 5, 6, 7, 8, 9, 10】
@@ -98,8 +98,8 @@ public class KPABEaTest {
 
     public static void testCase5() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEaFile/test5/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEaFile/test5/ct.properties";
+        String skFilePath = "src/KPABE/KPABEaFile/test5/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEaFile/test5/ct.bin";
         System.out.println("\n测试案例5：");
         // 初始化操作，设置属性上限为10
         KPABEa kpabeInstance = new KPABEa(20);
@@ -120,8 +120,8 @@ public class KPABEaTest {
 
     public static void testCase6() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEaFile/test6/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEaFile/test6/ct.properties";
+        String skFilePath = "src/KPABE/KPABEaFile/test6/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEaFile/test6/ct.bin";
         System.out.println("\n测试案例6：");
         // 初始化操作，设置属性上限为10
         KPABEa kpabeInstance = new KPABEa(20);
@@ -142,8 +142,8 @@ public class KPABEaTest {
 
     public static void testCase7() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEaFile/test7/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEaFile/test7/ct.properties";
+        String skFilePath = "src/KPABE/KPABEaFile/test7/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEaFile/test7/ct.bin";
         System.out.println("\n测试案例7：");
         // 初始化操作，设置属性上限为10
         KPABEa kpabeInstance = new KPABEa(20);
@@ -164,8 +164,8 @@ public class KPABEaTest {
 
     public static void testCase8() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEaFile/test8/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEaFile/test8/ct.properties";
+        String skFilePath = "src/KPABE/KPABEaFile/test8/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEaFile/test8/ct.bin";
         System.out.println("\n测试案例8：");
         // 初始化操作，设置属性上限为10
         KPABEa kpabeInstance = new KPABEa(20);
@@ -186,8 +186,8 @@ public class KPABEaTest {
 
     public static void testCase9() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEaFile/test9/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEaFile/test9/ct.properties";
+        String skFilePath = "src/KPABE/KPABEaFile/test9/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEaFile/test9/ct.bin";
         System.out.println("\n测试案例9：");
         // 初始化操作，设置属性上限为10
         KPABEa kpabeInstance = new KPABEa(20);
@@ -208,8 +208,8 @@ public class KPABEaTest {
 
     public static void testCase10() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEaFile/test10/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEaFile/test10/ct.properties";
+        String skFilePath = "src/KPABE/KPABEaFile/test10/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEaFile/test10/ct.bin";
         System.out.println("\n测试案例10：");
 
         // 初始化操作，设置属性宇宙为【1, 2, 3, 4, 5, 6, 7, 8, 9, 10】
@@ -229,7 +229,34 @@ public class KPABEaTest {
         System.out.println("M_ 是 " + M_);
     }
 
+    // 加密方只从公共参数文件恢复，密钥生成方从公共参数和主密钥文件恢复：后者生成的私钥能解密前者加密的密文
+    public static void testCase11() {
+        //测试文件路径
+        String pkFilePath = "src/KPABE/KPABEaFile/test11/pk.bin";
+        String mskFilePath = "src/KPABE/KPABEaFile/test11/msk.bin";
+        String skFilePath = "src/KPABE/KPABEaFile/test11/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEaFile/test11/ct.bin";
+        System.out.println("\n测试案例11：");
+        KPABEa kpabeInstance = new KPABEa(20);
+        kpabeInstance.setUp("a.properties");
+        kpabeInstance.storePublicParameters(pkFilePath);
+        kpabeInstance.storeMasterKey(mskFilePath);
+
+        KPABEa encryptOnlyInstance = new KPABEa(20);
+        encryptOnlyInstance.loadParameters("a.properties", pkFilePath);
+        Element M = encryptOnlyInstance.generateRandomPlainText();
+        System.out.println("M 是 " + M);
+        encryptOnlyInstance.encrypt(new int[]{1, 3, 6}, M, ctFilePath);
 
+        KPABEa restoredInstance = new KPABEa(20);
+        restoredInstance.loadParameters("a.properties", pkFilePath, mskFilePath);
+        AccessTreeKPABE userAttributes = AccessTreeKPABE.getInstance3();
+        restoredInstance.keyGeneration(userAttributes, skFilePath);
+
+        Element M_ = restoredInstance.decrypt(userAttributes, skFilePath, ctFilePath);
+        System.out.println("M_ 是 " + M_);
+        System.out.println("恢复参数后解密是否正确: " + M.isEqual(M_));
+    }
 
     public static void main(String[] args) {
         testCase1();
@@ -242,5 +269,6 @@ public class KPABEaTest {
         testCase8();
         testCase9();
         testCase10();
+        testCase11();
     }
 }
@@ -1,15 +1,19 @@
 package KPABE;
 
+import Utils.ABECiphertext;
+import Utils.ABESecretKey;
+import Utils.AttributeSet;
+import Utils.CompiledAccessTree;
 import Utils.ConversionUtils;
+import Utils.ElementContainer;
+import Utils.LazyPowPreProcessing;
 import Utils.MathUtils;
-import Utils.PropertiesUtils;
+import Utils.TFunction;
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
 import it.unisa.dia.gas.jpbc.Pairing;
 import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
 
-import java.util.HashMap;
-import java.util.Properties;
-
 /**
  * KPABE (Key-Policy Attribute Based Encryption) 演示类
  * 该类展示了KPABE属性加密方案的初始化、密钥生成、加密和解密过程。
@@ -29,6 +33,14 @@ public class KPABEb {
     private Element g2;  // g2 ∈ G1
     private Element[] pk_ti; // 公共参数ti: G1群的密钥元素数组
 
+    // 以下底数的预计算表在第一次求幂时构建
+    private ElementPowPreProcessing gPre; // 密钥生成的Rx = g^rx，加密的E'' = g^s
+    private ElementPowPreProcessing g2Pre; // 密钥生成的g2^qx(0)，以及T(x)中的g2^(x^n)
+    private ElementPowPreProcessing[] pk_tiPre; // 只在计算T(x)时使用
+    private Element eg1g2; // e(g1, g2) ∈ GT
+    private ElementPowPreProcessing eg1g2Pre; // 只用于加密的e(g1, g2)^s
+    private TFunction tFunction; // T(x)的求值：分母在setUp中预先求逆，T(x)按属性缓存
+
 
     /**
      * 构造函数，用于初始化KPABEb类
@@ -55,9 +67,83 @@ public class KPABEb {
         for (int i = 1; i < pk_ti.length; i++) {
             pk_ti[i] = bp.getG1().newRandomElement().getImmutable(); // PK: t1 t2 …… tn tn+1 <- G1
         }
+        eg1g2 = bp.pairing(g1, g2).getImmutable(); // e(g1, g2)
+        initPreProcessing();
         System.out.println("已成功初始化，属性集合的大小上限为 " + this.n);
     }
 
+    /**
+     * 保存公共参数(g, g1, g2, t1 …… tn+1, e(g1, g2))，加密方只需要这个文件；不含主密钥，可以公开
+     * @param publicParamsFilePath 公共参数文件路径
+     */
+    public void storePublicParameters(String publicParamsFilePath) {
+        ElementContainer params = new ElementContainer("KPABEb.pk", bp);
+        params.putInts("n", new int[]{n});
+        params.putElement("g", g);
+        params.putElement("g1", g1);
+        params.putElement("g2", g2);
+        for (int i = 1; i < pk_ti.length; i++) {
+            params.putElement("t"+i, pk_ti[i]);
+        }
+        params.putElement("eg1g2", eg1g2);
+        params.store(publicParamsFilePath);
+    }
+
+    /**
+     * 保存主密钥y，只有生成密钥的一方需要，应妥善保管
+     * @param mskFilePath 主密钥文件路径
+     */
+    public void storeMasterKey(String mskFilePath) {
+        ElementContainer msk = new ElementContainer("KPABEb.msk", bp);
+        msk.putElement("y", msk_y);
+        msk.store(mskFilePath);
+    }
+
+    /**
+     * 代替setUp：只恢复storePublicParameters保存的公共参数，不重新生成参数、不做求幂和配对。恢复后可以加密、解密，不能生成密钥
+     * @param pairingFilePath 双线性对参数文件路径
+     * @param publicParamsFilePath storePublicParameters保存的公共参数文件路径
+     */
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath) {
+        bp = PairingFactory.getPairing(pairingFilePath);
+        ElementContainer params = ElementContainer.load(publicParamsFilePath, "KPABEb.pk", bp);
+        if (params.getInts("n")[0] != n) {
+            throw new IllegalArgumentException("参数文件的属性集合大小上限为" + params.getInts("n")[0] + "，而不是" + n);
+        }
+        g = params.getElement("g");
+        msk_y = null;
+        g1 = params.getElement("g1");
+        g2 = params.getElement("g2");
+        for (int i = 1; i < pk_ti.length; i++) {
+            pk_ti[i] = params.getElement("t"+i);
+        }
+        eg1g2 = params.getElement("eg1g2");
+        initPreProcessing();
+    }
+
+    /**
+     * 代替setUp：恢复公共参数和storeMasterKey保存的主密钥，恢复后可以生成密钥、加密和解密，与原来进程的密钥、密文互通
+     * @param pairingFilePath 双线性对参数文件路径
+     * @param publicParamsFilePath storePublicParameters保存的公共参数文件路径
+     * @param mskFilePath storeMasterKey保存的主密钥文件路径
+     */
+    public void loadParameters(String pairingFilePath, String publicParamsFilePath, String mskFilePath) {
+        loadParameters(pairingFilePath, publicParamsFilePath);
+        ElementContainer msk = ElementContainer.load(mskFilePath, "KPABEb.msk", bp);
+        msk_y = msk.getElement("y");
+    }
+
+    private void initPreProcessing() {
+        gPre = new LazyPowPreProcessing(g);
+        g2Pre = new LazyPowPreProcessing(g2);
+        pk_tiPre = new ElementPowPreProcessing[pk_ti.length];
+        for (int i = 1; i < pk_ti.length; i++) {
+            pk_tiPre[i] = new LazyPowPreProcessing(pk_ti[i]);
+        }
+        eg1g2Pre = new LazyPowPreProcessing(eg1g2);
+        tFunction = new TFunction(n, g2Pre, pk_tiPre, bp);
+    }
+
     /**
      * 加密方法，根据一组属性加密消息
      * @param messageAttributes 加密消息的属性数组
@@ -65,31 +151,41 @@ public class KPABEb {
      * @param ctFilePath 加密文本存储文件路径
      */
     public void encrypt(int[] messageAttributes, Element message, String ctFilePath) {
+        encrypt(messageAttributes, message).store(ctFilePath);
+    }
+
+    /**
+     * 加密方法，直接返回内存中的密文对象，不写文件
+     * @param messageAttributes 加密消息的属性数组
+     * @param message 要加密的消息
+     * @return 密文对象
+     */
+    public ABECiphertext encrypt(int[] messageAttributes, Element message) {
         checkAttributeSet(messageAttributes);
 
-        Properties ctProperties = new Properties();
-        ctProperties.setProperty("Message Attributes w' ", ConversionUtils.intArray2String(messageAttributes));
+        ABECiphertext ct = new ABECiphertext("KPABEb", bp);
+        ct.putInts("Message Attributes w' ", messageAttributes);
 
         // 随机生成一个元素s <- Zr用于加密
         Element s = bp.getZr().newRandomElement().getImmutable();
 
         // 计算加密后的密文组件 E' = M * e(g1, g2)^s
-        Element g1g2s = bp.pairing(g1, g2).powZn(s).getImmutable();
+        Element g1g2s = eg1g2Pre.powZn(s).getImmutable();
         Element EPrime = message.mul(g1g2s).getImmutable();
-        ctProperties.setProperty("E' ", ConversionUtils.bytes2String(EPrime.toBytes()));
+        ct.put("E' ", EPrime);
 
         // 计算加密后的密文组件 E'' = g^s
-        Element EPrimePrime = g.powZn(s).getImmutable();
-        ctProperties.setProperty("E'' ", ConversionUtils.bytes2String(EPrimePrime.toBytes()));
+        Element EPrimePrime = gPre.powZn(s).getImmutable();
+        ct.put("E'' ", EPrimePrime);
 
         // 为每个消息属性计算对应的密文组件Ei = T(i)^s
         for (int i : messageAttributes) {
-            Element Ei = T(i).powZn(s).getImmutable();
-            ctProperties.setProperty("E" + i, ConversionUtils.bytes2String(Ei.toBytes()));
+            Element Ei = tFunction.pow(i, s);
+            ct.put("E" + i, Ei);
         }
 
-        PropertiesUtils.store(ctProperties, ctFilePath);
         System.out.println("已为密文属性 【" + ConversionUtils.intArray2String(messageAttributes) + "】 加密消息");
+        return ct;
     }
 
     /**
@@ -98,28 +194,58 @@ public class KPABEb {
      * @param skFilePath 密钥存储文件路径
      */
     public void keyGeneration(AccessTreeKPABE userAttributes, String skFilePath) {
-        // 访问控制树操作：设置根节点的秘密值/多项式的常量/多项式在x=0处的取值
-        userAttributes.generatePolySecret(this.bp, this.msk_y);
+        keyGeneration(userAttributes).store(skFilePath);
+    }
+
+    /**
+     * 密钥生成方法，直接返回内存中的私钥句柄，不写文件
+     * @param userAttributes 用户的属性访问控制树
+     * @return 私钥句柄
+     */
+    public ABESecretKey keyGeneration(AccessTreeKPABE userAttributes) {
+        if (msk_y == null) {
+            throw new IllegalStateException("只加载了公共参数，没有主密钥，不能生成密钥");
+        }
+        // 访问控制树操作：设置根节点的秘密值/多项式的常量/多项式在x=0处的取值。各节点的秘密值只属于本次密钥生成，访问控制树本身不被修改
+        Element[] shares = userAttributes.generatePolySecret(this.bp, this.msk_y);
+        CompiledAccessTree<AccessTreeKPABE.Node> tree = userAttributes.compiled();
 
         // 生成密钥部分
-        Properties skProperties = new Properties();
+        ABESecretKey sk = new ABESecretKey("KPABEb", bp);
 
         // 为用户访问控制树的每个叶子节点x生成对应的Dx和Rx(不是跟着属性i走！)
-        for (AccessTreeKPABE.Node n : userAttributes) {
-            if (n.isLeave()) {
-                Element rx = bp.getZr().newRandomElement().getImmutable(); // rx <- Zr
-                Element qx0 = MathUtils.qx(n.polynomial, bp.getZr().newZeroElement().getImmutable());
-
-                // for each leaf node x: Dx = (g2^(qx0))*(T(i)^rx) where i = attr(x)
-                Element Dx = (g2.powZn(qx0)).mul(T(n.attribute).powZn(rx));
-                skProperties.setProperty("Dx" + n.leafID, ConversionUtils.bytes2String(Dx.toBytes()));
-
-                // for each leaf node x: Rx = g^rx
-                Element Rx = g.powZn(rx);
-                skProperties.setProperty("Rx" + n.leafID, ConversionUtils.bytes2String(Rx.toBytes()));
-            }
+        for (int k = 0; k < tree.leafCount(); k++) {
+            AccessTreeKPABE.Node n = tree.node(tree.leaf(k));
+            Element rx = bp.getZr().newRandomElement().getImmutable(); // rx <- Zr
+            Element qx0 = shares[tree.leaf(k)];
+
+            // for each leaf node x: Dx = (g2^(qx0))*(T(i)^rx) where i = attr(x)
+            Element Dx = (g2Pre.powZn(qx0)).mul(tFunction.pow(n.attribute, rx));
+            sk.put("Dx" + n.leafID, Dx);
+
+            // for each leaf node x: Rx = g^rx
+            Element Rx = gPre.powZn(rx);
+            sk.put("Rx" + n.leafID, Rx);
         }
-        PropertiesUtils.store(skProperties, skFilePath);
+        return sk;
+    }
+
+    /**
+     * 从私钥文件加载私钥句柄
+     * @param skFilePath 密钥存储文件路径
+     * @return 私钥句柄
+     */
+    public ABESecretKey loadSecretKey(String skFilePath) {
+        return ABESecretKey.load(skFilePath, "KPABEb", bp);
+    }
+
+    /**
+     * 从密文文件加载密文对象
+     * @param ctFilePath 加密文本存储文件路径
+     * @return 密文对象
+     */
+    public ABECiphertext loadCiphertext(String ctFilePath) {
+        return ABECiphertext.load(ctFilePath, "KPABEb", bp);
     }
 
     /**
@@ -130,41 +256,36 @@ public class KPABEb {
      * @return 解密后的消息
      */
     public Element decrypt(AccessTreeKPABE userAttributes, String skFilePath, String ctFilePath) {
-        Properties ctProperties = PropertiesUtils.load(ctFilePath);
-        int[] messageAttributes = ConversionUtils.String2intArray(ctProperties.getProperty("Message Attributes w' "));
-
-        // 解密需要准备好E'和E''
-        Properties skProperties = PropertiesUtils.load(skFilePath);
-        String EPrimeStr = ctProperties.getProperty("E' ");
-        Element EPrime = bp.getGT().newElementFromBytes(ConversionUtils.String2Bytes(EPrimeStr)).getImmutable();
-        String EPrimePrimeStr = ctProperties.getProperty("E'' ");
-        Element EPrimePrime = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(EPrimePrimeStr)).getImmutable();
-
-        // 解密需要准备好Ei，这与属性对应。还需要准备好Dx和Rx，这与叶子节点对应。
-        HashMap<Integer, Element> ciphertextEi = new HashMap<>();
-        HashMap<Integer, Element> secretKeyDx = new HashMap<>();
-        HashMap<Integer, Element> secretKeyRx = new HashMap<>();
+        return decrypt(userAttributes, loadSecretKey(skFilePath), loadCiphertext(ctFilePath));
+    }
 
-        for (int i : messageAttributes) {
-            String EiStr = ctProperties.getProperty("E" + i);
-            Element Ei = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(EiStr)).getImmutable();
-            ciphertextEi.put(i, Ei);
-        }
+    /**
+     * 使用内存中的私钥句柄解密。同一个用户解密多个密文时应复用同一个句柄，以复用Dx、Rx的配对预计算
+     * @param userAttributes 用户的属性访问控制树
+     * @param sk 私钥句柄，见loadSecretKey
+     * @param ctFilePath 加密文本存储文件路径
+     * @return 解密后的消息
+     */
+    public Element decrypt(AccessTreeKPABE userAttributes, ABESecretKey sk, String ctFilePath) {
+        return decrypt(userAttributes, sk, loadCiphertext(ctFilePath));
+    }
 
-        for (AccessTreeKPABE.Node n : userAttributes) {
-            if (n.isLeave()) {
-                String DxStr = skProperties.getProperty("Dx" + n.leafID);
-                Element Dx = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(DxStr)).getImmutable();
-                secretKeyDx.put(n.leafID, Dx);
+    /**
+     * 私钥和密文都已经在内存中，解密过程不打开任何文件
+     * @param userAttributes 用户的属性访问控制树
+     * @param sk 私钥句柄
+     * @param ct 密文对象
+     * @return 解密后的消息
+     */
+    public Element decrypt(AccessTreeKPABE userAttributes, ABESecretKey sk, ABECiphertext ct) {
+        int[] messageAttributes = ct.getInts("Message Attributes w' ");
 
-                String RxStr = skProperties.getProperty("Rx" + n.leafID);
-                Element Rx = bp.getG1().newElementFromBytes(ConversionUtils.String2Bytes(RxStr)).getImmutable();
-                secretKeyRx.put(n.leafID, Rx);
-            }
-        }
+        // 解密需要准备好E'和E''
+        Element EPrime = ct.get("E' ");
+        Element EPrimePrime = ct.get("E'' ");
 
-        // 调用decryptNode(E, D, root)得到Y^s
-        Element Ys = userAttributes.decryptNodeB(messageAttributes, secretKeyDx, secretKeyRx, ciphertextEi, EPrimePrime, bp);
+        // 调用decryptNode(E, D, root)得到Y^s。Ei与属性对应，只有选中叶子的属性才会从密文中取出；Dx和Rx与叶子节点对应，在私钥句柄中。
+        Element Ys = userAttributes.decryptNodeB(AttributeSet.of(messageAttributes), sk, i -> ct.get("E" + i), EPrimePrime, bp);
 
         if (Ys != null) {
             System.out.println("密文设置的属性和用户属性访问控制树匹配，解密成功！");
@@ -185,24 +306,6 @@ public class KPABEb {
     }
 
 
-    // Define a function T as
-    private Element T(int x) {
-        Element xElement = bp.getZr().newElement(x).getImmutable();
-        Element xn = xElement.powZn(bp.getZr().newElement(n)).getImmutable();
-        Element result = this.g2.powZn(xn).getImmutable(); // g2^(x^n)
-
-        int[] N = new int[n+1];
-        for (int i = 0; i < N.length; i++) {
-            N[i] = i+1;
-        }
-        for (int i = 1; i <= n+1; i++) {
-            Element ti = pk_ti[i].duplicate().getImmutable();
-            Element delta = MathUtils.computeLagrangeBasis(i, N, x, bp);
-            result = result.mul(ti.powZn(delta));
-        }
-
-        return result;
-    }
 
     /**
      * 检查属性数组的合法性，确保属性集合的大小不能超过n
@@ -6,8 +6,8 @@ public class KPABEbTest {
 
     public static void testCase1() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEbFile/test1/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEbFile/test1/ct.properties";
+        String skFilePath = "src/KPABE/KPABEbFile/test1/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEbFile/test1/ct.bin";
         System.out.println("\n测试案例1：");
 
         // 初始化操作，设置属性集合大小上限为10
@@ -29,8 +29,8 @@ public class KPABEbTest {
 
     public static void testCase2() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEbFile/test2/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEbFile/test2/ct.properties";
+        String skFilePath = "src/KPABE/KPABEbFile/test2/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEbFile/test2/ct.bin";
         System.out.println("\n测试案例2：");
 
         // 初始化操作，设置属性集合大小上限为10
@@ -52,8 +52,8 @@ public class KPABEbTest {
 
     public static void testCase3() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEbFile/test3/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEbFile/test3/ct.properties";
+        String skFilePath = "src/KPABE/KPABEbFile/test3/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEbFile/test3/ct.bin";
         System.out.println("\n测试案例3：");
 
         // 初始化操作，设置属性集合大小上限为10
@@ -75,8 +75,8 @@ public class KPABEbTest {
 
     public static void testCase4() { // 无法通过
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEbFile/test4/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEbFile/test4/ct.properties";
+        String skFilePath = "src/KPABE/KPABEbFile/test4/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEbFile/test4/ct.bin";
         System.out.println("\n测试案例4：");
 
         // 初始化操作，设置属性集合大小上限为10
@@ -98,8 +98,8 @@ public class KPABEbTest {
 
     public static void testCase5() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEbFile/test5/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEbFile/test5/ct.properties";
+        String skFilePath = "src/KPABE/KPABEbFile/test5/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEbFile/test5/ct.bin";
         System.out.println("\n测试案例5：");
         // 初始化操作，设置属性上限为20
         KPABEa kpabeInstance = new KPABEa(20);
@@ -120,8 +120,8 @@ public class KPABEbTest {
 
     public static void testCase6() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEbFile/test6/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEbFile/test6/ct.properties";
+        String skFilePath = "src/KPABE/KPABEbFile/test6/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEbFile/test6/ct.bin";
         System.out.println("\n测试案例6：");
         // 初始化操作，设置属性集合大小上限为20
         KPABEa kpabeInstance = new KPABEa(20);
@@ -142,8 +142,8 @@ public class KPABEbTest {
 
     public static void testCase7() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEbFile/test7/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEbFile/test7/ct.properties";
+        String skFilePath = "src/KPABE/KPABEbFile/test7/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEbFile/test7/ct.bin";
         System.out.println("\n测试案例7：");
         // 初始化操作，设置属性上限为10
         KPABEa kpabeInstance = new KPABEa(20);
@@ -164,8 +164,8 @@ public class KPABEbTest {
 
     public static void testCase8() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEbFile/test8/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEbFile/test8/ct.properties";
+        String skFilePath = "src/KPABE/KPABEbFile/test8/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEbFile/test8/ct.bin";
         System.out.println("\n测试案例8：");
         // 初始化操作，设置属性上限为10
         KPABEa kpabeInstance = new KPABEa(20);
@@ -186,8 +186,8 @@ public class KPABEbTest {
 
     public static void testCase9() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEbFile/test9/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEbFile/test9/ct.properties";
+        String skFilePath = "src/KPABE/KPABEbFile/test9/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEbFile/test9/ct.bin";
         System.out.println("\n测试案例9：");
         // 初始化操作，设置属性上限为10
         KPABEa kpabeInstance = new KPABEa(20);
@@ -208,8 +208,8 @@ public class KPABEbTest {
 
     public static void testCase10() {
         //测试文件路径
-        String skFilePath = "src/KPABE/KPABEbFile/test10/sk.properties";
-        String ctFilePath = "src/KPABE/KPABEbFile/test10/ct.properties";
+        String skFilePath = "src/KPABE/KPABEbFile/test10/sk.bin";
+        String ctFilePath = "src/KPABE/KPABEbFile/test10/ct.bin";
         System.out.println("\n测试案例10：");
 
         // 初始化操作，设置属性集合最大值为10
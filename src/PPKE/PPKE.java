@@ -1,15 +1,15 @@
 package PPKE;
 
 import KPABE.AccessTreeKPABE;
-import Utils.ConversionUtils;
+import Utils.ABECiphertext;
+import Utils.ABESecretKey;
 import Utils.MathUtils;
-import Utils.PropertiesUtils;
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
 import it.unisa.dia.gas.jpbc.Pairing;
 import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
 
 import java.util.List;
-import java.util.Properties;
 
 /**
  * PE (Puncturable Encryption) 演示类
@@ -31,6 +31,11 @@ public class PPKE {
     private Element g1;
     private Element g2;
 
+    // 以下底数的预计算表在setUp中构建
+    private ElementPowPreProcessing gPre; // V(x) = g^q(x)、密钥生成的g^q(i)和sk3，加密的ct2
+    private ElementPowPreProcessing g2Pre; // 只用于密钥生成的sk1 = g2^(alpha+r)
+    private ElementPowPreProcessing eg1g2Pre; // 只用于加密的e(g1, g2)^s
+
     private int d;
     private Element[] gQi;
     private Element[] q;
@@ -52,10 +57,13 @@ public class PPKE {
         beta = bp.getZr().newRandomElement().getImmutable();
         g1 = g.powZn(alpha).getImmutable();
         g2 = g.powZn(beta).getImmutable();
+        gPre = g.getElementPowPreProcessing();
+        g2Pre = g2.getElementPowPreProcessing();
+        eg1g2Pre = bp.pairing(g1, g2).getImmutable().getElementPowPreProcessing(); // e(g1, g2)
     }
 
     private Element V(Element x) {
-        return g.powZn(MathUtils.qx(q, x)).getImmutable();
+        return gPre.powZn(MathUtils.qx(q, x)).getImmutable();
     }
 
     /**
@@ -63,27 +71,36 @@ public class PPKE {
      * @param skFilePath 密钥存储文件路径
      */
     public void keyGeneration(String skFilePath, String tag0) {
+        keyGeneration(tag0).store(skFilePath);
+    }
+
+    /**
+     * 密钥生成方法，直接返回内存中的私钥句柄，不写文件
+     * @param tag0 私钥初始的标签
+     * @return 私钥句柄
+     */
+    public ABESecretKey keyGeneration(String tag0) {
         // 访问控制树操作：设置根节点的秘密值/多项式的常量/多项式在x=0处的取值
         Element r = bp.getZr().newRandomElement().getImmutable();
         this.q = MathUtils.generateRandomPolynomial(this.d+1, beta, bp);
 
         for (int i = 1; i <= d; i++) {
-            gQi[i] = g.powZn(MathUtils.qx(q, bp.getZr().newElement(i))).getImmutable();
+            gQi[i] = gPre.powZn(MathUtils.qx(q, bp.getZr().newElement(i))).getImmutable();
         }
 
-        Element sk1 = g2.powZn(alpha.add(r)).getImmutable();
+        Element sk1 = g2Pre.powZn(alpha.add(r)).getImmutable();
         Element sk2 = (V(MathUtils.H(tag0, bp))).powZn(r).getImmutable();
-        Element sk3 = g.powZn(r).getImmutable();
+        Element sk3 = gPre.powZn(r).getImmutable();
 
 
-        // 存储对应私钥
-        Properties skProperties = new Properties();
-        skProperties.setProperty("sk1", ConversionUtils.bytes2String(sk1.toBytes()));
-        skProperties.setProperty("sk2", ConversionUtils.bytes2String(sk2.toBytes()));
-        skProperties.setProperty("sk3", ConversionUtils.bytes2String(sk3.toBytes()));
-        skProperties.setProperty("sk4", tag0);
+        // 生成对应私钥
+        ABESecretKey sk = new ABESecretKey("PPKE", bp);
+        sk.put("sk1", sk1);
+        sk.put("sk2", sk2);
+        sk.put("sk3", sk3);
+        sk.putString("sk4", tag0);
 
-        PropertiesUtils.store(skProperties, skFilePath);
+        return sk;
     }
 
     /**
@@ -92,20 +109,30 @@ public class PPKE {
      * @param ctFilePath 加密文本存储文件路径
      */
     public void encrypt(Element message, List<String> tags, String ctFilePath) {
-        Properties ctProperties = new Properties();
+        encrypt(message, tags).store(ctFilePath);
+    }
+
+    /**
+     * 加密方法，直接返回内存中的密文对象，不写文件
+     * @param message 要加密的消息
+     * @param tags 密文的d个标签
+     * @return 密文对象
+     */
+    public ABECiphertext encrypt(Element message, List<String> tags) {
+        ABECiphertext ct = new ABECiphertext("PPKE", bp);
 
         Element s = bp.getZr().newRandomElement().getImmutable();
-        Element ct1 = message.mul(bp.pairing(g1, g2).powZn(s)).getImmutable();  // M * e(g1, g2)^s
-        ctProperties.setProperty("ct1", ConversionUtils.bytes2String(ct1.toBytes()));
-        Element ct2 = g.powZn(s).getImmutable();
-        ctProperties.setProperty("ct2", ConversionUtils.bytes2String(ct2.toBytes()));
+        Element ct1 = message.mul(eg1g2Pre.powZn(s)).getImmutable();  // M * e(g1, g2)^s
+        ct.put("ct1", ct1);
+        Element ct2 = gPre.powZn(s).getImmutable();
+        ct.put("ct2", ct2);
 
         // 生成密文ct(3,d) = V(H(td))^s
         for (int i = 0; i < d; i++) {
             Element ct3 = V(MathUtils.H(tags.get(i), bp)).powZn(s);
-            ctProperties.setProperty("ct(3, "+(i+1)+")", ConversionUtils.bytes2String(ct3.toBytes()));
+            ct.put("ct(3, "+(i+1)+")", ct3);
         }
-        PropertiesUtils.store(ctProperties, ctFilePath);
+        return ct;
     }
 
     public void puncture(String sk1FilePath, String sk2FilePath, String tag) {
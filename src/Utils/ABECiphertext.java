@@ -0,0 +1,160 @@
+package Utils;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.util.*;
+
+/**
+ * 密文在内存中的值对象：按名称(与密文文件中的键名一致，如"C"、"Cy3"、"E' ")保存已经解码好的密文元素，
+ * 以及密文附带的整数数组(如KPABE、FIBE中的消息属性)。
+ * 各方案的encrypt可以直接返回密文对象，decrypt也可以直接接收密文对象，整个过程不需要读写文件；
+ * 需要传输时用toBytes/fromBytes与ElementContainer的二进制格式互相转换。
+ * 从容器构建的密文只保存各元素的原始字节，某个元素第一次被get时才解码(G1点的解码要开平方，代价不小)；
+ * 解密只取用满足策略所选中的叶子/行对应的元素，因此解码的代价随满足集合增长，而不是随整个策略的规模增长
+ */
+public class ABECiphertext {
+    private final String scheme; // 方案名称，如"CPABE"
+    private final Pairing bp;
+    private final Map<String, Component> elements = new LinkedHashMap<>(); // 密文元素，名称 -> 原始字节和(已解码的)不可变元素
+    private final Map<String, int[]> ints = new LinkedHashMap<>(); // 密文附带的整数数组
+
+    public ABECiphertext(String scheme, Pairing bp) {
+        this.scheme = scheme;
+        this.bp = bp;
+    }
+
+    /**
+     * 从密文容器构建密文对象，这里只取出元素的原始字节，元素在第一次get时才解码
+     * @param container 密文容器，见ElementContainer
+     * @return 密文对象
+     */
+    public static ABECiphertext fromContainer(ElementContainer container) {
+        ABECiphertext ct = new ABECiphertext(container.getScheme(), container.getPairing());
+        for (String name : container.names()) {
+            byte type = container.getType(name);
+            if (type == ElementContainer.TYPE_INTS) {
+                ct.putInts(name, container.getInts(name));
+            } else if (ElementContainer.isElementType(type)) {
+                ct.elements.put(name, new Component(type, container.getRaw(name), null));
+            }
+        }
+        return ct;
+    }
+
+    public static ABECiphertext fromBytes(byte[] data, String scheme, Pairing bp) {
+        return fromContainer(ElementContainer.fromBytes(data, scheme, bp));
+    }
+
+    public static ABECiphertext load(String ctFilePath, String scheme, Pairing bp) {
+        return fromContainer(ElementContainer.load(ctFilePath, scheme, bp));
+    }
+
+    // G1元素是否压缩由ElementContainer的默认设置决定
+    public ElementContainer toContainer() {
+        return toContainer(ElementContainer.isDefaultCompressG1());
+    }
+
+    /**
+     * 转换为密文容器
+     * @param compressG1 是否使用压缩编码存储G1元素
+     * @return 密文容器
+     */
+    public ElementContainer toContainer(boolean compressG1) {
+        ElementContainer container = new ElementContainer(scheme, bp);
+        container.setCompressG1(compressG1);
+        for (Map.Entry<String, Component> e : elements.entrySet()) {
+            Component component = e.getValue();
+            if (component.bytes != null && container.acceptsRaw(component.type)) {
+                // 来自容器且编码方式相同的元素直接写回原始字节，没有解码过的元素不会被解码
+                container.putRaw(e.getKey(), component.type, component.bytes);
+            } else {
+                container.putElement(e.getKey(), get(e.getKey()));
+            }
+        }
+        for (Map.Entry<String, int[]> e : ints.entrySet()) {
+            container.putInts(e.getKey(), e.getValue());
+        }
+        return container;
+    }
+
+    // 编码为字节数组，用于在网络上传输密文
+    public byte[] toBytes() {
+        return toContainer().toBytes();
+    }
+
+    // 编码为字节数组，compressG1为true时G1元素使用压缩编码，密文的大小约为原来的一半
+    public byte[] toBytes(boolean compressG1) {
+        return toContainer(compressG1).toBytes();
+    }
+
+    public void store(String ctFilePath) {
+        toContainer().store(ctFilePath);
+    }
+
+    public void put(String name, Element value) {
+        elements.put(name, new Component((byte) 0, null, value.getImmutable()));
+    }
+
+    // 取出元素，来自容器的元素在第一次取用时解码，之后直接返回解码结果。多个解密线程同时第一次取用时会各解码一次，结果相同
+    public Element get(String name) {
+        Component component = elements.get(name);
+        if (component == null) {
+            throw new IllegalArgumentException("密文中不存在元素: " + name);
+        }
+        Element value = component.value;
+        if (value == null) {
+            value = ElementContainer.decode(bp, name, component.type, component.bytes);
+            component.value = value;
+        }
+        return value;
+    }
+
+    // 已经解码(或直接put进来)的元素个数
+    public int decodedCount() {
+        int count = 0;
+        for (Component component : elements.values()) {
+            if (component.value != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void putInts(String name, int[] value) {
+        ints.put(name, value.clone());
+    }
+
+    public int[] getInts(String name) {
+        int[] value = ints.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("密文中不存在整数数组: " + name);
+        }
+        return value.clone();
+    }
+
+    public boolean contains(String name) {
+        return elements.containsKey(name) || ints.containsKey(name);
+    }
+
+    public String getScheme() {
+        return scheme;
+    }
+
+    public Pairing getPairing() {
+        return bp;
+    }
+
+    // 一个密文元素：来自容器时保存类型和原始字节，value在第一次取用时解码；直接put进来的元素没有原始字节
+    private static class Component {
+        private final byte type;
+        private final byte[] bytes;
+        private volatile Element value;
+
+        private Component(byte type, byte[] bytes, Element value) {
+            this.type = type;
+            this.bytes = bytes;
+            this.value = value;
+        }
+    }
+}
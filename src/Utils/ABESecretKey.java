@@ -0,0 +1,171 @@
+package Utils;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+import it.unisa.dia.gas.jpbc.PairingPreProcessing;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用户私钥在内存中的句柄：按名称(与私钥文件中的键名一致，如"D"、"Dj3"、"Kx5")保存已经解码好的私钥元素，
+ * 并为参与配对运算的私钥元素缓存JPBC的PairingPreProcessing。
+ * 同一个用户连续解密很多密文时，私钥一侧的Miller循环预计算只在该元素第一次参与配对时做一次，之后的配对直接复用。
+ * 私钥还可以携带自己的用户属性列表(保存为整数数组"attributes")，解密时直接用它选出满足访问策略的叶子，不需要调用方再提供属性
+ */
+public class ABESecretKey {
+    public static final String ATTRIBUTES = "attributes"; // 私钥容器中用户属性列表的键名
+
+    private final String scheme; // 方案名称，如"CPABE"
+    private final Pairing bp;
+    private final Map<String, Element> components = new LinkedHashMap<>(); // 私钥元素，名称 -> 不可变元素
+    private final Map<String, String> strings = new LinkedHashMap<>(); // 私钥附带的字符串，如PPKE的tag0
+    private final Map<String, PairingPreProcessing> preProcessing = new ConcurrentHashMap<>(); // 名称 -> 配对预计算，按需构建
+    private int[] attributes; // 私钥对应的用户属性，旧格式的私钥没有
+    private AttributeSet attributeSet; // 由attributes构建，只构建一次
+
+    public ABESecretKey(String scheme, Pairing bp) {
+        this.scheme = scheme;
+        this.bp = bp;
+    }
+
+    /**
+     * 从私钥容器构建私钥句柄，容器中G1类型(包括压缩的G1)的条目都作为私钥元素，字节数组类型的条目作为字符串，"attributes"条目(如果有)作为用户属性列表
+     * @param container 私钥容器，见ElementContainer
+     * @return 私钥句柄
+     */
+    public static ABESecretKey fromContainer(ElementContainer container) {
+        ABESecretKey sk = new ABESecretKey(container.getScheme(), container.getPairing());
+        for (String name : container.names()) {
+            byte type = container.getType(name);
+            if (type == ElementContainer.TYPE_G1 || type == ElementContainer.TYPE_G1_COMPRESSED) {
+                sk.put(name, container.getElement(name));
+            } else if (type == ElementContainer.TYPE_BYTES) {
+                sk.putString(name, container.getString(name));
+            }
+        }
+        if (container.contains(ATTRIBUTES) && container.getType(ATTRIBUTES) == ElementContainer.TYPE_INTS) {
+            sk.setAttributes(container.getInts(ATTRIBUTES));
+        }
+        return sk;
+    }
+
+    public static ABESecretKey fromBytes(byte[] data, String scheme, Pairing bp) {
+        return fromContainer(ElementContainer.fromBytes(data, scheme, bp));
+    }
+
+    public static ABESecretKey load(String skFilePath, String scheme, Pairing bp) {
+        return fromContainer(ElementContainer.load(skFilePath, scheme, bp));
+    }
+
+    // G1元素是否压缩由ElementContainer的默认设置决定
+    public ElementContainer toContainer() {
+        return toContainer(ElementContainer.isDefaultCompressG1());
+    }
+
+    public ElementContainer toContainer(boolean compressG1) {
+        ElementContainer container = new ElementContainer(scheme, bp);
+        container.setCompressG1(compressG1);
+        for (Map.Entry<String, Element> e : components.entrySet()) {
+            container.putElement(e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : strings.entrySet()) {
+            container.putString(e.getKey(), e.getValue());
+        }
+        if (attributes != null) {
+            container.putInts(ATTRIBUTES, attributes);
+        }
+        return container;
+    }
+
+    // 编码为字节数组，用于在网络上传输私钥
+    public byte[] toBytes() {
+        return toContainer().toBytes();
+    }
+
+    // 编码为字节数组，compressG1为true时G1元素使用压缩编码
+    public byte[] toBytes(boolean compressG1) {
+        return toContainer(compressG1).toBytes();
+    }
+
+    public void store(String skFilePath) {
+        toContainer().store(skFilePath);
+    }
+
+    public String getScheme() {
+        return scheme;
+    }
+
+    public void put(String name, Element value) {
+        components.put(name, value.getImmutable());
+        preProcessing.remove(name);
+    }
+
+    public Element get(String name) {
+        Element value = components.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("私钥中不存在元素: " + name);
+        }
+        return value;
+    }
+
+    public boolean contains(String name) {
+        return components.containsKey(name);
+    }
+
+    public void putString(String name, String value) {
+        strings.put(name, value);
+    }
+
+    public String getString(String name) {
+        String value = strings.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("私钥中不存在字符串: " + name);
+        }
+        return value;
+    }
+
+    // 设置私钥对应的用户属性，由各方案的密钥生成、委托写入
+    public synchronized void setAttributes(int[] attributes) {
+        this.attributes = attributes.clone();
+        this.attributeSet = null;
+    }
+
+    public synchronized boolean hasAttributes() {
+        return attributes != null;
+    }
+
+    public synchronized int[] getAttributes() {
+        if (attributes == null) {
+            throw new IllegalArgumentException("私钥中没有用户属性列表，请在解密时提供用户属性");
+        }
+        return attributes.clone();
+    }
+
+    // 用户属性集合，第一次调用时构建，同一个私钥解密多个密文时复用
+    public synchronized AttributeSet attributeSet() {
+        if (attributeSet == null) {
+            attributeSet = AttributeSet.of(getAttributes());
+        }
+        return attributeSet;
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(components.keySet());
+    }
+
+    // 获取私钥元素的配对预计算；第一次调用时构建，之后直接复用。可以被多个解密线程同时调用
+    public PairingPreProcessing getPairingPreProcessing(String name) {
+        return preProcessing.computeIfAbsent(name, k -> bp.getPairingPreProcessingFromElement(get(k)));
+    }
+
+    /**
+     * 计算 e(私钥元素name, other)。Type A是对称配对，因此 e(other, 私钥元素) 也可以用这个方法计算
+     * @param name 私钥元素的名称
+     * @param other 另一侧的元素(通常来自密文)
+     * @return GT中的不可变元素
+     */
+    public Element pairing(String name, Element other) {
+        return getPairingPreProcessing(name).pairing(other).getImmutable();
+    }
+}
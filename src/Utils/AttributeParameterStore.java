@@ -0,0 +1,85 @@
+package Utils;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Field;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.function.IntFunction;
+
+/**
+ * 小宇宙方案中按属性编号的公共参数(如CPABEWaters11的h_x)的按需生成与缓存。
+ * 原来setUp为属性宇宙中的每个属性都生成参数，内存和启动时间随宇宙大小线性增长，即使绝大部分属性从未被使用。
+ * 这里每个属性的参数由方案的种子(seed)和属性编号确定性地导出：第一次用到某个属性时才计算，结果放入有容量上限的缓存，
+ * 被淘汰后再次用到时重新导出，得到的值完全相同(缓存由BoundedCache管理)。因此宇宙再大，setUp也只需要生成一个种子；保存参数时也只需要保存种子。
+ * 只适用于种子可以公开的参数：h_x只要求没有已知的离散对数，种子随公共参数一起发布，加密方自己导出h_x。
+ * 由主密钥决定的参数不能这样导出：FIBEa、KPABEa的公钥T_i = g^t_i需要t_i，而t_i由种子导出时加密也要用到种子，
+ * 公共参数就无法脱离主密钥单独发布，所以这两个方案仍在setUp中为每个属性生成t_i和T_i。所有方法都是线程安全的
+ * @param <V> 每个属性的参数类型
+ */
+public class AttributeParameterStore<V> {
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int SEED_LENGTH = 32;
+
+    private final int first; // 最小的属性编号
+    private final int last; // 最大的属性编号
+    private final BoundedCache<Integer, V> cache;
+
+    /**
+     * @param first 最小的属性编号
+     * @param last 最大的属性编号
+     * @param capacity 缓存的属性个数上限
+     * @param derive 由属性编号导出该属性的参数，必须是确定性的
+     */
+    public AttributeParameterStore(int first, int last, int capacity, IntFunction<V> derive) {
+        this.first = first;
+        this.last = last;
+        this.cache = new BoundedCache<>(capacity, derive::apply);
+    }
+
+    /**
+     * 取属性的参数，第一次用到(或已被淘汰)时导出
+     * @param attribute 属性编号
+     * @return 该属性的参数
+     */
+    public V get(int attribute) {
+        if (attribute < first || attribute > last) {
+            throw new IllegalArgumentException("属性" + attribute + "不在属性宇宙[" + first + ", " + last + "]中");
+        }
+        return cache.get(attribute);
+    }
+
+    public int cacheSize() {
+        return cache.size();
+    }
+
+    // 生成新的随机种子
+    public static byte[] newSeed() {
+        byte[] seed = new byte[SEED_LENGTH];
+        new SecureRandom().nextBytes(seed);
+        return seed;
+    }
+
+    /**
+     * 由种子、用途标签和属性编号确定性地导出域中的元素：SHA-256(seed | label | attribute)映射到域上
+     * @param seed 种子
+     * @param label 用途标签，同一个种子导出不同的参数时用不同的标签区分
+     * @param attribute 属性编号
+     * @param field 目标域，如Zr或G1
+     * @return 不可变的元素
+     */
+    public static Element derive(byte[] seed, String label, int attribute, Field<?> field) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(seed);
+            md.update(label.getBytes(StandardCharsets.UTF_8));
+            md.update(new byte[]{(byte) (attribute >>> 24), (byte) (attribute >>> 16), (byte) (attribute >>> 8), (byte) attribute});
+            byte[] digest = md.digest();
+            return field.newElementFromHash(digest, 0, digest.length).getImmutable();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package Utils;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * 不可变的属性集合，用于访问控制树叶子节点的属性匹配、LSSS策略的满足性检查以及求属性交集。
+ * 原来每访问一个叶子节点都要把int[]属性数组整个扫描一遍，一次解密的代价是O(叶子数 × 属性数)；
+ * 这里每个密钥/密文的属性集合只构建一次，之后每次查询都是O(1)。
+ * 属性是较小的非负整数时(属性宇宙方案都是如此)用位图存储；大宇宙方案中出现很大或负的属性时退化为有序数组+二分查找
+ */
+public final class AttributeSet {
+    // 位图的上限：属性都小于这个值时才使用位图，避免一个很大的属性导致位图占用大量内存
+    private static final int BITSET_LIMIT = 1 << 20;
+
+    private final BitSet bits; // 位图表示，有序数组表示时为null
+    private final int[] sorted; // 去重并升序排列的属性
+
+    private AttributeSet(int[] sorted) {
+        this.sorted = sorted;
+        if (sorted.length == 0 || (sorted[0] >= 0 && sorted[sorted.length - 1] < BITSET_LIMIT)) {
+            this.bits = new BitSet(sorted.length == 0 ? 0 : sorted[sorted.length - 1] + 1);
+            for (int attribute : sorted) {
+                bits.set(attribute);
+            }
+        } else {
+            this.bits = null;
+        }
+    }
+
+    /**
+     * 由属性数组构建属性集合，重复的属性只保留一个
+     * @param attributes 属性数组
+     * @return 属性集合
+     */
+    public static AttributeSet of(int... attributes) {
+        int[] sorted = Arrays.stream(attributes).distinct().sorted().toArray();
+        return new AttributeSet(sorted);
+    }
+
+    public boolean contains(int attribute) {
+        if (bits != null) {
+            return attribute >= 0 && bits.get(attribute);
+        }
+        return Arrays.binarySearch(sorted, attribute) >= 0;
+    }
+
+    // 判断other中的每个属性是否都在本集合中
+    public boolean containsAll(AttributeSet other) {
+        for (int attribute : other.sorted) {
+            if (!contains(attribute)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return sorted.length;
+    }
+
+    // 返回升序排列的属性数组(拷贝)
+    public int[] toArray() {
+        return sorted.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof AttributeSet && Arrays.equals(sorted, ((AttributeSet) o).sorted);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(sorted);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(sorted);
+    }
+}
@@ -0,0 +1,110 @@
+package Utils;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 有容量上限的记忆化缓存，H1Cache、TFunction、AttributeParameterStore、LagrangeCache都建立在它之上。
+ * 按键缓存compute的结果，超出容量后淘汰最久未使用的条目，被淘汰的键再次用到时重新计算；compute在锁外执行，
+ * 两个线程同时未命中时会各算一次，所以compute必须是确定性的。
+ * 值为Element时可以用pow求幂：同一个键的求幂次数达到precomputeThreshold后为它的值构建固定底数的预计算表，之后直接查表。
+ * 所有方法都是线程安全的
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+public class BoundedCache<K, V> {
+    private final Function<K, V> compute;
+    private final int precomputeThreshold;
+    private final Map<K, Entry<V>> cache;
+
+    public BoundedCache(int capacity, Function<K, V> compute) {
+        this(capacity, 0, compute);
+    }
+
+    /**
+     * @param capacity 缓存的条目数上限
+     * @param precomputeThreshold 同一个键的求幂次数达到该值时构建预计算表；为0时不构建
+     * @param compute 由键计算值，必须是确定性的
+     */
+    public BoundedCache(int capacity, int precomputeThreshold, Function<K, V> compute) {
+        if (capacity < 1 || precomputeThreshold < 0) {
+            throw new IllegalArgumentException("缓存容量至少为1，预计算阈值不能为负数");
+        }
+        this.compute = compute;
+        this.precomputeThreshold = precomputeThreshold;
+        // accessOrder为true时LinkedHashMap按访问顺序排列，最久未使用的条目在最前面
+        this.cache = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // 取键对应的值，第一次用到(或已被淘汰)时计算
+    public V get(K key) {
+        return entry(key).value;
+    }
+
+    /**
+     * 求键对应的值的exponent次幂，只用于值为Element的缓存。求幂次数达到precomputeThreshold的键使用预计算表，其余的直接求幂
+     * @param key 键
+     * @param exponent Zr中的指数
+     * @return 不可变的元素
+     */
+    public Element pow(K key, Element exponent) {
+        Entry<V> entry = entry(key);
+        Element value = (Element) entry.value;
+        ElementPowPreProcessing pre = entry.preProcessing;
+        if (pre == null && precomputeThreshold > 0 && ++entry.uses >= precomputeThreshold) {
+            // 两个线程同时到达阈值时会各构建一次，结果相同
+            pre = value.getElementPowPreProcessing();
+            entry.preProcessing = pre;
+        }
+        return pre != null ? pre.powZn(exponent).getImmutable() : value.powZn(exponent).getImmutable();
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private Entry<V> entry(K key) {
+        Entry<V> entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+        }
+        if (entry == null) {
+            // 在锁外计算，两个线程同时未命中时会各算一次，结果相同
+            entry = new Entry<>(compute.apply(key));
+            synchronized (cache) {
+                Entry<V> existing = cache.putIfAbsent(key, entry);
+                if (existing != null) {
+                    entry = existing;
+                }
+            }
+        }
+        return entry;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private volatile ElementPowPreProcessing preProcessing;
+        private int uses; // 求幂的次数，只用来决定何时构建预计算表，并发时少计几次没有关系
+
+        private Entry(V value) {
+            this.value = value;
+        }
+    }
+}
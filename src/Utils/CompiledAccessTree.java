@@ -0,0 +1,421 @@
+package Utils;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * 访问控制树的扁平化(编译后)表示。
+ * 各方案的Node树是指针结构：每个节点一个对象、一个List存子节点，遍历时迭代器还要分配队列并复制子节点列表。
+ * 编译后节点按层序编号为0 ~ size-1(根节点为0)，门限、属性、子节点范围、编号都存放在平行的int数组中：
+ * 层序编号下，同一个节点的子节点编号是连续的，子节点的编号总是大于父节点。
+ * 因此自顶向下的遍历(分发秘密)按编号从小到大扫描数组，自底向上的遍历(规划、恢复秘密)按编号从大到小扫描数组，都不需要递归和队列。
+ * 编译后的结构不随Node的修改而更新；各访问控制树类通过Cache取用编译结果：Node的addChild/addChildren调用treeModified使修改计数加一，
+ * Cache取用时只比较根节点的引用和修改计数，不遍历Node树，root被替换或计数变化时重新编译。
+ * 编译后的树是不可变的：加密/密钥生成时分发的秘密值由shareSecret返回，只属于那一次调用，所以同一棵树可以同时被多个线程使用。
+ * 解密的第二阶段可以交给ForkJoinPool：兄弟子树在父节点做拉格朗日插值之前没有数据依赖，可以并行计算
+ * @param <N> 方案的Node类型
+ */
+public final class CompiledAccessTree<N> implements Iterable<N> {
+    public static final int LEAF = -1; // 叶子节点的门限值
+
+    private final Object[] nodes; // 编号 -> 原来的Node对象
+    private final int[] threshold; // 门限值，叶子节点为LEAF
+    private final int[] attribute; // 叶子节点的属性，非叶子节点为-1
+    private final int[] childStart; // 第一个子节点的编号，叶子节点为-1
+    private final int[] childCount; // 子节点个数，叶子节点为0
+    private final int[] sequence; // 叶子节点在所有叶子中的层序序号，非叶子节点在所有非叶子节点中的层序序号，都从1开始
+    private final int[] leaves; // 所有叶子节点的编号，按层序排列
+    private final int maxChildren;
+    private final Map<N, Integer> index; // Node对象 -> 编号，按对象本身索引
+
+    private CompiledAccessTree(Object[] nodes, int[] threshold, int[] attribute, int[] childStart, int[] childCount,
+                               int[] sequence, int[] leaves, int maxChildren, Map<N, Integer> index) {
+        this.nodes = nodes;
+        this.threshold = threshold;
+        this.attribute = attribute;
+        this.childStart = childStart;
+        this.childCount = childCount;
+        this.sequence = sequence;
+        this.leaves = leaves;
+        this.maxChildren = maxChildren;
+        this.index = index;
+    }
+
+    /**
+     * 编译访问控制树
+     * @param root 根节点
+     * @param children 返回节点的子节点列表，叶子节点返回null
+     * @param threshold 返回非叶子节点的门限值
+     * @param attribute 返回叶子节点的属性
+     * @return 编译后的访问控制树
+     */
+    public static <N> CompiledAccessTree<N> compile(N root, Function<N, List<N>> children, ToIntFunction<N> threshold, ToIntFunction<N> attribute) {
+        // 层序遍历：order本身就是队列，head之前的节点已经展开了子节点
+        List<N> order = new ArrayList<>();
+        order.add(root);
+        for (int head = 0; head < order.size(); head++) {
+            List<N> c = children.apply(order.get(head));
+            if (c != null) {
+                order.addAll(c);
+            }
+        }
+
+        int size = order.size();
+        int[] thresholds = new int[size];
+        int[] attributes = new int[size];
+        int[] starts = new int[size];
+        int[] counts = new int[size];
+        int[] sequences = new int[size];
+        int leafCount = 0;
+        int gateCount = 0;
+        int maxChildren = 0;
+        int next = 1; // 下一个被展开的子节点的编号
+        Map<N, Integer> index = new IdentityHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            N n = order.get(i);
+            if (index.put(n, i) != null) {
+                throw new IllegalArgumentException("访问控制树中同一个节点出现了多次");
+            }
+            List<N> c = children.apply(n);
+            if (c == null) {
+                thresholds[i] = LEAF;
+                attributes[i] = attribute.applyAsInt(n);
+                starts[i] = -1;
+                sequences[i] = ++leafCount;
+            } else {
+                thresholds[i] = threshold.applyAsInt(n);
+                attributes[i] = -1;
+                starts[i] = next;
+                counts[i] = c.size();
+                next += c.size();
+                maxChildren = Math.max(maxChildren, c.size());
+                sequences[i] = ++gateCount;
+            }
+        }
+        int[] leaves = new int[leafCount];
+        for (int i = 0, k = 0; i < size; i++) {
+            if (thresholds[i] == LEAF) {
+                leaves[k++] = i;
+            }
+        }
+        return new CompiledAccessTree<>(order.toArray(), thresholds, attributes, starts, counts, sequences, leaves, maxChildren, index);
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    public N node(int i) {
+        return (N) nodes[i];
+    }
+
+    // 返回Node对象的编号，n不属于这棵树时抛出IllegalArgumentException
+    public int indexOf(N n) {
+        Integer i = index.get(n);
+        if (i == null) {
+            throw new IllegalArgumentException("节点不属于这棵访问控制树");
+        }
+        return i;
+    }
+
+    public boolean isLeaf(int i) {
+        return threshold[i] == LEAF;
+    }
+
+    public int threshold(int i) {
+        return threshold[i];
+    }
+
+    public int attribute(int i) {
+        return attribute[i];
+    }
+
+    public int childStart(int i) {
+        return childStart[i];
+    }
+
+    public int childCount(int i) {
+        return childCount[i];
+    }
+
+    public int sequence(int i) {
+        return sequence[i];
+    }
+
+    public int leafCount() {
+        return leaves.length;
+    }
+
+    // 第k个叶子节点(层序，从0开始)的编号
+    public int leaf(int k) {
+        return leaves[k];
+    }
+
+    /**
+     * 加密(CP-ABE)或密钥生成(KP-ABE)时自顶向下分发秘密：每个非叶子节点x选一个threshold-1次的随机多项式q_x，q_x(0)为x的秘密值，
+     * 子节点的秘密值为q_x(index(child))。结果只属于本次调用，树本身不会被修改
+     * @param rootSecret 根节点的秘密值
+     * @param fixedShare 参数为节点编号，返回非null时该节点的秘密值直接取返回值，而不是父节点多项式的值(如FHCPABE的level node)；可以为null
+     * @param bp 双线性对
+     * @return 按节点编号索引的各节点秘密值q_x(0)
+     */
+    public Element[] shareSecret(Element rootSecret, IntFunction<Element> fixedShare, Pairing bp) {
+        Element[] shares = new Element[size()];
+        shares[0] = rootSecret;
+        // 按编号从小到大扫描，父节点总是先于子节点得到秘密值
+        for (int i = 0; i < size(); i++) {
+            if (threshold[i] == LEAF) {
+                continue;
+            }
+            Element[] polynomial = MathUtils.generateRandomPolynomial(threshold[i], shares[i], bp);
+            for (int k = 0; k < childCount[i]; k++) {
+                int c = childStart[i] + k;
+                Element fixed = fixedShare == null ? null : fixedShare.apply(c);
+                // 这里index(child)就是child在children中的下标+1
+                shares[c] = fixed != null ? fixed : MathUtils.qx(polynomial, bp.getZr().newElement(k + 1)).getImmutable();
+            }
+        }
+        return shares;
+    }
+
+    /**
+     * 解密的规划阶段，即两阶段解密的第一阶段：不做配对，只根据属性自底向上计算每个节点满足时需要的最少叶子数，
+     * 在每个门限节点选出叶子数之和最小的threshold个可满足子节点。第二阶段只对选中的叶子计算配对，
+     * 门限满足后被丢弃的子树、在深处才发现不满足的子树都不会计算配对
+     * @param from 子树的根节点编号
+     * @param leafSatisfied 参数为叶子节点的编号，返回该叶子节点的属性是否被满足
+     * @return 按节点编号索引的选择：从from出发沿着选择能到达的非叶子节点为选中子节点的偏移(index(child)-1，升序)，其余为null；
+     *         from无法满足时返回null
+     */
+    public int[][] plan(int from, IntPredicate leafSatisfied) {
+        int size = size();
+        int[] cost = new int[size]; // 满足时需要的最少叶子数，不满足为-1
+        int[][] chosen = new int[size][];
+        int[] satisfied = new int[maxChildren]; // 可满足的子节点，按代价升序(代价相同时保持子节点的顺序)
+        // 子节点的编号总是大于父节点，从后往前扫描时子节点先于父节点处理。from子树中的节点编号都不小于from
+        for (int i = size - 1; i >= from; i--) {
+            if (threshold[i] == LEAF) {
+                cost[i] = leafSatisfied.test(i) ? 1 : -1;
+                continue;
+            }
+            int m = 0;
+            for (int c = childStart[i]; c < childStart[i] + childCount[i]; c++) {
+                if (cost[c] < 0) {
+                    continue;
+                }
+                int j = m++;
+                while (j > 0 && cost[satisfied[j - 1]] > cost[c]) {
+                    satisfied[j] = satisfied[j - 1];
+                    j--;
+                }
+                satisfied[j] = c;
+            }
+            int required = threshold[i];
+            if (required <= 0 || m < required) {
+                cost[i] = -1;
+                continue;
+            }
+            int[] pick = new int[required];
+            int total = 0;
+            for (int k = 0; k < required; k++) {
+                pick[k] = satisfied[k] - childStart[i];
+                total += cost[satisfied[k]];
+            }
+            Arrays.sort(pick);
+            chosen[i] = pick;
+            cost[i] = total;
+        }
+        if (cost[from] < 0) {
+            return null;
+        }
+        // 只保留从from沿着选择能到达的节点
+        boolean[] reachable = new boolean[size];
+        reachable[from] = true;
+        for (int i = from; i < size; i++) {
+            if (!reachable[i]) {
+                chosen[i] = null;
+            } else if (chosen[i] != null) {
+                for (int k : chosen[i]) {
+                    reachable[childStart[i] + k] = true;
+                }
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * 解密的第二阶段：自底向上恢复from的秘密值。只对规划选中的叶子调用leafValue(即只对它们计算配对)，
+     * 每个选中的门限节点用拉格朗日插值合并选中子节点的值：F = ∏ Fz^Δ
+     * @param from 子树的根节点编号
+     * @param plan plan(from, ...)的结果，不能为null
+     * @param leafValue 参数为叶子节点的编号，返回该叶子节点恢复出的GT元素
+     * @param bp 双线性对
+     * @return from恢复出的秘密值
+     */
+    public Element reconstruct(int from, int[][] plan, IntFunction<Element> leafValue, Pairing bp) {
+        if (threshold[from] == LEAF) {
+            return leafValue.apply(from);
+        }
+        Element[] value = new Element[size()];
+        for (int i = size() - 1; i >= from; i--) {
+            int[] chosen = plan[i];
+            if (chosen == null) {
+                continue;
+            }
+            Element[] Fz = new Element[chosen.length];
+            for (int k = 0; k < chosen.length; k++) {
+                int c = childStart[i] + chosen[k];
+                Fz[k] = threshold[c] == LEAF ? leafValue.apply(c) : value[c];
+            }
+            value[i] = combine(chosen, Fz, bp);
+        }
+        return value[from];
+    }
+
+    /**
+     * 与上面的方法相同，但由pool以fork/join的方式计算：每个选中的门限节点把选中的子树分给不同的任务，
+     * 子树(以及其中叶子的配对)并行计算，全部返回后再在父节点做拉格朗日插值。
+     * 规划阶段在每个门限节点只选了threshold个子节点，门限满足后其余的子树一个也不会计算
+     * @param pool 执行计算的线程池，为null时等同于顺序的reconstruct
+     */
+    public Element reconstruct(int from, int[][] plan, IntFunction<Element> leafValue, Pairing bp, ForkJoinPool pool) {
+        if (pool == null) {
+            return reconstruct(from, plan, leafValue, bp);
+        }
+        return pool.invoke(new SubtreeTask(from, plan, leafValue, bp));
+    }
+
+    // 门限节点的值：F = ∏ Fz^Δ，S由选中子节点的index(child)构成
+    private static Element combine(int[] chosen, Element[] Fz, Pairing bp) {
+        int[] S = new int[chosen.length]; // index(child)构成论文中的S
+        for (int k = 0; k < chosen.length; k++) {
+            S[k] = chosen[k] + 1;
+        }
+        Element[] delta = MathUtils.lagrangeCoefficients(S, 0, bp);
+        Element result = bp.getGT().newOneElement();
+        for (int k = 0; k < chosen.length; k++) {
+            result.mul(Fz[k].powZn(delta[k]));
+        }
+        return result.getImmutable();
+    }
+
+    // 计算一棵选中子树的值。第一个子树在当前任务中计算，其余的子树fork给pool中的其他线程
+    private final class SubtreeTask extends RecursiveTask<Element> {
+        private static final long serialVersionUID = 1L;
+
+        private final int i;
+        private final int[][] plan;
+        private final IntFunction<Element> leafValue;
+        private final Pairing bp;
+
+        private SubtreeTask(int i, int[][] plan, IntFunction<Element> leafValue, Pairing bp) {
+            this.i = i;
+            this.plan = plan;
+            this.leafValue = leafValue;
+            this.bp = bp;
+        }
+
+        @Override
+        protected Element compute() {
+            if (threshold[i] == LEAF) {
+                return leafValue.apply(i);
+            }
+            int[] chosen = plan[i];
+            List<SubtreeTask> forked = new ArrayList<>(chosen.length - 1);
+            for (int k = 1; k < chosen.length; k++) {
+                SubtreeTask task = new SubtreeTask(childStart[i] + chosen[k], plan, leafValue, bp);
+                task.fork();
+                forked.add(task);
+            }
+            Element[] Fz = new Element[chosen.length];
+            Fz[0] = new SubtreeTask(childStart[i] + chosen[0], plan, leafValue, bp).compute();
+            for (int k = 1; k < chosen.length; k++) {
+                Fz[k] = forked.get(k - 1).join();
+            }
+            return combine(chosen, Fz, bp);
+        }
+    }
+
+    // 所有访问控制树共用的修改计数，Node的子节点被修改时加一
+    private static final AtomicInteger MODIFICATIONS = new AtomicInteger();
+
+    /**
+     * 通知所有Cache：某棵访问控制树的结构被修改了，下次取用时重新编译。
+     * 各方案Node的addChild/addChildren会调用它；直接修改Node的children、threshold、attribute字段之后需要手动调用
+     */
+    public static void treeModified() {
+        MODIFICATIONS.incrementAndGet();
+    }
+
+    /**
+     * 各访问控制树类共用的编译缓存：get只比较根节点的引用和修改计数，root被替换或treeModified被调用过时重新编译。
+     * 编译结果不可变，多个线程同时重新编译时各自得到相同的结构，缓存中留下哪一个都可以
+     * @param <N> 方案的Node类型
+     */
+    public static final class Cache<N> {
+        private final Function<N, List<N>> children;
+        private final ToIntFunction<N> threshold;
+        private final ToIntFunction<N> attribute;
+        private volatile Snapshot<N> snapshot;
+
+        public Cache(Function<N, List<N>> children, ToIntFunction<N> threshold, ToIntFunction<N> attribute) {
+            this.children = children;
+            this.threshold = threshold;
+            this.attribute = attribute;
+        }
+
+        public CompiledAccessTree<N> get(N root) {
+            // 先读计数再编译：编译期间发生的修改会使计数变化，下次取用时再次编译
+            int version = MODIFICATIONS.get();
+            Snapshot<N> s = snapshot;
+            if (s == null || s.version != version || s.tree.nodes[0] != root) {
+                s = new Snapshot<>(compile(root, children, threshold, attribute), version);
+                snapshot = s;
+            }
+            return s.tree;
+        }
+    }
+
+    // 编译结果与编译时的修改计数
+    private static final class Snapshot<N> {
+        private final CompiledAccessTree<N> tree;
+        private final int version;
+
+        private Snapshot(CompiledAccessTree<N> tree, int version) {
+            this.tree = tree;
+            this.version = version;
+        }
+    }
+
+    // 按层序遍历原来的Node对象，不分配队列
+    @Override
+    public Iterator<N> iterator() {
+        return new Iterator<N>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < nodes.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public N next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return (N) nodes[next++];
+            }
+        };
+    }
+}
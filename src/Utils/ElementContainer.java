@@ -0,0 +1,371 @@
+package Utils;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Field;
+import it.unisa.dia.gas.jpbc.Pairing;
+import it.unisa.dia.gas.jpbc.Point;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * 密文、密钥的二进制容器，代替原来的 Properties + Base64 存储方式。
+ * 所有方案都通过这个类读写密钥和密文，元素以原始字节存储，不再经过Base64膨胀和Properties的文本转义/解析。
+ *
+ * 文件格式(大端序)：
+ * <pre>
+ * 头部:   magic(int, "JABE") | version(byte) | scheme(UTF) | pairingId(long) | count(int)
+ * 索引表: count个 { name(UTF) | type(byte) | offset(int) | length(int) }，offset相对于数据区的起始位置
+ * 数据区: 各个条目的原始字节依次排列
+ * </pre>
+ * pairingId由双线性对参数导出，读取时会检查，防止用不同的参数文件解码出错误的元素。
+ * G1元素可以选择压缩编码(TYPE_G1_COMPRESSED)：只存x坐标和y的符号位，Type A下每个点从128字节减少到65字节，
+ * 代价是解码时要开平方求y(每个点约0.2ms，远小于一次配对)。压缩与否按条目记录类型，读取时两种编码都能识别
+ */
+public class ElementContainer {
+    public static final int MAGIC = 0x4A414245; // "JABE"
+    public static final byte VERSION = 1;
+
+    // 条目类型
+    public static final byte TYPE_G1 = 1;
+    public static final byte TYPE_GT = 2;
+    public static final byte TYPE_ZR = 3;
+    public static final byte TYPE_BYTES = 4;
+    public static final byte TYPE_INTS = 5;
+    public static final byte TYPE_G1_COMPRESSED = 6;
+
+    // 新建的容器是否默认压缩G1元素，对整个进程生效
+    private static volatile boolean defaultCompressG1 = false;
+
+    private final String scheme; // 方案名称，如"CPABE"
+    private final Pairing bp;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private boolean compressG1 = defaultCompressG1; // putElement是否压缩G1元素
+
+    public ElementContainer(String scheme, Pairing bp) {
+        this.scheme = scheme;
+        this.bp = bp;
+    }
+
+    // 设置之后新建的容器是否默认压缩G1元素。各方案的store、toBytes都通过新建的容器编码，因此这个开关对所有方案生效
+    public static void setDefaultCompressG1(boolean compress) {
+        defaultCompressG1 = compress;
+    }
+
+    public static boolean isDefaultCompressG1() {
+        return defaultCompressG1;
+    }
+
+    // 设置这个容器之后存入的G1元素是否压缩编码，已经存入的条目不受影响
+    public void setCompressG1(boolean compress) {
+        this.compressG1 = compress;
+    }
+
+    public boolean isCompressG1() {
+        return compressG1;
+    }
+
+    public String getScheme() {
+        return scheme;
+    }
+
+    public Pairing getPairing() {
+        return bp;
+    }
+
+    // 存入G1、GT或Zr中的元素，类型由元素所在的群决定；开启压缩时G1元素使用压缩编码
+    public void putElement(String name, Element element) {
+        byte type = typeOf(element);
+        if (type == TYPE_G1 && compressG1) {
+            entries.put(name, new Entry(TYPE_G1_COMPRESSED, ((Point<?>) element).toBytesCompressed()));
+        } else {
+            entries.put(name, new Entry(type, element.toBytes()));
+        }
+    }
+
+    public void putBytes(String name, byte[] value) {
+        entries.put(name, new Entry(TYPE_BYTES, value.clone()));
+    }
+
+    public void putString(String name, String value) {
+        entries.put(name, new Entry(TYPE_BYTES, value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public void putInts(String name, int[] value) {
+        byte[] bytes = new byte[value.length * 4];
+        for (int i = 0; i < value.length; i++) {
+            bytes[4 * i] = (byte) (value[i] >>> 24);
+            bytes[4 * i + 1] = (byte) (value[i] >>> 16);
+            bytes[4 * i + 2] = (byte) (value[i] >>> 8);
+            bytes[4 * i + 3] = (byte) value[i];
+        }
+        entries.put(name, new Entry(TYPE_INTS, bytes));
+    }
+
+    // 取出元素并解码为不可变的Element
+    public Element getElement(String name) {
+        Entry entry = getEntry(name);
+        return decode(bp, name, entry.type, entry.bytes);
+    }
+
+    // 条目的原始字节，不复制也不解码，供ABECiphertext按需解码。调用方不能修改返回的数组
+    byte[] getRaw(String name) {
+        return getEntry(name).bytes;
+    }
+
+    // 直接存入已经编码好的条目，不经过解码再编码
+    void putRaw(String name, byte type, byte[] bytes) {
+        entries.put(name, new Entry(type, bytes));
+    }
+
+    // 该类型的原始字节是否与这个容器的G1编码方式一致，一致时可以直接putRaw
+    boolean acceptsRaw(byte type) {
+        return compressG1 ? type != TYPE_G1 : type != TYPE_G1_COMPRESSED;
+    }
+
+    // 是否为G1、GT或Zr中的元素(包括压缩的G1元素)
+    public static boolean isElementType(byte type) {
+        return type == TYPE_G1 || type == TYPE_G1_COMPRESSED || type == TYPE_GT || type == TYPE_ZR;
+    }
+
+    // 把条目的原始字节解码为G1、GT或Zr中不可变的Element
+    static Element decode(Pairing bp, String name, byte type, byte[] bytes) {
+        if (type == TYPE_G1_COMPRESSED) {
+            // 由x坐标开平方求出y，再按符号位选取
+            Element point = bp.getG1().newElement();
+            ((Point<?>) point).setFromBytesCompressed(bytes);
+            return point.getImmutable();
+        }
+        Field<?> field;
+        switch (type) {
+            case TYPE_G1: field = bp.getG1(); break;
+            case TYPE_GT: field = bp.getGT(); break;
+            case TYPE_ZR: field = bp.getZr(); break;
+            default: throw new IllegalArgumentException("条目不是群元素: " + name);
+        }
+        return field.newElementFromBytes(bytes).getImmutable();
+    }
+
+    public byte[] getBytes(String name) {
+        return getEntry(name, TYPE_BYTES).bytes.clone();
+    }
+
+    public String getString(String name) {
+        return new String(getEntry(name, TYPE_BYTES).bytes, StandardCharsets.UTF_8);
+    }
+
+    public int[] getInts(String name) {
+        byte[] bytes = getEntry(name, TYPE_INTS).bytes;
+        int[] value = new int[bytes.length / 4];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = ((bytes[4 * i] & 0xff) << 24) | ((bytes[4 * i + 1] & 0xff) << 16)
+                    | ((bytes[4 * i + 2] & 0xff) << 8) | (bytes[4 * i + 3] & 0xff);
+        }
+        return value;
+    }
+
+    public byte getType(String name) {
+        return getEntry(name).type;
+    }
+
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * 编码为字节数组
+     * @return 容器的二进制形式
+     */
+    public byte[] toBytes() {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(scheme);
+            out.writeLong(pairingId(bp));
+            out.writeInt(entries.size());
+            // 索引表
+            int offset = 0;
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeByte(e.getValue().type);
+                out.writeInt(offset);
+                out.writeInt(e.getValue().bytes.length);
+                offset += e.getValue().bytes.length;
+            }
+            // 数据区
+            for (Entry entry : entries.values()) {
+                out.write(entry.bytes);
+            }
+            out.flush();
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 从字节数组解码容器
+     * @param data 容器的二进制形式
+     * @param bp 双线性对，必须与写入时使用的参数一致
+     * @return 容器
+     */
+    public static ElementContainer fromBytes(byte[] data, Pairing bp) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("不是有效的密文/密钥容器");
+            }
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("不支持的容器版本: " + version);
+            }
+            String scheme = in.readUTF();
+            if (in.readLong() != pairingId(bp)) {
+                throw new IllegalArgumentException("容器的双线性对参数与当前参数不一致");
+            }
+            int count = in.readInt();
+            String[] names = new String[count];
+            byte[] types = new byte[count];
+            int[] offsets = new int[count];
+            int[] lengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = in.readUTF();
+                types[i] = in.readByte();
+                offsets[i] = in.readInt();
+                lengths[i] = in.readInt();
+            }
+            int dataStart = data.length - in.available();
+
+            ElementContainer container = new ElementContainer(scheme, bp);
+            for (int i = 0; i < count; i++) {
+                int from = dataStart + offsets[i];
+                if (offsets[i] < 0 || lengths[i] < 0 || from + lengths[i] > data.length) {
+                    throw new IllegalArgumentException("容器条目越界: " + names[i]);
+                }
+                container.entries.put(names[i], new Entry(types[i], Arrays.copyOfRange(data, from, from + lengths[i])));
+            }
+            return container;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("容器格式错误", e);
+        }
+    }
+
+    /**
+     * 将容器存储到文件，父目录不存在时会自动创建
+     * @param filePath 文件路径
+     */
+    public void store(String filePath) {
+        try {
+            Path path = Paths.get(filePath);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.write(path, toBytes());
+        } catch (IOException ex) {
+            throw new RuntimeException("存储容器文件时出错: " + filePath, ex);
+        }
+    }
+
+    /**
+     * 从文件加载容器，并检查方案名称
+     * @param filePath 文件路径
+     * @param scheme 期望的方案名称
+     * @param bp 双线性对
+     * @return 容器
+     */
+    public static ElementContainer load(String filePath, String scheme, Pairing bp) {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(Paths.get(filePath));
+        } catch (IOException ex) {
+            throw new RuntimeException("加载容器文件时出错: " + filePath, ex);
+        }
+        return fromBytes(data, scheme, bp);
+    }
+
+    /**
+     * 从字节数组解码容器，并检查方案名称
+     * @param data 容器的二进制形式
+     * @param scheme 期望的方案名称
+     * @param bp 双线性对
+     * @return 容器
+     */
+    public static ElementContainer fromBytes(byte[] data, String scheme, Pairing bp) {
+        ElementContainer container = fromBytes(data, bp);
+        if (!container.scheme.equals(scheme)) {
+            throw new IllegalArgumentException("容器属于方案 " + container.scheme + "，而不是 " + scheme);
+        }
+        return container;
+    }
+
+    // 双线性对参数标识：由Zr的阶、G1所在曲线的基域模数q、G1的阶以及G1、GT元素的字节长度导出。
+    // 只用r和字节长度时，r相同、q的位数相同而q不同的两个参数文件会得到相同的标识
+    public static long pairingId(Pairing bp) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(bp.getZr().getOrder().toByteArray());
+            Element g1 = bp.getG1().newElement();
+            if (g1 instanceof Point) {
+                md.update(((Point<?>) g1).getX().getField().getOrder().toByteArray());
+            }
+            md.update(bp.getG1().getOrder().toByteArray());
+            md.update(Integer.toString(bp.getG1().getLengthInBytes()).getBytes(StandardCharsets.UTF_8));
+            md.update(Integer.toString(bp.getGT().getLengthInBytes()).getBytes(StandardCharsets.UTF_8));
+            byte[] digest = md.digest();
+            long id = 0;
+            for (int i = 0; i < 8; i++) {
+                id = (id << 8) | (digest[i] & 0xff);
+            }
+            return id;
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private byte typeOf(Element element) {
+        Field<?> field = element.getField();
+        if (field.equals(bp.getG1())) return TYPE_G1;
+        if (field.equals(bp.getGT())) return TYPE_GT;
+        if (field.equals(bp.getZr())) return TYPE_ZR;
+        throw new IllegalArgumentException("元素不属于当前双线性对的G1、GT或Zr");
+    }
+
+    private Entry getEntry(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("容器中不存在条目: " + name);
+        }
+        return entry;
+    }
+
+    private Entry getEntry(String name, byte type) {
+        Entry entry = getEntry(name);
+        if (entry.type != type) {
+            throw new IllegalArgumentException("条目类型不匹配: " + name);
+        }
+        return entry;
+    }
+
+    // 容器中的一个条目：类型 + 原始字节
+    private static class Entry {
+        private final byte type;
+        private final byte[] bytes;
+
+        private Entry(byte type, byte[] bytes) {
+            this.type = type;
+            this.bytes = bytes;
+        }
+    }
+}
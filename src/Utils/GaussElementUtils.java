@@ -100,6 +100,93 @@ public class GaussElementUtils {
         return wVector;
     }
 
+    /**
+     * 求解 (1*m) wVector * (m*n) matrix = (1*n) targetVector 的一个基本解。
+     * 与computeMatrixEquation不同，这里允许方程组有无穷多解：采用高斯-约当消元，自由变量全部取0，
+     * 因此解向量中非零分量的个数不超过矩阵的秩，且非零分量对应的行线性无关(无法再删去任何一行)。
+     * 时间复杂度为O(n^2 * m)次Zr运算。
+     *
+     * @param matrix       m行n列，每一行对应一个未知数
+     * @param targetVector 长度为n的目标向量
+     * @return 长度为m的解向量；如果方程组无解则返回null
+     */
+    public static Element[] computeBasicSolution(Element[][] matrix, Element[] targetVector) {
+        if (matrix.length == 0 || targetVector.length == 0) {
+            throw new IllegalArgumentException("Coefficient matrix M must not be empty.");
+        }
+        int m = matrix.length;
+        int n = targetVector.length;
+
+        // 构建增广矩阵 (matrix^T | targetVector)，维度是 n 行 m + 1 列
+        Element[][] augmentedMatrix = new Element[n][m + 1];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                if (matrix[j].length != n) {
+                    throw new IllegalArgumentException(
+                            "Length of row " + j + " (" + matrix[j].length + ") must match the length of target vector (" + n + ")."
+                    );
+                }
+                augmentedMatrix[i][j] = matrix[j][i].duplicate();
+            }
+            augmentedMatrix[i][m] = targetVector[i].duplicate();
+        }
+
+        // 高斯-约当消元：pivotColumns[r]记录第r个主元所在的列(即未知数的下标)
+        int[] pivotColumns = new int[n];
+        int rank = 0;
+        for (int k = 0; k < m && rank < n; k++) {
+            int pivotRow = -1;
+            for (int i = rank; i < n; i++) {
+                if (!augmentedMatrix[i][k].isZero()) {
+                    pivotRow = i;
+                    break;
+                }
+            }
+            // 该列全为零，对应的未知数是自由变量，取0
+            if (pivotRow == -1) {
+                continue;
+            }
+
+            Element[] temp = augmentedMatrix[rank];
+            augmentedMatrix[rank] = augmentedMatrix[pivotRow];
+            augmentedMatrix[pivotRow] = temp;
+
+            // 主元归一化
+            Element inverse = augmentedMatrix[rank][k].duplicate().invert();
+            for (int j = k; j <= m; j++) {
+                augmentedMatrix[rank][j].mul(inverse);
+            }
+
+            // 消去其余所有行在第k列上的分量
+            for (int i = 0; i < n; i++) {
+                if (i == rank || augmentedMatrix[i][k].isZero()) continue;
+                Element factor = augmentedMatrix[i][k].duplicate();
+                for (int j = k; j <= m; j++) {
+                    augmentedMatrix[i][j].sub(factor.duplicate().mul(augmentedMatrix[rank][j]));
+                }
+            }
+
+            pivotColumns[rank] = k;
+            rank++;
+        }
+
+        // 检查无解情况
+        for (int i = rank; i < n; i++) {
+            if (!augmentedMatrix[i][m].isZero()) {
+                return null;
+            }
+        }
+
+        Element[] wVector = new Element[m];
+        for (int j = 0; j < m; j++) {
+            wVector[j] = targetVector[0].getField().newZeroElement().getImmutable();
+        }
+        for (int i = 0; i < rank; i++) {
+            wVector[pivotColumns[i]] = augmentedMatrix[i][m].getImmutable();
+        }
+        return wVector;
+    }
+
     public static void test1() {
         // 示例代码：调用computeMatrixEquation
         // 创建Element矩阵和常量向量后测试即可
@@ -0,0 +1,102 @@
+package Utils;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Field;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * MathUtils.H1(哈希到G1)的结果缓存。
+ * 密钥生成对每个属性、加密对每个叶子节点、委托对每个属性都要计算一次H1，每次都要新建MessageDigest并把摘要映射到曲线上；
+ * 而属性的取值范围小且固定，同一个属性会被反复哈希。这里按(G1, 字符串)缓存哈希结果，不同的双线性对参数各自缓存。
+ * 被使用次数达到precomputeThreshold的属性(热点属性)还会构建固定底数的预计算表，之后H1(s)^x直接查表计算。
+ * 容量上限、淘汰和预计算表都由BoundedCache管理；所有方法都是线程安全的
+ */
+public class H1Cache {
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int DEFAULT_PRECOMPUTE_THRESHOLD = 16;
+
+    // 所有方案共享的缓存
+    private static final H1Cache SHARED = new H1Cache(DEFAULT_CAPACITY, DEFAULT_PRECOMPUTE_THRESHOLD);
+
+    private final BoundedCache<Key, Element> cache;
+
+    /**
+     * @param capacity 缓存的条目数上限
+     * @param precomputeThreshold 同一个字符串的求幂次数达到该值时构建预计算表；为0时不构建预计算表
+     */
+    public H1Cache(int capacity, int precomputeThreshold) {
+        this.cache = new BoundedCache<>(capacity, precomputeThreshold, H1Cache::compute);
+    }
+
+    public static H1Cache shared() {
+        return SHARED;
+    }
+
+    /**
+     * String => g ∈ G1，结果与MathUtils.H1相同
+     * @param string 被哈希的字符串(通常是属性)
+     * @param bp 双线性对
+     * @return 不可变的G1元素
+     */
+    public Element hash(String string, Pairing bp) {
+        return cache.get(new Key(bp.getG1(), string));
+    }
+
+    /**
+     * 计算H1(string)^exponent。热点字符串使用预计算表，其余的直接求幂
+     * @param string 被哈希的字符串(通常是属性)
+     * @param exponent Zr中的指数
+     * @param bp 双线性对
+     * @return 不可变的G1元素
+     */
+    public Element pow(String string, Element exponent, Pairing bp) {
+        return cache.pow(new Key(bp.getG1(), string), exponent);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    private static Element compute(Key key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(key.string.getBytes());
+            byte[] m = md.digest();
+            return key.g1.newElementFromHash(m, 0, m.length).getImmutable();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // 缓存的键：G1(按对象本身区分不同的双线性对参数)、被哈希的字符串
+    private static class Key {
+        private final Field<?> g1;
+        private final String string;
+
+        private Key(Field<?> g1, String string) {
+            this.g1 = g1;
+            this.string = string;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return g1 == other.g1 && string.equals(other.string);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(g1) + string.hashCode();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package Utils;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * 拉格朗日插值系数的缓存。
+ * 访问控制树的每个门限节点、FIBE的每次解密都要计算一组系数 Δ_{i,S}(x)，i取遍S中的每个下标。
+ * 同一个策略下的密文在解密时，门限节点选出的下标集合S和求值点x总是那几种，所以按(S, x)缓存整组系数。
+ * 缓存建立在BoundedCache之上，有容量上限，超出后淘汰最久未使用的一组；所有方法都是线程安全的，多个解密线程可以共享同一个缓存。
+ * 缓存的系数都是不可变的Element，可以直接交给多个线程使用
+ */
+public class LagrangeCache {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    // 所有方案共享的缓存
+    private static final LagrangeCache SHARED = new LagrangeCache(DEFAULT_CAPACITY);
+
+    // 不构建预计算表：缓存的值是系数数组，不是求幂的底数
+    private final BoundedCache<Key, Element[]> cache;
+
+    public LagrangeCache(int capacity) {
+        this.cache = new BoundedCache<>(capacity, key -> compute(key.s, key.x, key.bp));
+    }
+
+    public static LagrangeCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * 计算下标集合s在点x处的全部拉格朗日系数
+     * @param s 下标集合，不能有重复的下标
+     * @param x 求值点
+     * @param bp 双线性对
+     * @return 与s对应的系数数组，第k个元素为Δ_{s[k],S}(x)
+     */
+    public Element[] coefficients(int[] s, int x, Pairing bp) {
+        // S作为集合与顺序无关，按升序排列后作为键，使不同顺序的同一集合共用一组系数
+        int[] sorted = s.clone();
+        Arrays.sort(sorted);
+        Element[] sortedCoefficients = cache.get(new Key(bp, sorted, x));
+        Element[] result = new Element[s.length];
+        for (int k = 0; k < s.length; k++) {
+            result[k] = sortedCoefficients[Arrays.binarySearch(sorted, s[k])];
+        }
+        return result;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    // Δ_{i,S}(x) = Π_{j∈S, j≠i} (x-j)/(i-j)。
+    // 分子、分母分别连乘，所有分母通过MathUtils.batchInvert一起求逆，只做一次求逆
+    private static Element[] compute(int[] s, int x, Pairing bp) {
+        int m = s.length;
+        Element[] numerators = new Element[m];
+        Element[] denominators = new Element[m];
+        for (int k = 0; k < m; k++) {
+            Element numerator = bp.getZr().newOneElement();
+            Element denominator = bp.getZr().newOneElement();
+            for (int j : s) {
+                if (j != s[k]) {
+                    numerator.mul(bp.getZr().newElement(x - j));
+                    denominator.mul(bp.getZr().newElement(s[k] - j));
+                }
+            }
+            if (denominator.isZero()) {
+                throw new IllegalArgumentException("下标集合中有重复的下标: " + Arrays.toString(s));
+            }
+            numerators[k] = numerator;
+            denominators[k] = denominator;
+        }
+
+        Element[] denominatorInverses = MathUtils.batchInvert(denominators);
+        Element[] coefficients = new Element[m];
+        for (int k = 0; k < m; k++) {
+            coefficients[k] = numerators[k].mul(denominatorInverses[k]).getImmutable();
+        }
+        return coefficients;
+    }
+
+    // 缓存的键：Zr的阶(区分不同的双线性对参数)、升序排列的下标集合、求值点。bp只用于未命中时计算系数，不参与比较
+    private static class Key {
+        private final BigInteger order;
+        private final int[] s;
+        private final int x;
+        private final Pairing bp;
+        private final int hash;
+
+        private Key(Pairing bp, int[] s, int x) {
+            this.order = bp.getZr().getOrder();
+            this.s = s;
+            this.x = x;
+            this.bp = bp;
+            this.hash = 31 * (31 * order.hashCode() + Arrays.hashCode(s)) + x;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return x == other.x && Arrays.equals(s, other.s) && order.equals(other.order);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package Utils;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
+import it.unisa.dia.gas.jpbc.Field;
+
+import java.math.BigInteger;
+
+/**
+ * 按需构建的固定底数预计算表。
+ * 构建预计算表本身要做大量的群运算，setUp或loadParameters时一次性为所有底数构建会拖慢进程启动；
+ * 这里第一次求幂时才构建，只做加密的进程不会为密钥生成才用到的底数付出代价。线程安全：两个线程同时第一次求幂时会各构建一次，结果相同
+ */
+public class LazyPowPreProcessing implements ElementPowPreProcessing {
+    private final Element base;
+    private volatile ElementPowPreProcessing table;
+
+    public LazyPowPreProcessing(Element base) {
+        this.base = base.getImmutable();
+    }
+
+    private ElementPowPreProcessing table() {
+        ElementPowPreProcessing t = table;
+        if (t == null) {
+            t = base.getElementPowPreProcessing();
+            table = t;
+        }
+        return t;
+    }
+
+    @Override
+    public Field<?> getField() {
+        return base.getField();
+    }
+
+    @Override
+    public Element pow(BigInteger n) {
+        return table().pow(n);
+    }
+
+    @Override
+    public Element powZn(Element n) {
+        return table().powZn(n);
+    }
+
+    @Override
+    public byte[] toBytes() {
+        return table().toBytes();
+    }
+}
@@ -5,25 +5,22 @@ import it.unisa.dia.gas.jpbc.Pairing;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 
 public class MathUtils {
 
     /**
      * String => g ∈ G1
+     * 结果由H1Cache缓存，同一个属性不会被重复哈希
      * */
     public static Element H1(String string, Pairing bp) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(string.getBytes());
-            byte[] m = md.digest();
-            return bp.getG1().newElementFromHash(m, 0, m.length).getImmutable();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
+        return H1Cache.shared().hash(string, bp);
+    }
+
+    /**
+     * 计算H1(string)^exponent，热点属性使用H1Cache中的预计算表
+     * */
+    public static Element H1Pow(String string, Element exponent, Pairing bp) {
+        return H1Cache.shared().pow(string, exponent, bp);
     }
 
     /**
@@ -158,26 +155,29 @@ public class MathUtils {
      * @return 如果两个集合中至少有 requiredCount 个公共属性，则返回这些公共属性的数组；否则返回 null。
      */
     public static int[] findCommonAttributes(int[] attributeSet1, int[] attributeSet2, int requiredCount) {
-        Set<Integer> messageAttributeSet = new HashSet<>();
-        for (int attribute : attributeSet1) {
-            messageAttributeSet.add(attribute);
-        }
-        List<Integer> commonAttributes = new ArrayList<>();
+        return findCommonAttributes(AttributeSet.of(attributeSet1), attributeSet2, requiredCount);
+    }
+
+    /**
+     * 与上面的方法相同，第一个属性集合已经构建为AttributeSet(通常每个密钥/密文只构建一次)，查找时不再重复构建集合
+     *
+     * @param attributeSet1 第一个属性集合。
+     * @param attributeSet2 第二个属性集合，公共属性按照它的顺序返回。
+     * @param requiredCount 需要返回的公共属性的最小数量。
+     * @return 如果两个集合中至少有 requiredCount 个公共属性，则返回前 requiredCount 个公共属性；否则返回 null。
+     */
+    public static int[] findCommonAttributes(AttributeSet attributeSet1, int[] attributeSet2, int requiredCount) {
+        int[] subset = new int[requiredCount];
+        int found = 0;
         for (int attribute : attributeSet2) {
-            if (messageAttributeSet.contains(attribute)) {
-                commonAttributes.add(attribute);
+            if (found == requiredCount) {
+                break;
             }
-        }
-        if (commonAttributes.size() >= requiredCount) {
-            // Return the first requiredCount common attributes
-            int[] subset = new int[requiredCount];
-            for (int i = 0; i < requiredCount; i++) {
-                subset[i] = commonAttributes.get(i);
+            if (attributeSet1.contains(attribute)) {
+                subset[found++] = attribute;
             }
-            return subset;
-        } else {
-            return null;
         }
+        return found == requiredCount ? subset : null;
     }
 
     /**
@@ -189,6 +189,12 @@ public class MathUtils {
      * @return 在给定点 x 处拉格朗日基多项式的值。
      */
     public static Element computeLagrangeBasis(int i, int[] s, int x, Pairing bp) {
+        // i属于s时(所有方案都是这种用法)从缓存中取整组系数
+        for (int k = 0; k < s.length; k++) {
+            if (s[k] == i) {
+                return lagrangeCoefficients(s, x, bp)[k];
+            }
+        }
         Element iElement = bp.getZr().newElement(i).getImmutable();
         Element xElement = bp.getZr().newElement(x).getImmutable();
         Element delta = bp.getZr().newOneElement().getImmutable();
@@ -205,27 +211,56 @@ public class MathUtils {
     }
 
     /**
-     * 检查数组a是否是数组b的子集，使用Set进行快速检查。
+     * 计算s中每个元素在给定点 x 处的拉格朗日基多项式的值。整组系数由LagrangeCache缓存，只在第一次遇到(s, x)时计算，计算时只做一次求逆
+     *
+     * @param s 一个整数数组，表示已知数据点的 x 坐标，不能有重复。
+     * @param x 要计算拉格朗日基多项式的点。
+     * @return 与s对应的系数数组，第k个元素为 Δ_{s[k],S}(x)，都是不可变的Element。
+     */
+    public static Element[] lagrangeCoefficients(int[] s, int x, Pairing bp) {
+        return LagrangeCache.shared().coefficients(s, x, bp);
+    }
+
+    /**
+     * 批量求逆(Montgomery技巧)：n个元素只做一次求逆和3(n-1)次乘法，代替n次求逆。
+     * 先求前缀积 p_k = a_0 * ... * a_k，对p_(n-1)求逆，再从后往前依次还原出每个元素的逆
+     *
+     * @param elements 待求逆的元素，同属一个域(一般为Zr)，都不能为0。
+     * @return 与elements对应的逆元数组，都是不可变的Element；elements本身不会被修改。
+     */
+    public static Element[] batchInvert(Element[] elements) {
+        int n = elements.length;
+        Element[] inverses = new Element[n];
+        if (n == 0) {
+            return inverses;
+        }
+        // prefix[k] = elements[0] * ... * elements[k]
+        Element[] prefix = new Element[n];
+        prefix[0] = elements[0].duplicate();
+        for (int k = 1; k < n; k++) {
+            prefix[k] = prefix[k - 1].duplicate().mul(elements[k]);
+        }
+        if (prefix[n - 1].isZero()) {
+            throw new IllegalArgumentException("批量求逆的元素中有0");
+        }
+        Element inverse = prefix[n - 1].duplicate().invert(); // 唯一的一次求逆
+        for (int k = n - 1; k > 0; k--) {
+            // 此时inverse = (elements[0] * ... * elements[k])^(-1)
+            inverses[k] = inverse.duplicate().mul(prefix[k - 1]).getImmutable();
+            inverse.mul(elements[k]);
+        }
+        inverses[0] = inverse.getImmutable();
+        return inverses;
+    }
+
+    /**
+     * 检查数组a是否是数组b的子集，使用AttributeSet进行快速检查。
      *
      * @param a 待检查的数组（子集候选）
      * @param b 要检查的数组（超集候选）
      * @return 如果a是b的子集，则返回true；否则返回false。
      */
     public static boolean isSubsetUsingSet(int[] a, int[] b) {
-        // 将数组b转换为Set，以便快速查找
-        Set<Integer> setB = new HashSet<>();
-        for (int element : b) {
-            setB.add(element);
-        }
-
-        // 检查数组a中的每个元素是否都在集合b中
-        for (int element : a) {
-            if (!setB.contains(element)) {
-                return false; // 如果任何一个元素不在集合b中，返回false
-            }
-        }
-
-        // 如果所有元素都在集合b中，返回true
-        return true;
+        return AttributeSet.of(b).containsAll(AttributeSet.of(a));
     }
 }
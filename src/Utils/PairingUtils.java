@@ -0,0 +1,126 @@
+package Utils;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+import it.unisa.dia.gas.jpbc.PairingPreProcessing;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PairingUtils {
+
+    /**
+     * 计算配对乘积 Π e(left[i], right[i])^exponents[i]
+     * 解密时常见的形式是很多项配对再各自做GT上的指数运算，逐项计算需要|I|次完整配对和|I|次GT指数运算。这里的做法是：
+     * 1. 指数为0的项直接跳过；指数为±1的项把符号移到G1上(取逆几乎没有代价)；
+     * 2. 指数相同(或互为相反数)的项归为一组，每组只做一次乘积配对bp.pairing(Element[], Element[])和一次GT指数运算；
+     * 3. 同一组内right相同的项在G1上先相乘，合并成一次配对：e(a1, b)·e(a2, b) = e(a1·a2, b)。
+     * 注意：Type A曲线上G1的指数运算比GT的指数运算慢得多，所以一般的指数不会被移到G1上
+     * @param bp 双线性对
+     * @param left 配对的左侧元素(G1)
+     * @param right 配对的右侧元素(G1)，与left一一对应
+     * @param exponents 每一项的指数(Zr)，为null时表示所有指数都是1
+     * @return GT中的不可变元素
+     */
+    public static Element productOfPairings(Pairing bp, Element[] left, Element[] right, Element[] exponents) {
+        return productOfPairings(bp, left, right, null, exponents);
+    }
+
+    /**
+     * 与上面的方法相同，但right一侧可以附带配对预计算(通常是长期使用的私钥元素，见ABESecretKey)。
+     * JPBC的PairingPreProcessing.pairing每次调用都带一次完整的最终幂运算，而乘积配对整组只做一次最终幂运算，
+     * 所以只有一组内只剩一项时才用预计算完成配对(Type A是对称配对，e(a, b) = e(b, a))；
+     * 多于一项的组忽略预计算，整组合并成一次乘积配对，每组只做一次最终幂运算
+     * @param rightPreProcessing 与right一一对应的配对预计算，可以为null或者包含null
+     */
+    public static Element productOfPairings(Pairing bp, Element[] left, Element[] right, PairingPreProcessing[] rightPreProcessing, Element[] exponents) {
+        if (left.length != right.length || (exponents != null && exponents.length != left.length)
+                || (rightPreProcessing != null && rightPreProcessing.length != left.length)) {
+            throw new IllegalArgumentException("配对乘积的左右元素与指数的个数不一致！");
+        }
+        BigInteger order = bp.getZr().getOrder();
+
+        // 按照指数分组：key为规范化之后的指数(w与r-w中较小的那个)，value为该组内的(left, right)项
+        Map<BigInteger, List<Term>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < left.length; i++) {
+            Element a = left[i];
+            BigInteger w = exponents == null ? BigInteger.ONE : exponents[i].toBigInteger();
+            if (w.signum() == 0) {
+                continue;
+            }
+            // e(a, b)^(-w) = e(a^(-1), b)^w，将符号移到G1上
+            BigInteger negW = order.subtract(w);
+            if (negW.compareTo(w) < 0) {
+                w = negW;
+                a = a.duplicate().invert();
+            }
+            List<Term> group = groups.computeIfAbsent(w, k -> new ArrayList<>());
+            addMerged(group, a, right[i], rightPreProcessing == null ? null : rightPreProcessing[i]);
+        }
+
+        Element result = bp.getGT().newOneElement();
+        for (Map.Entry<BigInteger, List<Term>> entry : groups.entrySet()) {
+            List<Term> terms = entry.getValue();
+            Element groupProduct;
+            if (terms.size() == 1) {
+                Term term = terms.get(0);
+                groupProduct = term.pre != null ? term.pre.pairing(term.a) : bp.pairing(term.a, term.b);
+            } else {
+                Element[] as = new Element[terms.size()];
+                Element[] bs = new Element[terms.size()];
+                for (int k = 0; k < terms.size(); k++) {
+                    as[k] = terms.get(k).a;
+                    bs[k] = terms.get(k).b;
+                }
+                groupProduct = bp.pairing(as, bs);
+            }
+            if (!entry.getKey().equals(BigInteger.ONE)) {
+                groupProduct = groupProduct.powZn(bp.getZr().newElement(entry.getKey()));
+            }
+            result.mul(groupProduct);
+        }
+        return result.getImmutable();
+    }
+
+    /**
+     * 计算 e(a1, b1) / e(a2, b2)，访问树叶子节点的求值都是这种形式。
+     * 分母的指数-1由productOfPairings移到G1上(a2取逆)，两项合并成一次乘积配对，只做一次最终幂运算
+     * @return GT中的不可变元素
+     */
+    public static Element pairingQuotient(Pairing bp, Element a1, Element b1, Element a2, Element b2) {
+        Element one = bp.getZr().newOneElement();
+        Element minusOne = one.duplicate().negate();
+        return productOfPairings(bp, new Element[]{a1, a2}, new Element[]{b1, b2}, new Element[]{one, minusOne});
+    }
+
+    // 同一组内如果已经有相同right的项，就在G1上把left相乘合并；否则新增一项
+    private static void addMerged(List<Term> group, Element a, Element b, PairingPreProcessing pre) {
+        for (Term term : group) {
+            if (term.b == b || term.b.isEqual(b)) {
+                term.a = term.a.duplicate().mul(a);
+                if (term.pre == null) {
+                    term.pre = pre;
+                }
+                return;
+            }
+        }
+        group.add(new Term(a, b, pre));
+    }
+
+    // 配对乘积中的一项 e(a, b)，pre为b的配对预计算(可以为null)
+    private static class Term {
+        private Element a;
+        private final Element b;
+        private PairingPreProcessing pre;
+
+        private Term(Element a, Element b, PairingPreProcessing pre) {
+            this.a = a;
+            this.b = b;
+            this.pre = pre;
+        }
+    }
+
+}
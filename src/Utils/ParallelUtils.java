@@ -0,0 +1,46 @@
+package Utils;
+
+import it.unisa.dia.gas.jpbc.Element;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * 把相互独立的群运算分给ForkJoinPool并行计算的工具类。
+ * 加密时每个叶子节点(或LSSS矩阵的每一行)的密文分量只依赖于它自己的秘密值，彼此之间没有数据依赖，
+ * 可以交给多个线程同时计算。结果按下标存放，与线程的执行顺序无关，调用方再按原来的顺序写入密文，密文的内容和布局与顺序计算完全一致
+ */
+public class ParallelUtils {
+
+    /**
+     * 计算task(0) ~ task(n-1)
+     * @param pool 执行计算的线程池；为null时在当前线程中依次计算
+     * @param n 任务个数
+     * @param task 参数为任务下标，返回该下标的结果(可以返回null)
+     * @return 第i个元素为task(i)的结果
+     */
+    public static Element[][] map(ForkJoinPool pool, int n, IntFunction<Element[]> task) {
+        Element[][] results = new Element[n][];
+        if (pool == null || n < 2) {
+            for (int i = 0; i < n; i++) {
+                results[i] = task.apply(i);
+            }
+            return results;
+        }
+        // 在pool中运行并行流，计算会分配到pool的工作线程上，而不是公共线程池
+        try {
+            pool.submit(() -> IntStream.range(0, n).parallel().forEach(i -> results[i] = task.apply(i))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("并行计算被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("并行计算出错", e.getCause());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,108 @@
+package Utils;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+/**
+ * 大宇宙方案(KPABEb、FIBEb)中的函数 T(x) = g2^(x^n) * Π_{i=1}^{n+1} t_i^Δ_{i,N}(x)，N = {1, 2, …… n+1}。
+ * 原来每次求T(x)都要重建N、计算n+1个拉格朗日系数(每个系数n次除法)，再做n+2次求幂；加密和密钥生成对每个属性都要求一次。
+ * 这里的优化：
+ * 1. 系数的分母 Π_{j≠i}(i-j) 与x无关，在构造时一起求逆(只做一次求逆)，之后求系数只需要前缀积、后缀积，O(n)次乘法、没有求逆；
+ * 2. n+2项都使用setUp中构建的固定底数预计算表求幂，乘积累积在同一个元素中；
+ * 3. T(x)的结果由BoundedCache按x缓存，被使用次数达到precomputeThreshold的属性还会为T(x)构建预计算表，之后T(x)^s直接查表。
+ * 所有方法都是线程安全的
+ */
+public class TFunction {
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_PRECOMPUTE_THRESHOLD = 16;
+
+    private final int n;
+    private final Pairing bp;
+    private final ElementPowPreProcessing g2Pre;
+    private final ElementPowPreProcessing[] tPre; // t_1 …… t_n+1的预计算表，tPre[0]没有意义
+    private final Element nElement; // Zr中的n
+    private final Element[] denominatorInverses; // 第i-1个元素为 1/Π_{j∈N, j≠i}(i-j)
+    private final BoundedCache<Integer, Element> cache;
+
+    public TFunction(int n, ElementPowPreProcessing g2Pre, ElementPowPreProcessing[] tPre, Pairing bp) {
+        this(n, g2Pre, tPre, bp, DEFAULT_CAPACITY, DEFAULT_PRECOMPUTE_THRESHOLD);
+    }
+
+    /**
+     * @param n 属性集合大小的上限
+     * @param g2Pre g2的预计算表
+     * @param tPre t_1 …… t_n+1的预计算表，下标从1开始
+     * @param bp 双线性对
+     * @param capacity 缓存的T(x)个数上限
+     * @param precomputeThreshold 同一个x的求幂次数达到该值时为T(x)构建预计算表；为0时不构建
+     */
+    public TFunction(int n, ElementPowPreProcessing g2Pre, ElementPowPreProcessing[] tPre, Pairing bp, int capacity, int precomputeThreshold) {
+        if (tPre.length != n + 2) {
+            throw new IllegalArgumentException("需要t_1 …… t_n+1共n+1个预计算表");
+        }
+        this.n = n;
+        this.bp = bp;
+        this.g2Pre = g2Pre;
+        this.tPre = tPre;
+        this.nElement = bp.getZr().newElement(n).getImmutable();
+
+        Element[] denominators = new Element[n + 1];
+        for (int i = 1; i <= n + 1; i++) {
+            Element denominator = bp.getZr().newOneElement();
+            for (int j = 1; j <= n + 1; j++) {
+                if (j != i) {
+                    denominator.mul(bp.getZr().newElement(i - j));
+                }
+            }
+            denominators[i - 1] = denominator;
+        }
+        this.denominatorInverses = MathUtils.batchInvert(denominators);
+
+        this.cache = new BoundedCache<>(capacity, precomputeThreshold, this::compute);
+    }
+
+    /**
+     * 求T(x)
+     * @param x 属性
+     * @return 不可变的G1元素
+     */
+    public Element evaluate(int x) {
+        return cache.get(x);
+    }
+
+    /**
+     * 求T(x)^exponent。常用的属性使用T(x)的预计算表，其余的直接求幂
+     * @param x 属性
+     * @param exponent Zr中的指数
+     * @return 不可变的G1元素
+     */
+    public Element pow(int x, Element exponent) {
+        return cache.pow(x, exponent);
+    }
+
+    public int cacheSize() {
+        return cache.size();
+    }
+
+    // Δ_{i,N}(x) = Π_{j≠i}(x-j) / Π_{j≠i}(i-j)。分子为前缀积 Π_{j<i}(x-j) 与后缀积 Π_{j>i}(x-j) 之积，分母的逆已经预先算好。
+    // x ∈ N时分子中恰好有一项为0(除了i=x)，得到的系数就是Δ_{x,N}(x)=1、其余为0，不需要特殊处理
+    private Element compute(int x) {
+        Element[] suffix = new Element[n + 2]; // suffix[i] = Π_{j>i}(x-j)，suffix[0]没有意义
+        Element product = bp.getZr().newOneElement();
+        for (int i = n + 1; i >= 1; i--) {
+            suffix[i] = product.duplicate();
+            product.mul(bp.getZr().newElement(x - i));
+        }
+
+        Element xElement = bp.getZr().newElement(x).getImmutable();
+        Element result = g2Pre.powZn(xElement.powZn(nElement)); // g2^(x^n)
+        Element prefix = bp.getZr().newOneElement(); // Π_{j<i}(x-j)
+        for (int i = 1; i <= n + 1; i++) {
+            Element delta = prefix.duplicate().mul(suffix[i]).mul(denominatorInverses[i - 1]);
+            result.mul(tPre[i].powZn(delta));
+            prefix.mul(bp.getZr().newElement(x - i));
+        }
+        return result.getImmutable();
+    }
+}